@@ -0,0 +1,127 @@
+package org.schambon.loadsimrunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schambon.loadsimrunner.report.Reporter;
+
+/**
+ * Individual template operators, compiled once like runners do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeneratorBenchmark {
+
+    private Generator integer;
+    private Generator integerFromVariable;
+    private Generator date;
+    private Generator oneOf;
+    private Generator oneOfWeighted;
+    private Generator array;
+    private Generator dictionary;
+    private Generator stringTemplate;
+    private Generator folded;
+    private Generator name;
+    private Generator address;
+    private Generator lorem;
+    private Generator autoFaker;
+
+    @Setup
+    public void setup() {
+        var config = new Document("name", "benchmark")
+            .append("template", new Document())
+            .append("variables", Document.parse("{max: {'%integer': {min: 100, max: 200}}}"))
+            .append("dictionaries", new Document("words", List.of("alpha", "bravo", "charlie", "delta", "echo")));
+        var template = TemplateManager.newInstances(config, new Reporter(List.of(95))).get(0);
+        template.initialize(null);
+        template.setVariables(template.compile((Document) config.get("variables")));
+
+        integer = template.compileExpression(Document.parse("{'%integer': {min: 0, max: 1000}}"));
+        integerFromVariable = template.compileExpression(Document.parse("{'%integer': {min: 0, max: '#max'}}"));
+        date = template.compileExpression(Document.parse("{'%date': {min: '2020-01-01T00:00:00Z', max: '2024-01-01T00:00:00Z'}}"));
+        oneOf = template.compileExpression(Document.parse("{'%oneOf': {options: ['a', 'b', 'c', 'd']}}"));
+        oneOfWeighted = template.compileExpression(Document.parse("{'%oneOf': {options: ['a', 'b', 'c', 'd'], weights: [50, 25, 15, 10]}}"));
+        array = template.compileExpression(Document.parse("{'%array': {min: 5, max: 10, of: {x: '%natural', y: '%bool'}}}"));
+        dictionary = template.compileExpression(Document.parse("{'%dictionary': {name: 'words'}}"));
+        stringTemplate = template.compileExpression(Document.parse("{'%stringTemplate': {template: '??-&&&&-!!'}}"));
+        folded = template.compileExpression(Document.parse("{'%stringConcat': {of: ['a', {'%toString': {of: {'%sum': {of: [1, 2]}}}}]}}"));
+        name = template.compileExpression("%name.name");
+        address = template.compileExpression("%address.fullAddress");
+        lorem = template.compileExpression("%lorem.sentence");
+        autoFaker = template.compileExpression("%lordOfTheRings.character");
+    }
+
+    @Benchmark
+    public Object integer() {
+        return integer.generate();
+    }
+
+    @Benchmark
+    public Object integerFromVariable() {
+        return integerFromVariable.generate();
+    }
+
+    @Benchmark
+    public Object date() {
+        return date.generate();
+    }
+
+    @Benchmark
+    public Object oneOf() {
+        return oneOf.generate();
+    }
+
+    @Benchmark
+    public Object oneOfWeighted() {
+        return oneOfWeighted.generate();
+    }
+
+    @Benchmark
+    public Object array() {
+        return array.generate();
+    }
+
+    @Benchmark
+    public Object dictionary() {
+        return dictionary.generate();
+    }
+
+    @Benchmark
+    public Object stringTemplate() {
+        return stringTemplate.generate();
+    }
+
+    @Benchmark
+    public Object folded() {
+        return folded.generate();
+    }
+
+    @Benchmark
+    public Object name() {
+        return name.generate();
+    }
+
+    @Benchmark
+    public Object address() {
+        return address.generate();
+    }
+
+    @Benchmark
+    public Object lorem() {
+        return lorem.generate();
+    }
+
+    @Benchmark
+    public Object autoFaker() {
+        return autoFaker.generate();
+    }
+}
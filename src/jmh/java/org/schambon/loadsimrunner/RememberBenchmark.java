@@ -0,0 +1,66 @@
+package org.schambon.loadsimrunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schambon.loadsimrunner.template.RememberField;
+import org.schambon.loadsimrunner.template.RememberUtil;
+
+/**
+ * Extraction of remembered values from a generated document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RememberBenchmark {
+
+    private Document doc;
+    private RememberField simple;
+    private RememberField dotted;
+    private RememberField array;
+    private RememberField compound;
+
+    @Setup
+    public void setup() {
+        doc = Document.parse("{_id: 1, data: {cui: 42, sub: {something: 'abc', else: 'def'}}, tags: ['a', 'b', 'c', 'd'], "
+            + "items: [{sku: 1, qty: 2}, {sku: 2, qty: 1}, {sku: 3, qty: 5}]}");
+
+        var fields = RememberUtil.parseRememberFields(List.of(
+            "_id",
+            "data.sub.something",
+            "items.sku",
+            Document.parse("{compound: ['data.cui', 'tags'], name: 'compound'}")));
+        simple = fields.get(0);
+        dotted = fields.get(1);
+        array = fields.get(2);
+        compound = fields.get(3);
+    }
+
+    @Benchmark
+    public Object simple() {
+        return RememberUtil.extractRememberedValues(doc, simple);
+    }
+
+    @Benchmark
+    public Object dotted() {
+        return RememberUtil.extractRememberedValues(doc, dotted);
+    }
+
+    @Benchmark
+    public Object array() {
+        return RememberUtil.extractRememberedValues(doc, array);
+    }
+
+    @Benchmark
+    public Object compound() {
+        return RememberUtil.extractRememberedValues(doc, compound);
+    }
+}
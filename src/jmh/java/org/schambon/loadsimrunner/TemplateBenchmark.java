@@ -0,0 +1,78 @@
+package org.schambon.loadsimrunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.MongoClientSettings;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schambon.loadsimrunner.report.Reporter;
+
+/**
+ * Generation of whole documents from the sample configurations, i.e. what an insert workload does before calling the driver.
+ *
+ * Only the first template of each configuration is used. Remembered fields are left out (see RememberBenchmark), as
+ * well as dictionaries that need a database or a file that is not there: they are replaced with a small inline list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TemplateBenchmark {
+
+    @Param({"templates/sample.json", "tests/simple.json", "tests/oneof.json", "tests/advanced_remember.json", "tests/remember_arrays.json", "tests/head.json"})
+    public String config;
+
+    private TemplateManager template;
+    private RawDocumentWriter rawWriter;
+
+    @Setup
+    public void setup() throws IOException {
+        var parsed = Document.parse(Files.readString(Path.of(config)));
+        var templateConfig = parsed.getList("templates", Document.class).get(0);
+        templateConfig.remove("remember");
+        templateConfig.remove("instances");
+
+        var dictionaries = (Document) templateConfig.get("dictionaries");
+        if (dictionaries != null) {
+            for (var entry : dictionaries.entrySet()) {
+                if (entry.getValue() instanceof Document) {
+                    var dictionary = (Document) entry.getValue();
+                    var file = dictionary.getString("file");
+                    if (file == null || !Files.exists(Path.of(file))) {
+                        entry.setValue(List.of("alpha", "bravo", "charlie", "delta", "echo"));
+                    }
+                }
+            }
+        }
+
+        var reporter = new Reporter(List.of(95));
+        template = TemplateManager.newInstances(templateConfig, reporter).get(0);
+        template.initialize(null);
+        // same UUID representation as MongoClientHelper's clients
+        rawWriter = new RawDocumentWriter(CodecRegistries.withUuidRepresentation(MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD));
+    }
+
+    @Benchmark
+    public Document generate() {
+        return template.generate();
+    }
+
+    @Benchmark
+    public RawBsonDocument generateRaw() {
+        return template.generateRaw(rawWriter);
+    }
+}
@@ -0,0 +1,260 @@
+package org.schambon.loadsimrunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.json.JsonWriterSettings;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.ReporterCallback;
+import org.schambon.loadsimrunner.report.RunHistograms;
+import org.schambon.loadsimrunner.runner.ArrivalRate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Search for the maximum sustainable throughput of a workload (the `autotune` option).
+ *
+ * The workload runs at increasing levels of concurrency (`threads` mode) or target rate (`rate` mode). Each level is
+ * held for `stepDuration` ms; the reports of the first `warmup` ms are ignored, and the latency histograms of the others
+ * are merged to check the SLO percentile. The search stops at the first level that breaches the latency SLO (or, in
+ * rate mode, doesn't achieve its target rate), and the last level that did not is the result.
+ *
+ * When the search is over and `exitWhenDone` is set, {@link #shouldExit()} tells the main loop to exit: exiting from
+ * the report callback would block the report thread that shutdown hooks need.
+ */
+public class AutoTuner implements ReporterCallback {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutoTuner.class);
+
+    private final WorkloadManager workload;
+    private final String reportKey;
+    private final boolean rateMode;
+    private final double startLevel;
+    private final double increment;
+    private final double factor;
+    private final double maxLevel;
+    private final long stepDuration;
+    private final long warmup;
+    private final double percentile;
+    private final double maxLatency;
+    private final double minAchieved;
+    private final Path output;
+    private final boolean exitWhenDone;
+    private final RunHistograms.Window latencies; // of the step's reports after warmup
+
+    private double level;
+    private Instant stepStart = null;
+    private Instant windowStart = null; // time of the last report ignored for this step
+    private final List<Report> stepReports = new ArrayList<>();
+    private final List<Document> steps = new ArrayList<>();
+    private Document best = null;
+    private boolean done = false;
+
+    public AutoTuner(Document config, List<WorkloadManager> workloads, RunHistograms histograms) {
+        var workloadName = config.getString("workload");
+        var matching = workloads.stream().filter(w -> w.getName().equals(workloadName)).findFirst();
+        if (workloadName == null || matching.isEmpty()) {
+            throw new InvalidConfigException(String.format("autotune: no workload named %s", workloadName));
+        }
+        this.workload = matching.get();
+        this.reportKey = config.getString("report") != null ? config.getString("report") : workloadName;
+
+        var mode = config.getString("mode") != null ? config.getString("mode") : "threads";
+        if (!("threads".equals(mode) || "rate".equals(mode))) {
+            throw new InvalidConfigException(String.format("autotune: %s is not a valid mode (must be threads or rate)", mode));
+        }
+        this.rateMode = "rate".equals(mode);
+
+        this.startLevel = _number(config, "start", 1);
+        this.factor = _number(config, "factor", 1);
+        this.increment = _number(config, "step", config.containsKey("factor") ? 0 : (rateMode ? startLevel : 1));
+        this.maxLevel = _number(config, "max", Double.MAX_VALUE);
+        if (startLevel <= 0 || increment < 0 || factor < 1 || (increment == 0 && factor == 1)) {
+            throw new InvalidConfigException("autotune: start must be positive, and step or factor must make the level grow");
+        }
+        this.stepDuration = (long) _number(config, "stepDuration", 30000);
+        this.warmup = (long) _number(config, "warmup", 5000);
+        if (warmup >= stepDuration) {
+            throw new InvalidConfigException("autotune: warmup must be shorter than stepDuration");
+        }
+
+        var slo = (Document) config.get("slo");
+        if (slo == null) {
+            throw new InvalidConfigException("autotune: missing slo, e.g. {percentile: 99, maxMs: 20}");
+        }
+        this.percentile = _number(slo, "percentile", 99);
+        if (percentile <= 0 || percentile > 100) {
+            throw new InvalidConfigException("autotune: slo.percentile must be between 0 (excluded) and 100");
+        }
+        this.maxLatency = _number(slo, "maxMs", -1);
+        if (maxLatency <= 0) {
+            throw new InvalidConfigException("autotune: slo.maxMs must be positive");
+        }
+        this.minAchieved = _number(config, "minAchieved", 0.95);
+
+        this.output = Path.of(config.getString("output") != null ? config.getString("output") : "autotune.json");
+        this.exitWhenDone = config.getBoolean("exitWhenDone", true);
+        this.latencies = histograms.newWindow(reportKey);
+
+        // the workload starts at the first level
+        this.level = startLevel;
+        if (rateMode) {
+            if (workload.pace != 0) {
+                throw new InvalidConfigException("autotune: rate mode cannot be used with pace");
+            }
+            if (workload.arrivalRate == null) {
+                workload.arrivalRate = ArrivalRate.parse(startLevel);
+            } else {
+                workload.arrivalRate.setRate(startLevel);
+            }
+        } else {
+            workload.setThreads((int) startLevel);
+        }
+    }
+
+    private static double _number(Document config, String key, double defaultValue) {
+        var value = config.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Number)) {
+            throw new InvalidConfigException(String.format("autotune: %s must be a number", key));
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    @Override
+    public synchronized void report(Report r) {
+        if (done) {
+            return;
+        }
+        if (stepStart == null) {
+            // the interval of the first report started before we knew, skip it
+            stepStart = r.getTime();
+            windowStart = stepStart;
+            return;
+        }
+
+        var elapsed = r.getTime().toEpochMilli() - stepStart.toEpochMilli();
+        if (elapsed > warmup) {
+            stepReports.add(r);
+            latencies.keepLast();
+        } else {
+            windowStart = r.getTime();
+        }
+        if (elapsed < stepDuration) {
+            return;
+        }
+
+        var step = _evaluate();
+        steps.add(step);
+        LOGGER.info("AUTOTUNE: {} at {} {}: {} ops/s, P{} {} ms -> {}", workload.getName(), _format(level), rateMode ? "ops/s" : "threads",
+            _format(step.getDouble("throughput")), _label(percentile), _format(step.getDouble("latency")), step.getBoolean("passed") ? "pass" : "fail");
+
+        if (step.getBoolean("passed")) {
+            best = step;
+            var next = Math.max(level * factor, level + increment);
+            if (!rateMode) {
+                next = Math.max(Math.floor(next), level + 1);
+            }
+            if (next <= maxLevel) {
+                _setLevel(next);
+                return;
+            }
+        }
+        _finish();
+    }
+
+    private Document _evaluate() {
+        double ops = 0;
+        double seconds = 0;
+        var previous = windowStart;
+        for (var r : stepReports) {
+            var interval = (r.getTime().toEpochMilli() - previous.toEpochMilli()) / 1000d;
+            previous = r.getTime();
+            var wl = (Document) r.getReport().get(reportKey);
+            seconds += interval;
+            if (wl != null) {
+                ops += wl.getLong("total ops");
+            }
+        }
+        stepReports.clear();
+
+        var throughput = seconds > 0 ? ops / seconds : 0d;
+        var latency = latencies.getTotalCount() > 0 ? latencies.getValueAtPercentile(percentile) : 0d;
+        latencies.reset();
+        var passed = ops > 0 && latency <= maxLatency && (!rateMode || throughput >= minAchieved * level);
+        return new Document("level", level)
+            .append("throughput", throughput)
+            .append("latency", latency)
+            .append("passed", passed);
+    }
+
+    private void _setLevel(double next) {
+        level = next;
+        if (rateMode) {
+            workload.getArrivalRate().setRate(level);
+        } else {
+            workload.setThreads((int) level);
+        }
+        stepStart = Instant.now();
+        windowStart = stepStart;
+        latencies.reset();
+    }
+
+    private void _finish() {
+        done = true;
+
+        var result = new Document("workload", workload.getName())
+            .append("mode", rateMode ? "rate" : "threads")
+            .append("slo", new Document("percentile", percentile).append("maxMs", maxLatency))
+            .append("stepDuration", stepDuration)
+            .append("steps", steps)
+            .append("maxSustainable", best);
+        if (best == null) {
+            LOGGER.info("AUTOTUNE: {} breaches the SLO (P{} <= {} ms) from the first level", workload.getName(), _label(percentile), _format(maxLatency));
+        } else {
+            LOGGER.info("AUTOTUNE: {} max sustainable throughput is {} ops/s at {} {} (P{} {} ms <= {} ms)", workload.getName(),
+                _format(best.getDouble("throughput")), _format(best.getDouble("level")), rateMode ? "ops/s" : "threads",
+                _label(percentile), _format(best.getDouble("latency")), _format(maxLatency));
+        }
+
+        try {
+            Files.writeString(output, result.toJson(JsonWriterSettings.builder().indent(true).build()));
+            LOGGER.info("AUTOTUNE: results written to {}", output);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Cannot write autotune results to %s", output), e);
+        }
+
+        if (exitWhenDone) {
+            return;
+        }
+        // keep running at the best level found
+        _setLevel(best != null ? best.getDouble("level") : startLevel);
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return true once the search is over, if SimRunner should then exit
+     */
+    public synchronized boolean shouldExit() {
+        return done && exitWhenDone;
+    }
+
+    private static String _format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    private static String _label(double p) {
+        return p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p);
+    }
+}
@@ -0,0 +1,23 @@
+package org.schambon.loadsimrunner;
+
+/**
+ * Generator for a literal value of a template
+ */
+public class ConstantGenerator implements Generator {
+
+    private final Object value;
+
+    public ConstantGenerator(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object generate() {
+        return value;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+}
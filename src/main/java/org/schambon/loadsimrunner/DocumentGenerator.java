@@ -3,6 +3,7 @@ package org.schambon.loadsimrunner;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.bson.BsonWriter;
 import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +25,52 @@ public class DocumentGenerator implements Generator {
         return (Document) generate();
     }
 
+    /**
+     * A constant document generator still returns a new Document on each call, but its content never changes
+     */
+    @Override
+    public boolean isConstant() {
+        for (var kg: subgenerators) {
+            if (!kg.gen.isConstant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the subgenerators for all these keys (if present) are constant
+     */
+    public boolean isConstant(String... keys) {
+        for (var key: keys) {
+            for (var kg: subgenerators) {
+                if (key.equals(kg.key) && !kg.gen.isConstant()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean hasKey(String key) {
+        for (var kg: subgenerators) {
+            if (key.equals(kg.key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the generated fields to an open BSON document, see {@link RawDocumentWriter}
+     */
+    /* package */ void writeFields(RawDocumentWriter raw, BsonWriter writer) {
+        for (var kg: subgenerators) {
+            writer.writeName(kg.key);
+            raw.writeGenerator(writer, kg.gen);
+        }
+    }
+
     public Object subGenerate(String key) {
         for (var kg: subgenerators) {
             if (key.equals(kg.key)) {
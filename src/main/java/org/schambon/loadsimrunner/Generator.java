@@ -2,4 +2,11 @@ package org.schambon.loadsimrunner;
 
 public interface Generator {
     Object generate();
+
+    /**
+     * @return true if this generator always yields the same value, which lets the template compiler evaluate it once
+     */
+    default boolean isConstant() {
+        return false;
+    }
 }
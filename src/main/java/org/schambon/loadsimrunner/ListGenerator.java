@@ -3,6 +3,8 @@ package org.schambon.loadsimrunner;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.bson.BsonWriter;
+
 public class ListGenerator implements Generator {
 
     private List<Generator> subgenerators;
@@ -16,10 +18,21 @@ public class ListGenerator implements Generator {
         return subgenerators.stream().map(it -> it.generate()).collect(Collectors.toList());
     }
 
+    @Override
+    public boolean isConstant() {
+        return subgenerators.stream().allMatch(Generator::isConstant);
+    }
+
     public Object generate(int index) {
         return subgenerators.get(index).generate();
     }
     
+    /* package */ void writeElements(RawDocumentWriter raw, BsonWriter writer) {
+        for (var gen : subgenerators) {
+            raw.writeGenerator(writer, gen);
+        }
+    }
+
     public int size() {
         return subgenerators.size();
     }
@@ -0,0 +1,99 @@
+package org.schambon.loadsimrunner;
+
+import java.util.Date;
+import java.util.List;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+
+/**
+ * Generates documents straight into BSON (the `rawBson` insert option), instead of building a Document tree that the
+ * driver would then encode.
+ *
+ * Compiled templates are walked and each value is written as soon as it is generated. The output buffer is reused
+ * across calls on the same thread; only the final, exact-size byte array is allocated per document.
+ */
+public class RawDocumentWriter {
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final ThreadLocal<BasicOutputBuffer> BUFFER = ThreadLocal.withInitial(BasicOutputBuffer::new);
+
+    private final CodecRegistry codecRegistry;
+
+    /**
+     * @param codecRegistry used to encode values that have no direct BSON mapping (nested Documents, UUIDs, decimals...).
+     * Use the target collection's registry so that its settings (UUID representation...) apply.
+     */
+    public RawDocumentWriter(CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    /**
+     * Generate a document. Like the driver does for Documents, an ObjectId `_id` is generated first if the template
+     * does not define one.
+     */
+    public RawBsonDocument write(DocumentGenerator generator) {
+        var buffer = BUFFER.get();
+        buffer.truncateToPosition(0);
+
+        try (var writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            if (!generator.hasKey("_id")) {
+                writer.writeObjectId("_id", new ObjectId());
+            }
+            generator.writeFields(this, writer);
+            writer.writeEndDocument();
+        }
+        return new RawBsonDocument(buffer.toByteArray());
+    }
+
+    /* package */ void writeGenerator(BsonWriter writer, Generator generator) {
+        if (generator instanceof DocumentGenerator) {
+            writer.writeStartDocument();
+            ((DocumentGenerator) generator).writeFields(this, writer);
+            writer.writeEndDocument();
+        } else if (generator instanceof ListGenerator) {
+            writer.writeStartArray();
+            ((ListGenerator) generator).writeElements(this, writer);
+            writer.writeEndArray();
+        } else {
+            writeValue(writer, generator.generate());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(BsonWriter writer, Object value) {
+        if (value == null) {
+            writer.writeNull();
+        } else if (value instanceof String) {
+            writer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            writer.writeInt32((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeInt64((Long) value);
+        } else if (value instanceof Double) {
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            writer.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            writer.writeDateTime(((Date) value).getTime());
+        } else if (value instanceof ObjectId) {
+            writer.writeObjectId((ObjectId) value);
+        } else if (value instanceof List) {
+            writer.writeStartArray();
+            for (var elt : (List<?>) value) {
+                writeValue(writer, elt);
+            }
+            writer.writeEndArray();
+        } else {
+            var encoder = (Encoder<Object>) codecRegistry.get(value.getClass());
+            encoder.encode(writer, value, ENCODER_CONTEXT);
+        }
+    }
+}
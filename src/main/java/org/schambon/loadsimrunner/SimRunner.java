@@ -2,11 +2,11 @@ package org.schambon.loadsimrunner;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.lang.System;
 
 import com.mongodb.client.MongoClient;
@@ -23,7 +23,10 @@ import org.schambon.loadsimrunner.client.MongoClientHelper;
 import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.schambon.loadsimrunner.http.HttpServer;
 import org.schambon.loadsimrunner.report.MongoReporter;
+import org.schambon.loadsimrunner.report.ReportHistory;
 import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.report.ReporterCallback;
+import org.schambon.loadsimrunner.report.RunHistograms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,11 +58,14 @@ public class SimRunner {
     //////////// Fields /////////////
     Document config;
     MongoClient client;
+    Object sink; // the `sink` option: no MongoDB, operations go to in-memory collections
+    com.mongodb.reactivestreams.client.MongoClient reactiveClient;
     Map<String, List<TemplateManager>> templatesByBaseName = new HashMap<>();
-    List<WorkloadManager> workloads = new ArrayList<>();
+    List<WorkloadManager> workloads = new CopyOnWriteArrayList<>(); // workloads can be started at runtime
 
     Reporter reporter = null;
     HttpServer httpServer = null;
+    AutoTuner autoTuner = null;
 
     int reportInterval = 1000;
     private String database;
@@ -74,16 +80,28 @@ public class SimRunner {
         validateConfig();
         for (var templates : templatesByBaseName.values()) {
             for (var template : templates) {
-                template.initialize(client);
+                if (sink != null) {
+                    template.initializeSink(sink);
+                } else {
+                    template.initialize(client);
+                }
             }
         }
 
         var mongoReporter = new MongoReporter((Document) config.get("mongoReporter"));
-        var reporterCallbacks = Collections.singletonList(mongoReporter);
+        var reporterCallbacks = new ArrayList<ReporterCallback>();
+        reporterCallbacks.add(mongoReporter);
+        if (autoTuner != null) {
+            reporterCallbacks.add(autoTuner);
+        }
+        if (httpServer != null && httpServer.getReportStream() != null) {
+            reporterCallbacks.add(httpServer.getReportStream());
+        }
 
         reporter.start(); // start the clock
+        Runtime.getRuntime().addShutdownHook(new Thread(reporter::finish, "latency-histograms"));
         for (var workload: workloads) {
-            workload.initAndStart(client);
+            workload.initAndStart(client, reactiveClient);
         }
 
         if (httpServer != null) {
@@ -95,7 +113,7 @@ public class SimRunner {
            
         }
         
-        while(true) {
+        while (autoTuner == null || !autoTuner.shouldExit()) {
             LOGGER.debug("Reporter waking up");
             try {
                 Thread.sleep((long) reportInterval);
@@ -104,13 +122,62 @@ public class SimRunner {
             }
             reporter.computeReport(reporterCallbacks);
         }
+        // from here rather than from the report thread, which the shutdown hooks still need
+        LOGGER.info("Autotune is over, exiting");
+        System.exit(0);
+    }
+
+    /**
+     * Start a new workload while SimRunner is running (its template must be one of the configured templates).
+     *
+     * @return the started workloads (one per template instance)
+     */
+    public synchronized List<WorkloadManager> startWorkload(Document workloadConfig) {
+        var name = workloadConfig.getString("name");
+        if (name == null || workloadConfig.getString("op") == null) {
+            throw new InvalidConfigException("A workload needs a name and an op");
+        }
+        var templateName = workloadConfig.getString("template");
+        if (templateName != null && !templatesByBaseName.containsKey(templateName)) {
+            throw new InvalidConfigException(String.format("Unknown template %s", templateName));
+        }
+
+        var newWorkloads = WorkloadManager.newInstances(EnvVarSub.subEnvVars(workloadConfig), templatesByBaseName, reporter);
+        for (var workload : newWorkloads) {
+            if (getWorkload(workload.getName()) != null) {
+                throw new InvalidConfigException(String.format("There is already a workload named %s", workload.getName()));
+            }
+        }
+        for (var workload : newWorkloads) {
+            workload.initAndStart(client, reactiveClient);
+            workloads.add(workload);
+        }
+        return newWorkloads;
+    }
+
+    public List<WorkloadManager> getWorkloads() {
+        return workloads;
+    }
+
+    /**
+     * @return the workload named `name`, or null if there is none
+     */
+    public WorkloadManager getWorkload(String name) {
+        for (var workload : workloads) {
+            if (workload.getName().equals(name)) {
+                return workload;
+            }
+        }
+        return null;
     }
 
     private void validateConfig() {
 
         reportInterval = config.getInteger("reportInterval", 1000);
         List<Integer> reportPercentiles = config.getList("reportPercentiles", Integer.class, Arrays.asList(95));
-        reporter = new Reporter(reportPercentiles);
+        reporter = new Reporter(reportPercentiles,
+            ReportHistory.parse(config.get("reportHistory"), reportInterval, reportPercentiles),
+            RunHistograms.parse(config.get("latencyHistograms"), reportPercentiles));
 
         String connectionString = null;
         try {
@@ -120,6 +187,14 @@ public class SimRunner {
             throw new InvalidConfigException("Invalid Connection String");
         }
 
+        sink = config.get("sink");
+        if (sink != null && !Boolean.FALSE.equals(sink)) {
+            reporter.reportInit("Sink mode: workloads run against in-memory collections, not connecting to MongoDB");
+            connectionString = null;
+        } else {
+            sink = null;
+        }
+
         if (connectionString != null) {
 
             // bit ugly: we have to drop collections before initialising the main MongoClient since it can create encrypted collections, which would error out if they already exist
@@ -155,8 +230,16 @@ public class SimRunner {
                 workloads.addAll(WorkloadManager.newInstances(workloadConfig, templatesByBaseName, reporter));
         }
 
+        if (config.get("autotune") instanceof Document) {
+            this.autoTuner = new AutoTuner((Document) config.get("autotune"), workloads, reporter.getRunHistograms());
+        }
+
+        if (connectionString != null && workloads.stream().anyMatch(WorkloadManager::isReactive)) {
+            this.reactiveClient = MongoClientHelper.reactiveClient(connectionString, (Document) config.get("encryption"));
+        }
+
         if (config.get("http") != null || (config.get("http") instanceof Document)) {
-            this.httpServer = new HttpServer((Document) config.get("http"), reporter);
+            this.httpServer = new HttpServer((Document) config.get("http"), reporter, this);
         }
 
     }
@@ -7,20 +7,22 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
@@ -32,18 +34,31 @@ import com.mongodb.client.model.ValidationLevel;
 import com.mongodb.client.model.ValidationOptions;
 import static com.mongodb.client.model.Filters.*;
 
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
 import org.schambon.loadsimrunner.client.MongoClientHelper;
+import org.schambon.loadsimrunner.client.SinkCollection;
 import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.schambon.loadsimrunner.generators.Address;
 import org.schambon.loadsimrunner.generators.Name;
 import org.schambon.loadsimrunner.generators.ValueGenerators;
 import org.schambon.loadsimrunner.generators.Lorem;
 import org.schambon.loadsimrunner.report.Reporter;
-import org.schambon.loadsimrunner.runner.WorkloadThread;
+import org.schambon.loadsimrunner.runner.WorkloadContext;
+import org.schambon.loadsimrunner.template.CompactList;
+import org.schambon.loadsimrunner.template.KeyDistribution;
+import org.schambon.loadsimrunner.template.Preloader;
 import org.schambon.loadsimrunner.template.RememberField;
 import org.schambon.loadsimrunner.template.RememberUtil;
+import org.schambon.loadsimrunner.template.Snapshot;
 import org.schambon.loadsimrunner.template.TemplateUtil;
+import org.schambon.loadsimrunner.template.ValueStore;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
@@ -52,6 +67,9 @@ public class TemplateManager {
     public static final int DEFAULT_NUMBER_TO_PRELOAD = 1000000;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TemplateManager.class);
+    // decodes raw documents the way MongoClientHelper's clients do
+    private static final Codec<Document> DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry())
+        .withUuidRepresentation(UuidRepresentation.STANDARD);
 
     private String _name;
     private String _basename;
@@ -69,7 +87,16 @@ public class TemplateManager {
 
     // remembered fields
     private Set<RememberField> fieldsToRemember = new HashSet<>();
-    private Map<String, List<Object>> remembrances = new TreeMap<>();
+    private volatile Set<String> rememberRoots = null;
+    private Map<String, ValueStore> remembrances = new TreeMap<>();
+    private boolean offHeap; // packed remembered values and dictionaries go off-heap
+    private int preloadParallelism = 1;
+    private boolean preloadInBackground = false;
+
+    private Path snapshotFile = null; // remembered values and collection dictionaries are saved there
+    private long snapshotInterval = 0; // seconds, 0 to save only at shutdown
+    private Snapshot snapshot = null;
+    private Set<String> collectionDictionaries = ConcurrentHashMap.newKeySet();
 
     private List<Document> indexes;
 
@@ -77,14 +104,20 @@ public class TemplateManager {
 
     private Reporter reporter;
 
-    // compiled generators cache
-    private Map<Document, DocumentGenerator> generators = new HashMap<>();
+    // compiled template and variables (see _templateGenerator() / _variablesGenerator())
+    private volatile DocumentGenerator templateGenerator = null;
+    private volatile DocumentGenerator variablesGenerator = null;
+
+    // compiled generators cache, for templates that were not compiled upfront with compile()
+    private Map<Document, DocumentGenerator> generators = new ConcurrentHashMap<>();
 
     // thread local container for variables
     private static ThreadLocal<Document> localVariables = new ThreadLocal<>();
 
     // dictionaries
     private Map<String, List<? extends Object>> dictionaries = new TreeMap<>();
+    // access distributions of remembered fields and dictionaries, by name; absent for uniform access
+    private Map<String, KeyDistribution> distributions = new ConcurrentHashMap<>();
 
     public static List<TemplateManager> newInstances(Document config, Reporter reporter) {
         var instances = config.getInteger("instances", 0);
@@ -149,6 +182,31 @@ public class TemplateManager {
             this.variables = new Document();
         }
 
+        this.offHeap = config.getBoolean("offHeap", false);
+
+        var preloadConfig = (Document) config.get("preload");
+        if (preloadConfig != null) {
+            this.preloadParallelism = preloadConfig.getInteger("parallelism", 1);
+            this.preloadInBackground = preloadConfig.getBoolean("background", false);
+            if (preloadParallelism < 1) {
+                throw new InvalidConfigException("preload.parallelism must be at least 1");
+            }
+        }
+
+        var snapshotConfig = config.get("snapshot");
+        if (snapshotConfig instanceof String) {
+            this.snapshotFile = Path.of((String) snapshotConfig, String.format("%s.snap", _name));
+        } else if (snapshotConfig instanceof Document) {
+            var dir = ((Document) snapshotConfig).getString("dir");
+            if (dir == null) {
+                throw new InvalidConfigException("snapshot must specify a dir");
+            }
+            this.snapshotFile = Path.of(dir, String.format("%s.snap", _name));
+            this.snapshotInterval = ((Number) ((Document) snapshotConfig).get("interval", 0)).longValue();
+        } else if (snapshotConfig != null) {
+            throw new InvalidConfigException("snapshot must be a directory name or a document");
+        }
+
         var rememberFields = (List<Object>) config.get("remember");
         if (rememberFields == null) {
             rememberFields = Collections.emptyList();
@@ -156,7 +214,10 @@ public class TemplateManager {
         var remember = RememberUtil.parseRememberFields(rememberFields);
         for (var rfield : remember) {
             this.fieldsToRemember.add(rfield);
-            this.remembrances.put(rfield.name, Collections.synchronizedList(new ArrayList<>()));
+            this.remembrances.put(rfield.name, ValueStore.create(rfield.capped, offHeap));
+            if (rfield.distribution != null) {
+                this.distributions.put(rfield.name, rfield.distribution);
+            }
         }
 
         if (config.containsKey("indexes")) {
@@ -184,8 +245,17 @@ public class TemplateManager {
         return this.mongoColl;
     }
 
+    public String getDatabaseName() {
+        return database;
+    }
+
+    public String getCollectionName() {
+        return collection;
+    }
+
     public void initialize(MongoClient client) {
         reporter.reportInit(String.format("Initializing template %s", _name));
+        _readSnapshot();
 
         // skip MongoDB specific initialization if either connection, db or collection is null
         if (client != null && database != null && collection != null) {
@@ -247,21 +317,60 @@ public class TemplateManager {
         reporter.reportInit(String.format("\tLoaded %d dictionaries", dictionaries.size()));
 
         if (template != null) {
-            generators.put(template, _compile(template));
+            templateGenerator = _compile(template);
         }
+
+        _scheduleSnapshots();
+    }
+
+    /**
+     * Initialize without MongoDB: operations go to an in-memory sink (the top-level `sink` option)
+     */
+    public void initializeSink(Object sinkConfig) {
+        initialize(null);
+        this.mongoColl = SinkCollection.create(sinkConfig, database, collection);
+        reporter.reportInit(String.format("\tUsing sink collection for template %s", _name));
     }
 
     private void _preloadRememberedFields() {
+        if (preloadInBackground) {
+            // workloads start right away and see the remembered values fill up as the preload goes
+            var thread = new Thread(this::_doPreloadRememberedFields, String.format("preload-%s", _name));
+            thread.setDaemon(true);
+            thread.start();
+            reporter.reportInit(String.format("\tPreloading existing keys in the background for template %s", _name));
+        } else {
+            _doPreloadRememberedFields();
+        }
+    }
+
+    private void _doPreloadRememberedFields() {
         for (var rfield : fieldsToRemember) {
             if (!rfield.preload) {
                 reporter.reportInit(String.format("\tSkip preloading existing keys for field: %s", rfield.name));
                 continue;
             }
-
-            var preloadedValues = RememberUtil.preloadValues(rfield, mongoColl);
+            if (snapshot != null && snapshot.hasRemembered(rfield.name)) {
+                continue;
+            }
 
             var values = remembrances.get(rfield.name);
-            values.addAll(preloadedValues);
+            try {
+                if (preloadParallelism > 1) {
+                    RememberUtil.streamPreloadValues(rfield, new Preloader(mongoColl, preloadParallelism), values);
+                } else {
+                    values.addAll(RememberUtil.preloadValues(rfield, mongoColl));
+                }
+            } catch (RuntimeException e) {
+                if (!preloadInBackground) {
+                    throw e;
+                }
+                // nobody waits on the background thread: say so where init messages go, and carry on with other fields
+                LOGGER.error(String.format("Could not preload existing keys for field %s", rfield.name), e);
+                reporter.reportInit(String.format("\tBackground preload FAILED for field %s after %d keys: %s", rfield.name,
+                        values.size(), e));
+                continue;
+            }
 
             reporter.reportInit(String.format("\tLoaded %d existing keys for field: %s (refer as #%s)", values.size(),
                     rfield.getDescription(), rfield.name));
@@ -285,28 +394,44 @@ public class TemplateManager {
         }
     }
 
-    private void _doRemember(String fieldName, List<? extends Object> values) {
-        var found = fieldsToRemember.stream().filter(it -> it.name.equals(fieldName)).collect(Collectors.toList());
-        if (found.size() != 1) {
-            LOGGER.error("Found not exactly one remember definition for {}", fieldName);
-        }
-        var found_1 = found.get(0);
-
-        List<Object> remembered = remembrances.get(fieldName);
-
-        synchronized(remembered) {
-            if (found_1.capped != -1) {
-                // there are n objects in the list, we want to add m and keep k. So we need potentially to remove (n+m)-k
-                var del = (remembered.size() + values.size()) - found_1.capped;
-                if (del > 0) {
-                    // inefficient but it's a marginal use case...
-                    for (var i = 0; i < del; i++) {
-                        remembered.remove(0);
-                    }
+    private void _extractRememberedFields(RawBsonDocument raw) {
+        if (fieldsToRemember.isEmpty()) {
+            return;
+        }
+        // only decode the top-level fields that are needed
+        var needed = new BsonDocument();
+        for (var root : _rememberRoots()) {
+            var value = raw.get(root);
+            if (value != null) {
+                needed.append(root, value);
+            }
+        }
+        _extractRememberedFields(DOCUMENT_CODEC.decode(new BsonDocumentReader(needed), DecoderContext.builder().build()));
+    }
+
+    private Set<String> _rememberRoots() {
+        var roots = rememberRoots;
+        if (roots == null) {
+            roots = new HashSet<>();
+            for (var rfield : fieldsToRemember) {
+                for (var path : rfield.isSimple() ? List.of(rfield.field) : rfield.compound) {
+                    roots.add(path.split("\\.")[0]);
                 }
             }
-            remembered.addAll(values);
+            rememberRoots = roots;
+        }
+        return roots;
+    }
+
+    private void _doRemember(String fieldName, List<? extends Object> values) {
+        var remembered = remembrances.get(fieldName);
+        if (remembered == null) {
+            LOGGER.error("Found no remember definition for {}", fieldName);
+            return;
         }
+
+        // capped stores evict their oldest values
+        remembered.addAll(values);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Extracted values: {} for remembered field {}", values, fieldName);
         }
@@ -315,9 +440,13 @@ public class TemplateManager {
     private void _initializeDictionaries() {
         for (var entry : dictionariesConfig.entrySet()) {
             if (entry.getValue() instanceof List<?>) {
-                dictionaries.put(entry.getKey(), (List<Object>) entry.getValue());
+                dictionaries.put(entry.getKey(), CompactList.compact((List<Object>) entry.getValue(), offHeap));
             } else if (entry.getValue() instanceof Document) {
-                dictionaries.put(entry.getKey(), _loadDictionary((Document) entry.getValue()));
+                var distribution = KeyDistribution.parse(((Document) entry.getValue()).get("distribution"));
+                if (distribution != null) {
+                    distributions.put(entry.getKey(), distribution);
+                }
+                dictionaries.put(entry.getKey(), CompactList.compact(_loadDictionary(entry.getKey(), (Document) entry.getValue()), offHeap));
             } else {
                 LOGGER.warn("Invalid dictionary config: {}", entry.getKey());
             }
@@ -328,7 +457,7 @@ public class TemplateManager {
         return dictionaries.get(dictionary);
     }
 
-    private List<? extends Object> _loadDictionary(Document config) {
+    private List<? extends Object> _loadDictionary(String name, Document config) {
 
         String type = config.getString("type");
         if (type == null)
@@ -339,6 +468,14 @@ public class TemplateManager {
             case "text":
                 return _loadTextDictionary(config);
             case "collection":
+                collectionDictionaries.add(name);
+                if (snapshot != null && snapshot.hasDictionary(name)) {
+                    try {
+                        return snapshot.dictionary(name);
+                    } catch (IOException e) {
+                        LOGGER.warn(String.format("Cannot read dictionary %s from snapshot %s, loading it from the collection", name, snapshotFile), e);
+                    }
+                }
                 return _loadCollectionDictionary(config);
             case "templateUnique":
                 return _loadTemplateUniqueDictionary(config);
@@ -385,36 +522,115 @@ public class TemplateManager {
 
         List<Object> result = new ArrayList<>();
 
-        var cursor = _coll.find(effectiveQuery).limit(limit);
-        if (attribute != null) {
-            var projectionDocument = new Document(attribute, true);
-            // if (!"_id".equals(attribute)){
-            // projectionDocument.append("_id", false);
-            // }
-            cursor = cursor.projection(projectionDocument);
-        }
-        for (var r : cursor) {
+        if (preloadParallelism > 1) {
+            var projectionDocument = attribute == null ? null : new Document(attribute, true);
+            var concurrentResult = new ConcurrentLinkedQueue<Object>();
+            new Preloader(_coll, preloadParallelism).scan(effectiveQuery, projectionDocument, limit,
+                r -> concurrentResult.add(_dictionaryValue((Document) Preloader.decode(r), attribute)));
+            result.addAll(concurrentResult);
+        } else {
+            var cursor = _coll.find(effectiveQuery).limit(limit);
             if (attribute != null) {
-                var v = TemplateUtil.subdescend(r, Arrays.asList(attribute.split("\\.")));
-                // var v = r.get(attribute);
-                result.add(v == null ? "null" : v);
-            } else {
-                result.add(r);
+                var projectionDocument = new Document(attribute, true);
+                // if (!"_id".equals(attribute)){
+                // projectionDocument.append("_id", false);
+                // }
+                cursor = cursor.projection(projectionDocument);
+            }
+            for (var r : cursor) {
+                result.add(_dictionaryValue(r, attribute));
             }
         }
         LOGGER.info("Loaded {} entries into dictionary from namespace {}.{}", result.size(), dbName, config.getString("collection"));
         return result;
     }
 
+    private void _readSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            snapshot = Snapshot.read(snapshotFile);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Cannot read snapshot %s, ignoring it", snapshotFile), e);
+        }
+        if (snapshot == null) {
+            return;
+        }
+
+        for (var rfield : fieldsToRemember) {
+            if (snapshot.hasRemembered(rfield.name)) {
+                var values = remembrances.get(rfield.name);
+                try {
+                    snapshot.forEachRemembered(rfield.name, values::add);
+                } catch (IOException e) {
+                    LOGGER.warn(String.format("Cannot read snapshot %s, ignoring it", snapshotFile), e);
+                    // start over: fields are preloaded as if there were no snapshot
+                    for (var f : fieldsToRemember) {
+                        remembrances.put(f.name, ValueStore.create(f.capped, offHeap));
+                    }
+                    snapshot = null;
+                    return;
+                }
+                reporter.reportInit(String.format("\tLoaded %d keys for field: %s from snapshot %s", values.size(), rfield.name, snapshotFile));
+            }
+        }
+    }
+
+    private void _scheduleSnapshots() {
+        if (snapshotFile == null) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::_writeSnapshot, String.format("snapshot-%s", _name)));
+        if (snapshotInterval > 0) {
+            var scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, String.format("snapshot-%s", _name));
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::_writeSnapshot, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void _writeSnapshot() {
+        var remembered = new TreeMap<String, List<Object>>();
+        for (var entry : remembrances.entrySet()) {
+            remembered.put(entry.getKey(), entry.getValue().values());
+        }
+        var dicts = new TreeMap<String, List<? extends Object>>();
+        for (var name : collectionDictionaries) {
+            if (dictionaries.containsKey(name)) {
+                dicts.put(name, dictionaries.get(name));
+            }
+        }
+
+        try {
+            Snapshot.write(snapshotFile, remembered, dicts);
+            LOGGER.info("Saved snapshot {}", snapshotFile);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Cannot write snapshot %s", snapshotFile), e);
+        }
+    }
+
+    private static Object _dictionaryValue(Document r, String attribute) {
+        if (attribute != null) {
+            var v = TemplateUtil.subdescend(r, Arrays.asList(attribute.split("\\.")));
+            // var v = r.get(attribute);
+            return v == null ? "null" : v;
+        } else {
+            return r;
+        }
+    }
+
     private List<Object> _loadTemplateUniqueDictionary(Document config) {
         LOGGER.debug("Initialising templateunique dictionary with config {}", config);
         var size = config.getInteger("size", 1000);
         var result = new ArrayList<>(size);
-        var t = (Document) config.get("template");
+        var t = compileExpression(config.get("template"));
         for (var i = 0; i < size; i++) {
-            var v = generateExpression(t);
+            var v = t.generate();
             while (result.contains(v)) {
-                v = generateExpression(t);
+                v = t.generate();
             }
             LOGGER.debug("Added {}", v);
             result.add(v);
@@ -509,23 +725,46 @@ public class TemplateManager {
     }
 
     public List<Object> getRememberedValues(String key) {
-        return remembrances.get(key);
+        var values = remembrances.get(key);
+        return values == null ? null : values.values();
     }
 
     public Document generate() {
+        return _withTemplateVariables(() -> {
+            var doc = generate(_templateGenerator());
+
+            _extractRememberedFields(doc);
+
+            return doc;
+        });
+    }
+
+    /**
+     * Generate a new instance of the template directly as BSON. Remembered fields are decoded from the raw document.
+     */
+    public RawBsonDocument generateRaw(RawDocumentWriter writer) {
+        return _withTemplateVariables(() -> {
+            var doc = writer.write(_templateGenerator());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Generated: {}", doc.toJson());
+            }
+
+            _extractRememberedFields(doc);
+
+            return doc;
+        });
+    }
+
+    private <T> T _withTemplateVariables(Supplier<T> generation) {
         var previousVariables = localVariables.get();
 
         try {
-            var newVariables = generate(variables);
+            var newVariables = generate(_variablesGenerator());
             if (previousVariables != null)
                 newVariables.putAll(previousVariables);
 
             localVariables.set(newVariables);
-            var doc = generate(template);
-
-            _extractRememberedFields(doc);
-
-            return doc;
+            return generation.get();
         } finally {
             // localVariables.remove();
             if (previousVariables != null)
@@ -536,6 +775,13 @@ public class TemplateManager {
     }
 
     public void setVariables(Document variables) {
+        setVariables(variables == null ? null : _cachedGenerator(variables));
+    }
+
+    /**
+     * Generate workload variables from their compiled form (see {@link #compile(Document)}) and set them for the current thread
+     */
+    public void setVariables(DocumentGenerator variables) {
         if (variables != null) {
             var var = generate(variables);
             localVariables.set(var);
@@ -559,13 +805,17 @@ public class TemplateManager {
         return from.stream().map(this::generate).collect(Collectors.toList());
     }
 
+    /**
+     * Generate a document from a template. Prefer compiling the template once with {@link #compile(Document)} and
+     * calling {@link #generate(DocumentGenerator)}: this looks up the compiled template in a cache, which means hashing
+     * the whole template on each call.
+     */
     public Document generate(Document from) {
-        DocumentGenerator gen = generators.get(from);
-        if (gen == null) {
-            gen = _compile(from);
-            generators.put(from, gen);
-        }
-        Document doc = gen.generateDocument();
+        return generate(_cachedGenerator(from));
+    }
+
+    public Document generate(DocumentGenerator generator) {
+        Document doc = generator.generateDocument();
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Generated: {}", doc.toJson());
@@ -573,10 +823,74 @@ public class TemplateManager {
         return doc;
     }
 
+    @SuppressWarnings("unchecked")
+    public List<Document> generate(ListGenerator generator) {
+        return (List<Document>) generator.generate();
+    }
+
     public Object generateExpression(Object expression) {
         return generate(new Document("expression", expression)).get("expression");
     }
 
+    /**
+     * Compile a template (a filter, an update...) into a generator that can be held and reused by any number of threads.
+     * Compile templates once at workload initialization rather than calling {@link #generate(Document)} for each operation.
+     *
+     * @return the compiled template, or null if `from` is null
+     */
+    public DocumentGenerator compile(Document from) {
+        return from == null ? null : _compile(from);
+    }
+
+    /**
+     * Compile a list of templates (eg. an aggregation pipeline or a pipeline-style update)
+     *
+     * @return the compiled list, or null if `from` is null
+     */
+    public ListGenerator compile(List<Document> from) {
+        if (from == null) {
+            return null;
+        }
+        return new ListGenerator(from.stream().map(it -> (Generator) _compile(it)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Compile a single template expression (eg. `"%integer"` or `{"%date": {...}}`)
+     */
+    public Generator compileExpression(Object expression) {
+        return _traverseCompileValue(expression);
+    }
+
+    private DocumentGenerator _cachedGenerator(Document from) {
+        return generators.computeIfAbsent(from, this::_compile);
+    }
+
+    private DocumentGenerator _templateGenerator() {
+        var gen = templateGenerator;
+        if (gen == null) {
+            synchronized (this) {
+                if (templateGenerator == null) {
+                    templateGenerator = _compile(template);
+                }
+                gen = templateGenerator;
+            }
+        }
+        return gen;
+    }
+
+    private DocumentGenerator _variablesGenerator() {
+        var gen = variablesGenerator;
+        if (gen == null) {
+            synchronized (this) {
+                if (variablesGenerator == null) {
+                    variablesGenerator = _compile(variables);
+                }
+                gen = variablesGenerator;
+            }
+        }
+        return gen;
+    }
+
     public String getName() {
         return _name;
     }
@@ -638,12 +952,12 @@ public class TemplateManager {
     }
 
     private Generator _hashGenerator(String key) {
-        return () -> {
-            var keys = Arrays.asList(key.split("\\."));
+        var keys = Arrays.asList(key.split("\\."));
 
-            var head = keys.get(0); // at least we are always assured it exists
-            var tail = keys.subList(1, keys.size()); // may be empty
+        var head = keys.get(0); // at least we are always assured it exists
+        var tail = keys.subList(1, keys.size()); // may be empty
 
+        return () -> {
             // 1. dereference head
             Object resolved;
             // first check variables - note we may be defining variables so they don't exist
@@ -651,18 +965,14 @@ public class TemplateManager {
             if (localVariables.get() != null && localVariables.get().containsKey(head)) {
                 resolved = localVariables.get().get(head);
             } else if (remembrances.containsKey(head)) {
-                var values = remembrances.get(head);
-                if (values.size() == 0) {
-                    resolved = null;
-                } else {
-                    resolved = values.get(ThreadLocalRandom.current().nextInt(values.size()));
-                }
+                var distribution = distributions.get(head);
+                resolved = distribution == null ? remembrances.get(head).sample() : remembrances.get(head).sample(distribution);
             } else if (dictionaries.containsKey(head)) {
                 var values = dictionaries.get(head);
                 if (values.size() == 0) {
                     resolved = null;
                 } else {
-                    resolved = values.get(ThreadLocalRandom.current().nextInt(values.size()));
+                    resolved = ValueGenerators.pick(values, distributions.get(head));
                 }
             } else {
                 LOGGER.debug("Hash key not resolved: {}", head);
@@ -726,18 +1036,18 @@ public class TemplateManager {
             // workload
             case "%threadNumber":
                 return () -> {
-                    WorkloadThread t = (WorkloadThread) Thread.currentThread();
+                    WorkloadContext t = WorkloadContext.current();
                     return t.getThreadNumber();
                 };
             case "%workloadName":
                 return () -> {
-                    WorkloadThread t = (WorkloadThread) Thread.currentThread();
+                    WorkloadContext t = WorkloadContext.current();
                     return t.getWorkloadName();
                 };
 
             case "%iteration":
                 return () -> {
-                    WorkloadThread t = (WorkloadThread) Thread.currentThread();
+                    WorkloadContext t = WorkloadContext.current();
                     return (Long) t.getContextValue("iteration");
                 };
 
@@ -782,7 +1092,7 @@ public class TemplateManager {
 
             // dictionary
             case "%dictionary":
-                return ValueGenerators.dictionary(params, dictionaries);
+                return ValueGenerators.dictionary(params, dictionaries, distributions);
             case "%dictionaryConcat":
                 return ValueGenerators.dictionaryConcat(params, dictionaries);
             case "%dictionaryAt":
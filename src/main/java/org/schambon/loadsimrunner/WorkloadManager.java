@@ -1,8 +1,13 @@
 package org.schambon.loadsimrunner;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 import com.mongodb.ReadConcern;
@@ -13,21 +18,32 @@ import com.mongodb.client.MongoClient;
 import org.bson.Document;
 import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.runner.AbstractRunner;
 import org.schambon.loadsimrunner.runner.AggregationRunner;
+import org.schambon.loadsimrunner.runner.ArrivalRate;
 import org.schambon.loadsimrunner.runner.BucketTimeSeriesRunner;
 import org.schambon.loadsimrunner.runner.CustomRunner;
 import org.schambon.loadsimrunner.runner.DeleteManyRunner;
 import org.schambon.loadsimrunner.runner.DeleteOneRunner;
 import org.schambon.loadsimrunner.runner.FindRunner;
 import org.schambon.loadsimrunner.runner.InsertRunner;
+import org.schambon.loadsimrunner.runner.MixRunner;
+import org.schambon.loadsimrunner.runner.PooledExecutor;
 import org.schambon.loadsimrunner.runner.ReplaceOneRunner;
 import org.schambon.loadsimrunner.runner.ReplaceWithNewRunner;
 import org.schambon.loadsimrunner.runner.TimeSeriesRunner;
+import org.schambon.loadsimrunner.runner.TransactionRunner;
 import org.schambon.loadsimrunner.runner.UpdateManyRunner;
 import org.schambon.loadsimrunner.runner.UpdateOneRunner;
+import org.schambon.loadsimrunner.runner.WorkloadContext;
 import org.schambon.loadsimrunner.runner.WorkloadThread;
 import org.schambon.loadsimrunner.runner.jdbc.JDBCRunner;
 import org.schambon.loadsimrunner.runner.kafka.KafkaInsertRunner;
+import org.schambon.loadsimrunner.runner.reactive.ReactiveAggregationRunner;
+import org.schambon.loadsimrunner.runner.reactive.ReactiveDeleteRunner;
+import org.schambon.loadsimrunner.runner.reactive.ReactiveFindRunner;
+import org.schambon.loadsimrunner.runner.reactive.ReactiveInsertRunner;
+import org.schambon.loadsimrunner.runner.reactive.ReactiveUpdateRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +57,9 @@ public class WorkloadManager {
     Document variables = null;
     int threads;
     int batch;
-    int pace;
+    volatile int pace;
+    volatile ArrivalRate arrivalRate;
+    volatile boolean paused = false;
     ReadPreference readPreference;
     ReadConcern readConcern;
     WriteConcern writeConcern;
@@ -49,12 +67,30 @@ public class WorkloadManager {
     long stopAfterDuration = -1;
     long startAfterDuration = -1;
     String variablesScope = "batch";
+    String executor = "platform";
+    int carrierThreads;
+    boolean reactive = false;
+    Semaphore inFlightPermits;
 
     Reporter reporter;
 
     private TemplateManager templateConfig;
+    private Document config;
+
+    private String mode;
+    private boolean started = false;
+    private final List<Runnable> clients = new ArrayList<>();
+    private PooledExecutor pool;
 
     private MongoClient client;
+    private com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+
+    // compiled forms of this workload's templates, by config object, shared by all its runners
+    private final Map<Object, DocumentGenerator> compiledDocuments = new IdentityHashMap<>();
+    private final Map<Object, ListGenerator> compiledLists = new IdentityHashMap<>();
+    private final Map<Object, Generator> compiledExpressions = new IdentityHashMap<>();
+    // operations of a `mix` workload, shared by all its runners
+    private final Map<String, WorkloadManager> mixedOps = new HashMap<>();
 
     public static List<WorkloadManager> newInstances(Document config, Map<String, List<TemplateManager>> templatesByBaseName, Reporter reporter) {
         var templateBaseName = config.getString("template");
@@ -77,6 +113,7 @@ public class WorkloadManager {
         }
 
         this.templateConfig = templateConfig;
+        this.config = config;
         this.op = config.getString("op");
         if (config.containsKey("params")) {
             this.params = (Document) config.get("params");
@@ -87,6 +124,33 @@ public class WorkloadManager {
         this.threads = config.getInteger("threads", 1);
         this.batch =  config.getInteger("batch", 0);
         this.pace = config.getInteger("pace", 0);
+        this.arrivalRate = ArrivalRate.parse(config.get("rate"));
+        if (this.arrivalRate != null && this.pace != 0) {
+            throw new InvalidConfigException("pace and rate cannot be used at the same time");
+        }
+        this.executor = config.getString("executor") == null ? "platform" : config.getString("executor");
+        if (!("platform".equals(executor) || "virtual".equals(executor) || "pooled".equals(executor))) {
+            throw new InvalidConfigException(String.format("%s is not a valid executor (must be platform, virtual or pooled)", executor));
+        }
+        this.carrierThreads = config.getInteger("carrierThreads", Runtime.getRuntime().availableProcessors());
+        if (carrierThreads < 1) {
+            throw new InvalidConfigException("carrierThreads must be at least 1");
+        }
+        var driver = config.getString("driver");
+        if (driver != null && !"sync".equals(driver)) {
+            if (!"reactive".equals(driver)) {
+                throw new InvalidConfigException(String.format("%s is not a valid driver (must be sync or reactive)", driver));
+            }
+            if (!("insert".equals(op) || "find".equals(op) || "updateOne".equals(op) || "updateMany".equals(op) || "deleteOne".equals(op) || "deleteMany".equals(op) || "aggregate".equals(op))) {
+                throw new InvalidConfigException("Op must be insert, find, update(One|Many), delete(One|Many) or aggregate with the reactive driver");
+            }
+            this.reactive = true;
+            var inFlight = config.getInteger("inFlight", 100);
+            if (inFlight < 1) {
+                throw new InvalidConfigException("inFlight must be at least 1");
+            }
+            this.inFlightPermits = new Semaphore(inFlight);
+        }
         var varScope = config.getString("variablesScope");
         if("operation".equals(varScope)) {
             this.variablesScope = "operation";
@@ -161,17 +225,167 @@ public class WorkloadManager {
     }
 
     public void initAndStart(MongoClient client) {
+        initAndStart(client, null);
+    }
+
+    public void initAndStart(MongoClient client, com.mongodb.reactivestreams.client.MongoClient reactiveClient) {
         this.client = client;
+        this.reactiveClient = reactiveClient;
+        if (reactive && reactiveClient == null) {
+            throw new InvalidConfigException(String.format("Workload %s uses the reactive driver but there is no connection", name));
+        }
 
         LOGGER.info("Starting workload {}", name);
 
-        for (var i = 0; i < threads; i++) {
-            Thread thread = new WorkloadThread(name, i, getRunnable());
-            thread.start();
+        this.mode = executor;
+        if ("virtual".equals(mode) && !virtualThreadsAvailable()) {
+            LOGGER.warn("Workload {}: virtual threads are not available in this JVM, running on {} pooled carrier threads instead", name, carrierThreads);
+            this.mode = "pooled";
+        }
+
+        synchronized (this) {
+            started = true;
+            for (var i = 0; i < threads; i++) {
+                startClient();
+            }
+        }
+    }
+
+    private void startClient() {
+        var i = clients.size();
+        var runnable = getRunnable();
+        switch (mode) {
+            case "virtual":
+                var context = new WorkloadContext(name, i);
+                startVirtualThread(String.format("%s-%d", name, i), context.wrap(runnable));
+                break;
+            case "pooled":
+                if (pool == null || !pool.start(new WorkloadContext(name, i), runnable)) {
+                    // the previous pool shuts down when all its clients are done
+                    pool = new PooledExecutor(name, carrierThreads);
+                    pool.start(new WorkloadContext(name, i), runnable);
+                }
+                break;
+            default:
+                Thread thread = new WorkloadThread(name, i, runnable);
+                thread.start();
+        }
+        clients.add(runnable);
+    }
+
+    /**
+     * Scale the workload to `n` threads (simulated clients) at runtime. New clients start right away; removed clients
+     * (the most recently started ones) stop at the end of their current iteration.
+     */
+    public synchronized void setThreads(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("threads must not be negative");
+        }
+        if (!started) {
+            threads = n;
+            return;
+        }
+        while (clients.size() < n) {
+            startClient();
+        }
+        while (clients.size() > n) {
+            var client = clients.remove(clients.size() - 1);
+            if (!(client instanceof AbstractRunner)) {
+                clients.add(client);
+                throw new IllegalStateException(String.format("Workload %s cannot be scaled down", name));
+            }
+            ((AbstractRunner) client).stop();
+        }
+        threads = n;
+    }
+
+    public synchronized int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Change the pace at runtime. This replaces the target rate, if any.
+     */
+    public synchronized void setPace(int pace) {
+        if (pace < 0) {
+            throw new IllegalArgumentException("pace must not be negative");
+        }
+        this.arrivalRate = null;
+        this.pace = pace;
+    }
+
+    /**
+     * Change the target rate (ops/s) at runtime. This replaces the pace, if any.
+     */
+    public synchronized void setRate(double rate) {
+        if (arrivalRate == null) {
+            arrivalRate = ArrivalRate.parse(rate);
+        } else {
+            arrivalRate.setRate(rate);
+        }
+        this.pace = 0;
+    }
+
+    public void setPaused(boolean paused) {
+        var rate = arrivalRate;
+        if (!paused && rate != null) {
+            // before resuming, so that no thread claims a slot from the pause
+            rate.resync();
+        }
+        this.paused = paused;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return the current settings of the workload, as shown by the HTTP control API
+     */
+    public synchronized Document describe() {
+        return new Document("name", name)
+            .append("op", op)
+            .append("template", config.getString("template"))
+            .append("threads", threads)
+            .append("pace", pace)
+            .append("rate", arrivalRate == null ? null : arrivalRate.getRate())
+            .append("paused", paused);
+    }
+
+    // Thread.ofVirtual() is only available from Java 21 (the build targets Java 11), so look it up reflectively
+
+    private static boolean virtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return Runtime.version().feature() >= 21;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void startVirtualThread(String name, Runnable task) {
+        try {
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            builderClass.getMethod("start", Runnable.class).invoke(builder, task);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot start virtual thread", e);
         }
     }
 
     private Runnable getRunnable() {
+        if (reactive) {
+            switch (op) {
+                case "insert": return new ReactiveInsertRunner(this, reporter);
+                case "find": return new ReactiveFindRunner(this, reporter);
+                case "updateOne": return new ReactiveUpdateRunner(this, reporter, false);
+                case "updateMany": return new ReactiveUpdateRunner(this, reporter, true);
+                case "deleteOne": return new ReactiveDeleteRunner(this, reporter, false);
+                case "deleteMany": return new ReactiveDeleteRunner(this, reporter, true);
+                case "aggregate": return new ReactiveAggregationRunner(this, reporter);
+            }
+        }
         switch (op) {
             case "insert": return new InsertRunner(this, reporter);
             case "find": return new FindRunner(this, reporter);
@@ -185,6 +399,8 @@ public class WorkloadManager {
             case "timeseries": return new TimeSeriesRunner(this, reporter);
             case "bucketTimeseries": return new BucketTimeSeriesRunner(this, reporter);
             case "custom": return new CustomRunner(this, reporter);
+            case "transaction": return new TransactionRunner(this, reporter);
+            case "mix": return new MixRunner(this, reporter);
             case "kafkaInsert": return new KafkaInsertRunner(this, reporter);
             case "jdbc": return new JDBCRunner(this, reporter);
             default:
@@ -204,10 +420,76 @@ public class WorkloadManager {
         }
     }
 
+    /**
+     * Create the runner for one of the operations of a `mix` workload. The operation inherits the settings of this
+     * workload (template, variables, read and write concerns...) except those that apply to the mix as a whole (threads,
+     * pace or rate, start and stop conditions), and reports as `name.opName`.
+     */
+    public synchronized Runnable newMixedRunner(Document opConfig, String opName) {
+        return mixedOps.computeIfAbsent(opName, k -> _mixedOp(opConfig, opName)).getRunnable();
+    }
+
+    private WorkloadManager _mixedOp(Document opConfig, String opName) {
+        var subConfig = new Document(config);
+        for (var key : List.of("params", "batch", "threads", "pace", "rate", "stopAfter", "stopAfterDuration",
+                "startAfterDuration", "executor", "carrierThreads", "driver", "inFlight")) {
+            subConfig.remove(key);
+        }
+        for (var key : List.of("op", "params", "batch", "variables", "variablesScope", "readPreference", "readConcern", "writeConcern")) {
+            if (opConfig.containsKey(key)) {
+                subConfig.put(key, opConfig.get(key));
+            }
+        }
+
+        var sub = new WorkloadManager(subConfig, reporter, templateConfig);
+        sub.name = String.format("%s.%s", name, opName);
+        sub.client = client;
+        sub.reactiveClient = reactiveClient;
+        return sub;
+    }
+
+    /**
+     * Compile a template from this workload's config (a filter, an update...). It is compiled once for the whole
+     * workload, and all its runners share the compiled form.
+     *
+     * @return the compiled template, or null if `from` is null
+     */
+    public synchronized DocumentGenerator compile(Document from) {
+        return from == null ? null : compiledDocuments.computeIfAbsent(from, k -> templateConfig.compile(from));
+    }
+
+    /**
+     * Compile a list of templates from this workload's config (eg. an aggregation pipeline) once for the whole workload
+     *
+     * @return the compiled list, or null if `from` is null
+     */
+    public synchronized ListGenerator compile(List<Document> from) {
+        return from == null ? null : compiledLists.computeIfAbsent(from, k -> templateConfig.compile(from));
+    }
+
+    /**
+     * Compile a single template expression from this workload's config once for the whole workload
+     */
+    public synchronized Generator compileExpression(Object expression) {
+        return expression == null ? templateConfig.compileExpression(null) : compiledExpressions.computeIfAbsent(expression, templateConfig::compileExpression);
+    }
+
     public MongoClient getMongoClient() {
         return client;
     }
 
+    public com.mongodb.reactivestreams.client.MongoClient getReactiveClient() {
+        return reactiveClient;
+    }
+
+    public boolean isReactive() {
+        return reactive;
+    }
+
+    public Semaphore getInFlightPermits() {
+        return inFlightPermits;
+    }
+
     public TemplateManager getTemplateConfig() {
         return templateConfig;
     }
@@ -216,6 +498,10 @@ public class WorkloadManager {
         return pace;
     }
 
+    public ArrivalRate getArrivalRate() {
+        return arrivalRate;
+    }
+
     public int getBatch() {
         return batch;
     }
@@ -95,6 +95,19 @@ public class MongoClientHelper {
 
     }
 
+    /**
+     * Reactive streams client, for workloads that use `"driver": "reactive"`
+     */
+    public static com.mongodb.reactivestreams.client.MongoClient reactiveClient(String uri, Document encryption) {
+        if (isOn(encryption)) {
+            throw new InvalidConfigException("The reactive driver does not support encryption - use the sync driver for encrypted workloads");
+        }
+        return com.mongodb.reactivestreams.client.MongoClients.create(MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(uri))
+            .uuidRepresentation(UuidRepresentation.STANDARD)
+            .build());
+    }
+
     private static void createEncryptedCollection(MongoClient encryptedClient, ClientEncryption clientEncryption,
             Document collDef) {
 
@@ -0,0 +1,316 @@
+package org.schambon.loadsimrunner.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+
+/**
+ * Stand-in for a MongoDB collection when running without a server (the top-level `sink` option).
+ *
+ * Written documents are BSON-encoded (unless `encode` is false), then either discarded or kept in a bounded in-memory
+ * store, oldest first out. Writes report one matched / modified / deleted document per filter; reads return nothing.
+ * This measures how fast SimRunner itself can generate operations.
+ */
+public class SinkCollection {
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final ThreadLocal<BasicOutputBuffer> BUFFER = ThreadLocal.withInitial(BasicOutputBuffer::new);
+
+    // same UUID representation as MongoClientHelper's clients
+    private static final CodecRegistry CODEC_REGISTRY = CodecRegistries.withUuidRepresentation(MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD);
+
+    private final MongoNamespace namespace;
+    private final boolean encode;
+    private final Object[] store; // null when discarding
+    private final AtomicLong written = new AtomicLong();
+
+    private SinkCollection(MongoNamespace namespace, boolean encode, int maxDocuments) {
+        this.namespace = namespace;
+        this.encode = encode;
+        this.store = maxDocuments > 0 ? new Object[maxDocuments] : null;
+    }
+
+    /**
+     * Parse the `sink` config and create a sink for a namespace
+     *
+     * @param config `true`, or `{"mode": "discard"|"memory", "encode": true, "maxDocuments": 100000}`
+     */
+    public static MongoCollection<Document> create(Object config, String database, String collection) {
+        var mode = "discard";
+        var encode = true;
+        var maxDocuments = 100000;
+
+        if (config instanceof Document) {
+            var doc = (Document) config;
+            mode = doc.getString("mode") == null ? mode : doc.getString("mode");
+            encode = doc.getBoolean("encode", encode);
+            maxDocuments = doc.getInteger("maxDocuments", maxDocuments);
+        } else if (!Boolean.TRUE.equals(config)) {
+            throw new InvalidConfigException("sink must be true or a document");
+        }
+
+        switch (mode) {
+            case "discard":
+                maxDocuments = 0;
+                break;
+            case "memory":
+                if (maxDocuments <= 0) {
+                    throw new InvalidConfigException("sink maxDocuments must be positive");
+                }
+                break;
+            default:
+                throw new InvalidConfigException(String.format("Unknown sink mode: %s (must be discard or memory)", mode));
+        }
+
+        var sink = new SinkCollection(new MongoNamespace(database == null ? "sink" : database, collection == null ? "sink" : collection), encode, maxDocuments);
+        return sink.collection(Document.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> MongoCollection<T> collection(Class<T> documentClass) {
+        return (MongoCollection<T>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(),
+            new Class<?>[] {MongoCollection.class}, new CollectionHandler(documentClass));
+    }
+
+    private long count() {
+        return store == null ? 0 : Math.min(written.get(), store.length);
+    }
+
+    private void write(Object document) {
+        Object stored = document;
+        if (encode) {
+            stored = encode(document);
+        }
+        var position = written.getAndIncrement();
+        if (store != null) {
+            var idx = (int) (position % store.length);
+            synchronized (store) {
+                store[idx] = stored;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] encode(Object document) {
+        var buffer = BUFFER.get();
+        buffer.truncateToPosition(0);
+        try (var writer = new BsonBinaryWriter(buffer)) {
+            ((Encoder<Object>) CODEC_REGISTRY.get(document.getClass())).encode(writer, document, ENCODER_CONTEXT);
+        }
+        return store == null ? null : buffer.toByteArray();
+    }
+
+    private void touch(Object filterOrUpdate) {
+        if (encode) {
+            if (filterOrUpdate instanceof Bson) {
+                ((Bson) filterOrUpdate).toBsonDocument(Document.class, CODEC_REGISTRY);
+            } else if (filterOrUpdate instanceof List) {
+                for (var stage : (List<?>) filterOrUpdate) {
+                    touch(stage);
+                }
+            }
+        }
+    }
+
+    private class CollectionHandler implements InvocationHandler {
+        private final Class<?> documentClass;
+
+        CollectionHandler(Class<?> documentClass) {
+            this.documentClass = documentClass;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "insertOne":
+                    write(argument(args, documentClass));
+                    return InsertOneResult.unacknowledged();
+                case "insertMany":
+                    for (var doc : (List<?>) argument(args, List.class)) {
+                        write(doc);
+                    }
+                    return InsertManyResult.unacknowledged();
+                case "updateOne":
+                case "updateMany":
+                    for (var arg : args) {
+                        touch(arg);
+                    }
+                    return UpdateResult.acknowledged(1, 1L, null);
+                case "replaceOne": {
+                    // (session?, filter, replacement, options?)
+                    var first = args[0] instanceof Bson ? 0 : 1;
+                    touch(args[first]);
+                    write(args[first + 1]);
+                    return UpdateResult.acknowledged(1, 1L, null);
+                }
+                case "deleteOne":
+                case "deleteMany":
+                    for (var arg : args) {
+                        touch(arg);
+                    }
+                    return DeleteResult.acknowledged(1);
+                case "bulkWrite":
+                    return bulkWrite((List<?>) argument(args, List.class));
+                case "find":
+                case "aggregate":
+                    if (args != null) {
+                        for (var arg : args) {
+                            touch(arg);
+                        }
+                    }
+                    return emptyIterable(method.getReturnType());
+                case "countDocuments":
+                case "estimatedDocumentCount":
+                    return count();
+                case "createIndex":
+                    return "sink";
+                case "drop":
+                    return null;
+                case "withDocumentClass":
+                    return collection((Class<?>) args[0]);
+                case "withReadPreference":
+                case "withReadConcern":
+                case "withWriteConcern":
+                case "withCodecRegistry":
+                case "withTimeout":
+                    return proxy;
+                case "getCodecRegistry":
+                    return CODEC_REGISTRY;
+                case "getNamespace":
+                    return namespace;
+                case "getDocumentClass":
+                    return documentClass;
+                case "toString":
+                    return String.format("SinkCollection(%s)", namespace);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(String.format("%s is not supported by the sink collection", method.getName()));
+            }
+        }
+
+        // the first argument may be a ClientSession
+        private Object argument(Object[] args, Class<?> type) {
+            for (var arg : args) {
+                if (type.isInstance(arg)) {
+                    return arg;
+                }
+            }
+            throw new IllegalArgumentException(String.format("No %s argument", type.getSimpleName()));
+        }
+
+        private BulkWriteResult bulkWrite(List<?> models) {
+            int inserted = 0, matched = 0, removed = 0;
+            for (var model : models) {
+                if (model instanceof InsertOneModel) {
+                    write(((InsertOneModel<?>) model).getDocument());
+                    inserted++;
+                } else if (model instanceof UpdateOneModel) {
+                    var update = (UpdateOneModel<?>) model;
+                    touch(update.getFilter());
+                    touch(update.getUpdate() != null ? update.getUpdate() : update.getUpdatePipeline());
+                    matched++;
+                } else if (model instanceof UpdateManyModel) {
+                    var update = (UpdateManyModel<?>) model;
+                    touch(update.getFilter());
+                    touch(update.getUpdate() != null ? update.getUpdate() : update.getUpdatePipeline());
+                    matched++;
+                } else if (model instanceof ReplaceOneModel) {
+                    var replace = (ReplaceOneModel<?>) model;
+                    touch(replace.getFilter());
+                    write(replace.getReplacement());
+                    matched++;
+                } else if (model instanceof DeleteOneModel) {
+                    touch(((DeleteOneModel<?>) model).getFilter());
+                    removed++;
+                } else if (model instanceof DeleteManyModel) {
+                    touch(((DeleteManyModel<?>) model).getFilter());
+                    removed++;
+                }
+            }
+            return BulkWriteResult.acknowledged(inserted, matched, removed, matched, Collections.emptyList(), Collections.emptyList());
+        }
+    }
+
+    /**
+     * A FindIterable / AggregateIterable with no results. Builder methods (limit, projection...) return itself.
+     */
+    private static Object emptyIterable(Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "iterator":
+                case "cursor":
+                    return emptyCursor();
+                case "first":
+                    return null;
+                case "into":
+                    return args[0];
+                case "forEach":
+                    return null;
+                case "toString":
+                    return "SinkIterable";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    if (method.getReturnType().isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new UnsupportedOperationException(String.format("%s is not supported by the sink collection", method.getName()));
+            }
+        });
+    }
+
+    private static MongoCursor<?> emptyCursor() {
+        return (MongoCursor<?>) Proxy.newProxyInstance(MongoCursor.class.getClassLoader(), new Class<?>[] {MongoCursor.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hasNext":
+                    return false;
+                case "tryNext":
+                case "getServerCursor":
+                    return null;
+                case "available":
+                    return 0;
+                case "close":
+                    return null;
+                case "next":
+                    throw new java.util.NoSuchElementException();
+                default:
+                    throw new UnsupportedOperationException(String.format("%s is not supported by the sink collection", method.getName()));
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package org.schambon.loadsimrunner.generators;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted random choice in constant time (Vose's alias method): each draw picks a column uniformly, then either the
+ * column itself or its alias.
+ */
+public class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights non-negative, with a positive sum
+     */
+    public AliasTable(double[] weights) {
+        var n = weights.length;
+        var total = 0d;
+        for (var w : weights) {
+            if (w < 0 || Double.isNaN(w)) {
+                throw new IllegalArgumentException("Weights must be non-negative");
+            }
+            total += w;
+        }
+        if (n == 0 || total <= 0 || Double.isInfinite(total)) {
+            throw new IllegalArgumentException("Weights must have a positive sum");
+        }
+
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        var scaled = new double[n];
+        var small = new int[n];
+        var large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (var i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            var less = small[--smallCount];
+            var more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // what remains is 1 up to rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * @return a random index, with probability proportional to its weight
+     */
+    public int next() {
+        var rnd = ThreadLocalRandom.current();
+        var column = rnd.nextInt(probability.length);
+        return rnd.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
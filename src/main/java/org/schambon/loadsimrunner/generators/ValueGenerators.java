@@ -9,6 +9,7 @@ import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import static java.time.ZoneOffset.UTC;
 import java.util.ArrayList;
@@ -29,10 +30,14 @@ import com.github.javafaker.Faker;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.schambon.loadsimrunner.ConstantGenerator;
 import org.schambon.loadsimrunner.DocumentGenerator;
 import org.schambon.loadsimrunner.Generator;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.schambon.loadsimrunner.geodata.Place;
 import org.schambon.loadsimrunner.geodata.Places;
+import org.schambon.loadsimrunner.runner.WorkloadContext;
+import org.schambon.loadsimrunner.template.KeyDistribution;
 import org.schambon.loadsimrunner.template.TemplateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +51,44 @@ public class ValueGenerators {
     private static ThreadLocal<AtomicLong> threadLocalSequenceHolder = new ThreadLocal<>();
 
     public static Generator constant(Object cst) {
-        return () -> cst;
+        return new ConstantGenerator(cst);
+    }
+
+    /**
+     * Evaluate a side-effect free operator once, at compile time, if all its parameters are constant.
+     * Only immutable results are folded, since the same instance is then returned by every call.
+     */
+    private static Generator fold(DocumentGenerator input, Generator gen) {
+        if (!input.isConstant()) {
+            return gen;
+        }
+        try {
+            var value = gen.generate();
+            if (_isImmutable(value)) {
+                return constant(value);
+            }
+        } catch (RuntimeException e) {
+            // don't fold, the error will be reported at generation time
+        }
+        return gen;
+    }
+
+    private static boolean _isImmutable(Object value) {
+        return value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double
+            || value instanceof Boolean || value instanceof Character || value instanceof BigDecimal
+            || value instanceof Instant || value instanceof Enum;
+    }
+
+    private static int _int(Object value, int defaultValue) {
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private static long _long(Object value, long defaultValue) {
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    private static double _double(Object value, double defaultValue) {
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
     }
     
     public static Generator bool() {
@@ -63,6 +105,11 @@ public class ValueGenerators {
 
     public static Generator threadSequence() {
         return () -> {
+            var context = WorkloadContext.current();
+            if (context != null) {
+                // one sequence per simulated client, even when clients share carrier threads
+                return context.computeContextValueIfAbsent("threadSequence", k -> new AtomicLong()).getAndIncrement();
+            }
             var alng = threadLocalSequenceHolder.get();
             synchronized (threadLocalSequenceHolder) {
                 if (alng == null) {
@@ -75,6 +122,11 @@ public class ValueGenerators {
     }
 
     public static Generator integer(DocumentGenerator params) {
+        if (params.isConstant("min", "max")) {
+            int min = _int(params.subGenerate("min"), Integer.MIN_VALUE);
+            int max = _int(params.subGenerate("max"), Integer.MAX_VALUE);
+            return () -> faker.number().numberBetween(min, max);
+        }
         return () -> {
             var p = params.generateDocument();
             return faker.number().numberBetween(p.getInteger("min", Integer.MIN_VALUE), p.getInteger("max", Integer.MAX_VALUE));
@@ -82,6 +134,11 @@ public class ValueGenerators {
     }
 
     public static Generator longValue(DocumentGenerator input) {
+        if (input.isConstant("min", "max")) {
+            long min = _long(input.subGenerate("min"), Long.MIN_VALUE);
+            long max = _long(input.subGenerate("max"), Long.MAX_VALUE);
+            return () -> faker.number().numberBetween(min, max);
+        }
         return () -> {
             var params = input.generateDocument();
             Number origin = (Number) params.get("min");
@@ -94,6 +151,16 @@ public class ValueGenerators {
     }
 
     public static Generator doubleValue(DocumentGenerator input) {
+        if (input.isConstant("min", "max", "decimals")) {
+            double min = _double(input.subGenerate("min"), Double.MIN_VALUE);
+            double max = _double(input.subGenerate("max"), Double.MAX_VALUE);
+            var decimals = input.subGenerate("decimals");
+            double factor = decimals == null ? 0d : Math.pow(10, ((Number) decimals).intValue());
+            return () -> {
+                double res = ThreadLocalRandom.current().nextDouble(min, max);
+                return factor == 0d ? res : Math.round(res * factor) / factor;
+            };
+        }
         return () -> {
 
             var params = input.generateDocument();
@@ -113,6 +180,15 @@ public class ValueGenerators {
     }
 
     public static Generator decimal(DocumentGenerator input) {
+        if (input.isConstant("min", "max")) {
+            long min = _long(input.subGenerate("min"), Long.MIN_VALUE);
+            long max = _long(input.subGenerate("max"), Long.MAX_VALUE);
+            return () -> {
+                long beforeDot = ThreadLocalRandom.current().nextLong(min, max);
+                long afterDot = ThreadLocalRandom.current().nextLong(0l, 1000000l);
+                return new BigDecimal(String.format("%d.%d", beforeDot, afterDot));
+            };
+        }
         return () -> {
             var params = input.generateDocument();
             Number origin = (Number) params.get("min");
@@ -127,6 +203,11 @@ public class ValueGenerators {
     }
 
     public static Generator natural(DocumentGenerator params) {
+        if (params.isConstant("min", "max")) {
+            int min = _int(params.subGenerate("min"), 0);
+            int max = _int(params.subGenerate("max"), Integer.MAX_VALUE);
+            return () -> faker.number().numberBetween(min, max);
+        }
         return () -> {
             var p = params.generateDocument();
             return faker.number().numberBetween(p.getInteger("min", 0), p.getInteger("max", Integer.MAX_VALUE));
@@ -134,6 +215,18 @@ public class ValueGenerators {
     }
 
     public static Generator gaussian(DocumentGenerator input) {
+        if (input.isConstant("mean", "sd", "type")) {
+            double mean = _double(input.subGenerate("mean"), 0d);
+            double sd = _double(input.subGenerate("sd"), 1d);
+            var type = input.subGenerate("type");
+            if ("int".equals(type)) {
+                return () -> (int) Math.round(ThreadLocalRandom.current().nextGaussian() * sd + mean);
+            } else if ("long".equals(type)) {
+                return () -> Math.round(ThreadLocalRandom.current().nextGaussian() * sd + mean);
+            } else {
+                return () -> ThreadLocalRandom.current().nextGaussian() * sd + mean;
+            }
+        }
         return () -> {
             var params = input.generateDocument();
             var mean = ((Number) params.get("mean")).doubleValue();
@@ -153,7 +246,7 @@ public class ValueGenerators {
     }
 
     public static Generator product(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = (List<Number>) params.get("of");
             var type = params.getString("type");
@@ -169,11 +262,11 @@ public class ValueGenerators {
                 default:
                     return 0l;
             }
-        };
+        });
     }
 
     public static Generator sum(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = (List<Number>) params.get("of");
             var type = params.getString("type");
@@ -189,11 +282,11 @@ public class ValueGenerators {
                 default:
                     return 0l;
             }
-        };
+        });
     }
 
     public static Generator abs(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = (Number) params.get("of");
             if (of instanceof Long) {
@@ -203,21 +296,21 @@ public class ValueGenerators {
             } else {
                 return Math.abs(of.doubleValue());
             }
-        };
+        });
     }
 
     public static Generator mod(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = (Number) params.get("of");
             var by = (Number) params.get("by");
 
             return of.longValue() % by.longValue();
-        };
+        });
     }
 
     public static Generator toNumber(String target, DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = params.get("of").toString();
 
@@ -231,11 +324,11 @@ public class ValueGenerators {
                 default:
                     return 0;
             }
-        };
+        });
     }
 
     public static Generator stringConcat(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
 
             var sep = params.getString("sep");
@@ -248,22 +341,22 @@ public class ValueGenerators {
             Optional<String> result = of.stream().reduce((a,b) -> a.toString() + _sep + b.toString());
 
             if (result.isPresent()) return result.get(); else return "";
-        };
+        });
     }
 
     public static Generator stringTrim(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var of = input.generateDocument().getString("of");
             if (of == null) {
                 return "";
             } else {
                 return of.trim();
             }
-        };
+        });
     }
 
     public static Generator _toString(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             
             Object of = params.get("of");
@@ -274,7 +367,7 @@ public class ValueGenerators {
             } else {
                 return of.toString();
             }
-        };
+        });
     }
 
     public static Generator ngram(DocumentGenerator input) {
@@ -325,6 +418,20 @@ public class ValueGenerators {
     public static Generator date(DocumentGenerator input) {
         DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
 
+        if (input.isConstant("min", "max", "truncate")) {
+            var min = _dateBound(input.subGenerate("min"), dateTimeFormatter);
+            var max = _dateBound(input.subGenerate("max"), dateTimeFormatter);
+            var truncate = input.subGenerate("truncate");
+            var unit = truncate == null ? null : _chronoUnit((String) truncate);
+
+            return () -> {
+                var from = min == null ? new Date(0) : min;
+                var to = max == null ? Date.from(Instant.now().plus(3650, ChronoUnit.DAYS)) : max;
+                Date result = faker.date().between(from, to);
+                return unit == null ? result : Date.from(result.toInstant().truncatedTo(unit));
+            };
+        }
+
         return () -> {
             var params = input.generateDocument();
 
@@ -358,6 +465,20 @@ public class ValueGenerators {
         };
     } 
 
+    private static Date _dateBound(Object bound, DateTimeFormatter formatter) {
+        if (bound instanceof String) {
+            try {
+                return Date.from(Instant.from(formatter.parse((String) bound)));
+            } catch (DateTimeParseException e) {
+                throw new InvalidConfigException(String.format("Invalid %%date bound: %s", bound));
+            }
+        } else if (bound instanceof Date) {
+            return (Date) bound;
+        } else {
+            return null;
+        }
+    }
+
     public static Generator plusDate(DocumentGenerator input) {
         return () -> {
             var params = input.generateDocument();
@@ -371,29 +492,29 @@ public class ValueGenerators {
     }
 
     public static Generator ceilDate(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var base = Instant.ofEpochMilli(params.get("base", Date.class).getTime());
             var unit = params.getString("unit");
             if (unit == null) unit = "day";
             var chronoUnit = _chronoUnit(unit);
             return base.truncatedTo(chronoUnit).plus(1, chronoUnit);
-        };
+        });
     }
 
     public static Generator floorDate(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var base = Instant.ofEpochMilli(params.get("base", Date.class).getTime());
             var unit = params.getString("unit");
             if (unit == null) unit = "day";
             var chronoUnit = _chronoUnit(unit);
             return base.truncatedTo(chronoUnit);
-        };
+        });
     }
 
     public static Generator extractDate(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             if (params.keySet().size() >= 1) {
                 var key = params.keySet().iterator().next();
@@ -419,7 +540,7 @@ public class ValueGenerators {
                 LOGGER.warn("%extractDate found with empty argument");
                 return null;
             }
-        };
+        });
     }
 
     private static ChronoUnit _chronoUnit(String unit) {
@@ -446,6 +567,16 @@ public class ValueGenerators {
     }
 
     public static Generator binary(DocumentGenerator input) {
+        if (input.isConstant("size", "as")) {
+            var sizeParam = input.subGenerate("size");
+            int size = sizeParam == null ? 512 : ((Number) sizeParam).intValue();
+            boolean hex = "hex".equals(input.subGenerate("as"));
+            return () -> {
+                var bytes = new byte[size];
+                ThreadLocalRandom.current().nextBytes(bytes);
+                return hex ? bytesToHex(bytes) : bytes;
+            };
+        }
 
         return () -> {
             var params = input.generateDocument();
@@ -510,6 +641,19 @@ public class ValueGenerators {
     }
 
     public static Generator array(DocumentGenerator input) {
+        if (input.isConstant("min", "max", "size")) {
+            int min = _int(input.subGenerate("min"), 0);
+            int max = _int(input.subGenerate("max"), 10);
+            int fixedSize = _int(input.subGenerate("size"), -1);
+            return () -> {
+                int size = fixedSize == -1 ? ThreadLocalRandom.current().nextInt(min, max + 1) : fixedSize;
+                List<Object> result = new ArrayList<>(size);
+                for (var i = 0; i < size; i++) {
+                    result.add(input.subGenerate("of"));
+                }
+                return result;
+            };
+        }
         return () -> {
             var params = input.generateDocument();
 
@@ -528,6 +672,13 @@ public class ValueGenerators {
     }
 
     public static Generator oneOf(DocumentGenerator input) {
+        if (input.isConstant("weights")) {
+            var table = _oneOfTable(input);
+            if (table != null) {
+                return () -> input.subGenerateFromArray("options", table.next());
+            }
+        }
+
         return () -> {
             var size = input.subGeneratorArraySize("options");
             List<Integer> applicableWeights = new ArrayList<>(size);
@@ -579,6 +730,34 @@ public class ValueGenerators {
         };
     }
 
+    /**
+     * @return an alias table for constant weights, or null to keep the dynamic path (no options, no positive weight...)
+     */
+    private static AliasTable _oneOfTable(DocumentGenerator input) {
+        var size = input.subGeneratorArraySize("options");
+        if (size == 0) {
+            return null;
+        }
+        var weights = new double[size];
+        var lweights = input.subGenerate("weights");
+        for (var i = 0; i < size; i++) {
+            if (lweights instanceof List && i < ((List<?>) lweights).size()) {
+                var w = ((List<?>) lweights).get(i);
+                if (!(w instanceof Number) || ((Number) w).intValue() < 0) {
+                    return null;
+                }
+                weights[i] = ((Number) w).intValue();
+            } else {
+                weights[i] = 1;
+            }
+        }
+        try {
+            return new AliasTable(weights);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public static Generator keyValueMap(DocumentGenerator input) {
         return () -> {
 
@@ -603,7 +782,19 @@ public class ValueGenerators {
         };
     }
 
-    public static Generator dictionary(DocumentGenerator input, Map<String, List<? extends Object>> dictionaries) {
+    public static Generator dictionary(DocumentGenerator input, Map<String, List<? extends Object>> dictionaries, Map<String, KeyDistribution> distributions) {
+        if (input.isConstant("name") && input.subGenerate("name") instanceof String) {
+            var name = (String) input.subGenerate("name");
+            return () -> {
+                // dictionaries may be loaded after the template is compiled
+                List<? extends Object> dict = dictionaries.get(name);
+                if (dict == null) {
+                    LOGGER.warn("Could not find dictionary {}", name);
+                    return null;
+                }
+                return pick(dict, distributions.get(name));
+            };
+        }
         return () -> {
             var params = input.generateDocument();
 
@@ -617,11 +808,20 @@ public class ValueGenerators {
                 LOGGER.warn("Could not find dictionary {}", name);
                 return null;
             }
-            var idx = ThreadLocalRandom.current().nextInt(dict.size());
-            return dict.get(idx);
+            return pick(dict, distributions.get(name));
         };
     }
 
+    /**
+     * @param distribution null for uniform
+     */
+    public static Object pick(List<? extends Object> dict, KeyDistribution distribution) {
+        if (distribution == null) {
+            return dict.get(ThreadLocalRandom.current().nextInt(dict.size()));
+        }
+        return dict.get((int) distribution.next(dict.size()));
+    }
+
     public static Generator dictionaryConcat(DocumentGenerator input, Map<String, List<? extends Object>> dictionaries) {
         return () -> {
             var params = input.generateDocument();
@@ -719,6 +919,22 @@ public class ValueGenerators {
     
 
     public static Generator stringTemplate(DocumentGenerator input) {
+        if (input.isConstant("template") && input.subGenerate("template") instanceof String) {
+            var template = ((String) input.subGenerate("template")).toCharArray();
+            return () -> {
+                var rnd = ThreadLocalRandom.current();
+                var chars = new char[template.length];
+                for (var i = 0; i < template.length; i++) {
+                    switch (template[i]) {
+                        case '&': chars[i] = numbers[rnd.nextInt(10)]; break;
+                        case '?': chars[i] = letters[rnd.nextInt(26)]; break;
+                        case '!': chars[i] = LETTERS[rnd.nextInt(26)]; break;
+                        default: chars[i] = template[i];
+                    }
+                }
+                return new String(chars);
+            };
+        }
         return () -> {
             Document params = input.generateDocument();
             String template = params.getString("template");
@@ -784,7 +1000,7 @@ public class ValueGenerators {
         /*
          * { x: {"%descend": {"in": some_object, "path": "a.b.c"}}
          */
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
 
             var in = params.get("in");
@@ -801,12 +1017,12 @@ public class ValueGenerators {
                 LOGGER.debug("Descend target is not a subdocument, ignoring path");
                 return in;
             }
-        };
+        });
     }
 
 
     public static Generator head(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var of = params.get("of");
             if (of == null) {
@@ -833,11 +1049,11 @@ public class ValueGenerators {
                     return null;
                 }
             }
-        };
+        });
     }
 
     public static Generator arrayElemAt(DocumentGenerator input) {
-        return () -> {
+        return fold(input, () -> {
             var params = input.generateDocument();
             var arr = params.get("from");
             if (arr == null || ! (arr instanceof List)) {
@@ -847,6 +1063,6 @@ public class ValueGenerators {
             var at = params.getInteger("at", 0);
 
             return ((List) arr).get(at);
-        };
+        });
     }
 }
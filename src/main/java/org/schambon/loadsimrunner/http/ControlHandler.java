@@ -0,0 +1,154 @@
+package org.schambon.loadsimrunner.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.schambon.loadsimrunner.SimRunner;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Control workloads at runtime:
+ * - `GET /workloads`: list the workloads and their settings
+ * - `POST /workloads` with a workload definition: start a new workload
+ * - `GET /workloads/<name>`: settings of one workload
+ * - `POST /workloads/<name>` with any of `{threads, pace, rate, paused}`: change them
+ * - `POST /workloads/<name>/pause` and `/resume`
+ */
+public class ControlHandler extends AbstractHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ControlHandler.class);
+
+    private SimRunner simRunner;
+
+    public ControlHandler(SimRunner simRunner) {
+        this.simRunner = simRunner;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+
+        var pathInfo = request.getPathInfo();
+        if (!(pathInfo.equals("/workloads") || pathInfo.startsWith("/workloads/"))) {
+            return;
+        }
+        baseRequest.setHandled(true);
+        response.setContentType("application/json");
+
+        var post = "POST".equals(request.getMethod());
+        if (!post && !"GET".equals(request.getMethod())) {
+            _respond(response, 405, new Document("error", "Use GET or POST"));
+            return;
+        }
+
+        try {
+            if (pathInfo.equals("/workloads") || pathInfo.equals("/workloads/")) {
+                if (post) {
+                    var started = simRunner.startWorkload(_body(request));
+                    _respond(response, 201, _describe(started));
+                } else {
+                    _respond(response, 200, _describe(simRunner.getWorkloads()));
+                }
+                return;
+            }
+
+            var path = pathInfo.substring("/workloads/".length());
+            String action = null;
+            var workload = simRunner.getWorkload(path);
+            if (workload == null && path.contains("/")) {
+                // names may contain slashes, so only take the last part as an action if needed
+                action = path.substring(path.lastIndexOf('/') + 1);
+                workload = simRunner.getWorkload(path.substring(0, path.lastIndexOf('/')));
+            }
+            if (workload == null) {
+                _respond(response, 404, new Document("error", String.format("No workload named %s", path)));
+                return;
+            }
+
+            if (action != null) {
+                if (!post || !("pause".equals(action) || "resume".equals(action))) {
+                    _respond(response, 404, new Document("error", String.format("Unknown action %s", action)));
+                    return;
+                }
+                workload.setPaused("pause".equals(action));
+                LOGGER.info("Workload {}: {}d", workload.getName(), action);
+            } else if (post) {
+                _update(workload, _body(request));
+            }
+            _respond(response, 200, workload.describe());
+        } catch (InvalidConfigException | IllegalArgumentException | IllegalStateException | JsonParseException e) {
+            _respond(response, 400, new Document("error", e.getMessage()));
+        }
+    }
+
+    private static void _update(WorkloadManager workload, Document changes) {
+        for (var key : changes.keySet()) {
+            if (!("threads".equals(key) || "pace".equals(key) || "rate".equals(key) || "paused".equals(key))) {
+                throw new IllegalArgumentException(String.format("Cannot change %s (only threads, pace, rate and paused)", key));
+            }
+            if ("paused".equals(key)) {
+                if (!(changes.get(key) instanceof Boolean)) {
+                    throw new IllegalArgumentException("paused must be true or false");
+                }
+            } else if (!(changes.get(key) instanceof Number)) {
+                throw new IllegalArgumentException(String.format("%s must be a number", key));
+            }
+        }
+        if (changes.containsKey("pace") && changes.containsKey("rate")) {
+            throw new IllegalArgumentException("pace and rate cannot be used at the same time");
+        }
+
+        if (changes.containsKey("pace")) {
+            workload.setPace(((Number) changes.get("pace")).intValue());
+        }
+        if (changes.containsKey("rate")) {
+            workload.setRate(((Number) changes.get("rate")).doubleValue());
+        }
+        if (changes.containsKey("paused")) {
+            workload.setPaused(changes.getBoolean("paused"));
+        }
+        if (changes.containsKey("threads")) {
+            workload.setThreads(((Number) changes.get("threads")).intValue());
+        }
+        LOGGER.info("Workload {} changed: {}", workload.getName(), changes.toJson());
+    }
+
+    private static Document _body(HttpServletRequest request) throws IOException {
+        var body = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (body.isBlank()) {
+            throw new IllegalArgumentException("Missing JSON body");
+        }
+        return Document.parse(body);
+    }
+
+    private static Object _describe(Iterable<WorkloadManager> workloads) {
+        var list = new ArrayList<Document>();
+        for (var workload : workloads) {
+            list.add(workload.describe());
+        }
+        return list;
+    }
+
+    private static void _respond(HttpServletResponse response, int status, Object body) throws IOException {
+        response.setStatus(status);
+        var writer = response.getWriter();
+        if (body instanceof Document) {
+            writer.print(((Document) body).toJson());
+        } else {
+            writer.print(new Document("workloads", body).toJson());
+        }
+        writer.flush();
+    }
+}
@@ -1,9 +1,7 @@
 package org.schambon.loadsimrunner.http;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
-import org.bson.Document;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.schambon.loadsimrunner.report.Reporter;
@@ -33,51 +31,44 @@ public class DownloadHander extends AbstractHandler {
             response.setStatus(200);
 
             var out = response.getWriter();
-
-            var header = new ArrayList<String>();
-
-            for (var report: reporter.getAllReports()) {
-                for (var task: report.getReport().keySet()) {
-                    var doc = (Document) report.getReport().get(task);
-
-                    if (header.size() == 0) {
-                        header.addAll(doc.keySet());
-
-                        var headerLine = new StringBuilder("\"timestamp\",\"task\",");
-                        for(var i = 0; i < header.size(); i++) {
-                            headerLine.append("\"");
-                            headerLine.append(header.get(i));
-                            headerLine.append("\"");
-                            if (i < header.size() - 1) {
-                                headerLine.append(",");
-                            }
-                        }
-                        out.println(headerLine.toString());
-                    }
-
-                    var line = new StringBuilder();
-                    line.append("\"");
-                    line.append(report.getTime().toString());
-                    line.append("\",\"");
-                    line.append(task);
-                    line.append("\",");
-
-                    for (var i = 0; i < header.size(); i++) {
-                        line.append("\"");
-                        line.append(doc.get(header.get(i)).toString());
-                        line.append("\"");
-                        if (i < header.size() - 1) {
-                            line.append(",");
-                        }
-                    }
-                    out.println(line.toString());
-                }   
+            var history = reporter.getHistory();
+            var header = history.columns();
+
+            var headerLine = new StringBuilder("\"timestamp\",\"task\",");
+            for(var i = 0; i < header.size(); i++) {
+                headerLine.append("\"");
+                headerLine.append(header.get(i));
+                headerLine.append("\"");
+                if (i < header.size() - 1) {
+                    headerLine.append(",");
+                }
             }
+            out.println(headerLine.toString());
+
+            // straight from the history's columns, without building report documents. The lines are buffered so that
+            // a slow client doesn't hold the history's lock
+            var csv = new StringBuilder();
+            history.forEachRow(null, (time, task, values) -> {
+                csv.append("\"");
+                csv.append(time.toString());
+                csv.append("\",\"");
+                csv.append(task);
+                csv.append("\",");
+
+                for (var i = 0; i < values.length; i++) {
+                    csv.append("\"");
+                    csv.append(values[i]);
+                    csv.append("\"");
+                    if (i < values.length - 1) {
+                        csv.append(",");
+                    }
+                }
+                csv.append(System.lineSeparator());
+            });
+            out.print(csv);
 
             out.flush();
         }
         
     }
-
-    
 }
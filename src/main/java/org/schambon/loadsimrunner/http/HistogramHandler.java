@@ -0,0 +1,94 @@
+package org.schambon.loadsimrunner.http;
+
+import java.io.IOException;
+
+import org.bson.Document;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.schambon.loadsimrunner.report.Reporter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Latency histograms of the whole run and of its phases:
+ * - `GET /histograms`: JSON summary
+ * - `GET /histograms/hgrm?workload=<name>[&phase=<name>]`: HdrHistogram percentile distribution
+ * - `GET /histograms/hlog`: HdrHistogram interval log, one interval per phase and workload
+ * - `POST /histograms/phase?name=<name>`: start a new phase (if control is enabled)
+ */
+public class HistogramHandler extends AbstractHandler {
+
+    private Reporter reporter;
+    private boolean control;
+
+    public HistogramHandler(Reporter reporter, boolean control) {
+        this.reporter = reporter;
+        this.control = control;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+
+        var pathInfo = request.getPathInfo();
+        if (!(pathInfo.equals("/histograms") || pathInfo.startsWith("/histograms/"))) {
+            return;
+        }
+        baseRequest.setHandled(true);
+        var histograms = reporter.getRunHistograms();
+        var out = new StringBuilder();
+
+        switch (pathInfo) {
+            case "/histograms":
+                response.setContentType("application/json");
+                out.append(histograms.summary().toJson());
+                break;
+            case "/histograms/hgrm":
+                var workload = request.getParameter("workload");
+                var phase = request.getParameter("phase");
+                if (workload == null || !histograms.writeDistribution(workload, phase, out)) {
+                    _error(response, 404, phase == null ? String.format("No workload named %s", workload)
+                        : String.format("No workload named %s in phase %s", workload, phase));
+                    return;
+                }
+                response.setContentType("text/plain; charset=utf-8");
+                break;
+            case "/histograms/hlog":
+                response.setContentType("text/plain; charset=utf-8");
+                histograms.writeLog(out);
+                break;
+            case "/histograms/phase":
+                if (!control || !"POST".equals(request.getMethod())) {
+                    _error(response, 405, "Use POST, with control enabled");
+                    return;
+                }
+                try {
+                    histograms.startPhase(request.getParameter("name"));
+                } catch (IllegalArgumentException e) {
+                    _error(response, 400, e.getMessage());
+                    return;
+                }
+                response.setContentType("application/json");
+                out.append(new Document("phase", request.getParameter("name")).toJson());
+                break;
+            default:
+                _error(response, 404, String.format("Unknown path %s", pathInfo));
+                return;
+        }
+
+        response.setStatus(200);
+        var writer = response.getWriter();
+        writer.print(out);
+        writer.flush();
+    }
+
+    private static void _error(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        var writer = response.getWriter();
+        writer.print(new Document("error", message).toJson());
+        writer.flush();
+    }
+}
@@ -6,24 +6,39 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.resource.Resource;
+import org.schambon.loadsimrunner.SimRunner;
 import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.report.ReporterCallback;
 
 public class HttpServer {
     
     private Reporter reporter;
+    private SimRunner simRunner;
     private boolean enabled;
+    private boolean control;
+    private ReportStreamHandler reportStream;
     private int port;
     private String host;
 
-    public HttpServer(Document config, Reporter reporter) {
+    public HttpServer(Document config, Reporter reporter, SimRunner simRunner) {
         this.reporter = reporter;
+        this.simRunner = simRunner;
 
         this.enabled = config.getBoolean("enabled", false);
+        this.control = config.getBoolean("control", false);
+        this.reportStream = new ReportStreamHandler(reporter);
         this.port = config.getInteger("port", 3000);
         var rawHost = config.getString("host");
         this.host = rawHost == null ? "localhost" : rawHost;
     }
 
+    /**
+     * @return the callback feeding `/report/stream`, or null if the server is disabled
+     */
+    public ReporterCallback getReportStream() {
+        return enabled ? reportStream : null;
+    }
+
     public void start() throws Exception {
         if (! enabled) return;
 
@@ -39,8 +54,14 @@ public class HttpServer {
         staticHandler.setWelcomeFiles(new String[] {"index.html"});
     
         HandlerList list = new HandlerList();
+        list.addHandler(reportStream); // before ReportHandler, which takes everything under /report
         list.addHandler(new ReportHandler(reporter));
         list.addHandler(new DownloadHander(reporter));
+        list.addHandler(new MetricsHandler(reporter));
+        list.addHandler(new HistogramHandler(reporter, control));
+        if (control) {
+            list.addHandler(new ControlHandler(simRunner));
+        }
         list.addHandler(staticHandler);
         server.setHandler(list);
 
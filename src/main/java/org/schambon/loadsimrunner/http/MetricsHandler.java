@@ -0,0 +1,42 @@
+package org.schambon.loadsimrunner.http;
+
+import java.io.IOException;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.schambon.loadsimrunner.report.Reporter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Prometheus scrape endpoint (`/metrics`)
+ */
+public class MetricsHandler extends AbstractHandler {
+
+    private Reporter reporter;
+
+    public MetricsHandler(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+
+        var pathInfo = request.getPathInfo();
+        if (pathInfo.equals("/metrics")) {
+            baseRequest.setHandled(true);
+
+            response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+            response.setStatus(200);
+
+            var out = new StringBuilder();
+            reporter.getMetrics().write(out);
+            var writer = response.getWriter();
+            writer.print(out);
+            writer.flush();
+        }
+    }
+}
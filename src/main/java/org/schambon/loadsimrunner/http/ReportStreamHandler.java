@@ -0,0 +1,254 @@
+package org.schambon.loadsimrunner.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.report.ReporterCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Server-Sent Events stream of reports (`/report/stream`): each report is serialized once when it is computed and
+ * pushed to all subscribers.
+ *
+ * Reports are written from the reporter callback with non-blocking servlet output: whatever a client cannot take
+ * right away waits in its bounded buffer, and the container sends it when the client catches up, so a slow client
+ * never holds up the reporter and no thread is spent per client. If a client falls more than {@link #BUFFER_SIZE}
+ * reports behind, it is disconnected. Clients can reconnect with `Last-Event-ID` (or `?since=`) to get the reports
+ * they missed (up to {@link #BUFFER_SIZE}).
+ */
+public class ReportStreamHandler extends AbstractHandler implements ReporterCallback {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportStreamHandler.class);
+
+    static final int BUFFER_SIZE = 64;
+    private static final long KEEPALIVE_SECONDS = 15;
+    private static final byte[] KEEPALIVE = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private Reporter reporter;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // comments to keep idle connections open, and to find out about clients that went away
+    private final ScheduledExecutorService keepalive = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "report-stream-keepalive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReportStreamHandler(Reporter reporter) {
+        this.reporter = reporter;
+        keepalive.scheduleWithFixedDelay(() -> {
+            for (var subscriber : subscribers) {
+                subscriber.offer(null, KEEPALIVE);
+            }
+        }, KEEPALIVE_SECONDS, KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+
+        var pathInfo = request.getPathInfo();
+        if (!pathInfo.equals("/report/stream")) {
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        var since = request.getHeader("Last-Event-ID");
+        if (since == null) {
+            since = request.getParameter("since");
+        }
+        Instant sinceInstant = null;
+        if (since != null) {
+            try {
+                sinceInstant = Instant.from(DateTimeFormatter.ISO_INSTANT.parse(since));
+            } catch (DateTimeParseException e) {
+                throw new ServletException(String.format("'since' parameter must be in ISO8601 strict Zulu format (found: %s)", since));
+            }
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setStatus(200);
+        response.flushBuffer();
+
+        var async = request.startAsync();
+        async.setTimeout(0);
+        var subscriber = new Subscriber(async);
+
+        synchronized (this) {
+            if (sinceInstant != null) {
+                var missed = reporter.getReportsSince(sinceInstant);
+                // the most recent ones only, to fit in the buffer - use /report for the full history
+                var skip = Math.max(0, missed.size() - BUFFER_SIZE);
+                for (var report : missed) {
+                    if (skip-- <= 0) {
+                        subscriber.offer(report.getTime(), _event(report));
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.start();
+    }
+
+    @Override
+    public synchronized void report(Report report) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        var event = _event(report);
+        for (var subscriber : subscribers) {
+            subscriber.offer(report.getTime(), event);
+        }
+    }
+
+    private static byte[] _event(Report report) {
+        return String.format("id: %s\nevent: report\ndata: %s\n\n", report.getTime(), report.toJSON()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of clients connected to the stream
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private class Subscriber implements WriteListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final Queue<byte[]> queue = new ArrayDeque<>(BUFFER_SIZE);
+        private Instant last = Instant.MIN;
+        private boolean started = false; // output is non-blocking from then on
+        private boolean unflushed = false;
+        private boolean closed = false;
+
+        Subscriber(AsyncContext async) throws IOException {
+            this.async = async;
+            this.out = async.getResponse().getOutputStream();
+        }
+
+        void start() {
+            async.addListener(this);
+            synchronized (this) {
+                started = true;
+            }
+            // the container calls onWritePossible() right away
+            out.setWriteListener(this);
+        }
+
+        /**
+         * @param time null for a keepalive
+         */
+        synchronized void offer(Instant time, byte[] event) {
+            if (closed) {
+                return;
+            }
+            if (time != null) {
+                if (!time.isAfter(last)) {
+                    return; // already sent when catching up
+                }
+                last = time;
+            }
+            if (queue.size() >= BUFFER_SIZE) {
+                LOGGER.info("Report stream client is too slow, disconnecting it");
+                close();
+                return;
+            }
+            queue.add(event);
+            if (started) {
+                _write();
+            }
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            _write();
+        }
+
+        // write as much as the client takes without blocking; the container calls onWritePossible() for the rest
+        private void _write() {
+            try {
+                while (!closed && out.isReady()) {
+                    var event = queue.poll();
+                    if (event != null) {
+                        out.write(event);
+                        unflushed = true;
+                    } else if (unflushed) {
+                        unflushed = false;
+                        out.flush();
+                    } else {
+                        return;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.debug("Report stream client disconnected", e);
+                close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOGGER.debug("Report stream client disconnected", t);
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onError(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.clear();
+            }
+            subscribers.remove(this);
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // already completed
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.schambon.loadsimrunner.report;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms per workload since SimRunner started, exposed in the Prometheus text format
+ * (`/metrics`). Unlike reports, these can be summed across SimRunner instances and re-bucketed by the monitoring
+ * system.
+ *
+ * Latency buckets are fixed powers of two, from 16µs to about 67s, so that histograms from different runs and
+ * instances always line up.
+ */
+public class CumulativeMetrics {
+
+    static final int MIN_BUCKET_MAGNITUDE = 4; // 2^4 = 16µs
+    static final int MAX_BUCKET_MAGNITUDE = 26; // 2^26µs = 67s
+    private static final int BUCKETS = MAX_BUCKET_MAGNITUDE - MIN_BUCKET_MAGNITUDE + 2; // the last one is +Inf
+
+    private final Map<String, Workload> workloads = new ConcurrentHashMap<>();
+
+    Workload forWorkload(String name) {
+        var w = workloads.get(name);
+        if (w == null) {
+            w = workloads.computeIfAbsent(name, k -> new Workload());
+        }
+        return w;
+    }
+
+    /**
+     * Write all metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void write(StringBuilder out) {
+        var sorted = new TreeMap<>(workloads);
+
+        _header(out, "simrunner_operations_total", "counter", "Operations run (a batch counts as one operation)");
+        for (var e : sorted.entrySet()) {
+            _sample(out, "simrunner_operations_total", _labels(e.getKey()), e.getValue().ops.sum());
+        }
+        _header(out, "simrunner_records_total", "counter", "Records (documents) processed by operations");
+        for (var e : sorted.entrySet()) {
+            _sample(out, "simrunner_records_total", _labels(e.getKey()), e.getValue().records.sum());
+        }
+        _header(out, "simrunner_errors_total", "counter", "Iterations that failed with an error");
+        for (var e : sorted.entrySet()) {
+            var errors = e.getValue().events.get(Reporter.ERRORS);
+            _sample(out, "simrunner_errors_total", _labels(e.getKey()), errors == null ? 0 : errors.sum());
+        }
+        _header(out, "simrunner_events_total", "counter", "Workload events (transaction commits, retries, aborts...)");
+        for (var e : sorted.entrySet()) {
+            for (var event : new TreeMap<>(e.getValue().events).entrySet()) {
+                if (!Reporter.ERRORS.equals(event.getKey())) {
+                    _sample(out, "simrunner_events_total", _labels(e.getKey()) + ",event=\"" + _escape(event.getKey()) + "\"", event.getValue().sum());
+                }
+            }
+        }
+
+        _header(out, "simrunner_operation_duration_seconds", "histogram", "Operation latency as seen by the client");
+        for (var e : sorted.entrySet()) {
+            var labels = _labels(e.getKey());
+            var w = e.getValue();
+            long cumulative = 0;
+            for (var i = 0; i < BUCKETS; i++) {
+                cumulative += w.buckets[i].sum();
+                var le = i == BUCKETS - 1 ? "+Inf" : Double.toString((1L << (MIN_BUCKET_MAGNITUDE + i)) / 1e6);
+                _sample(out, "simrunner_operation_duration_seconds_bucket", labels + ",le=\"" + le + "\"", cumulative);
+            }
+            out.append("simrunner_operation_duration_seconds_sum{").append(labels).append("} ").append(w.sumMicros.sum() / 1e6).append('\n');
+            _sample(out, "simrunner_operation_duration_seconds_count", labels, cumulative);
+        }
+    }
+
+    private static void _header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void _sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String _labels(String workload) {
+        return "workload=\"" + _escape(workload) + "\"";
+    }
+
+    private static String _escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @return the index of the bucket for a duration in microseconds: the smallest power of two that is not below it
+     */
+    static int bucketIndex(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        var magnitude = 64 - Long.numberOfLeadingZeros(micros - 1); // ceil(log2(micros))
+        return Math.min(Math.max(magnitude - MIN_BUCKET_MAGNITUDE, 0), BUCKETS - 1);
+    }
+
+    static class Workload {
+        final LongAdder ops = new LongAdder();
+        final LongAdder records = new LongAdder();
+        final LongAdder sumMicros = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+        final Map<String, LongAdder> events = new ConcurrentHashMap<>();
+
+        Workload() {
+            for (var i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long number, long durationMicros) {
+            ops.increment();
+            records.add(number);
+            sumMicros.add(durationMicros);
+            buckets[bucketIndex(durationMicros)].increment();
+        }
+
+        void event(String event) {
+            var counter = events.get(event);
+            if (counter == null) {
+                counter = events.computeIfAbsent(event, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+    }
+}
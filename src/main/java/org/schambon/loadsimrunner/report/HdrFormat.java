@@ -0,0 +1,189 @@
+package org.schambon.loadsimrunner.report;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Writes {@link LatencyHistogram}s in the formats of the HdrHistogram tools, so that they can be plotted and merged
+ * with them:
+ * - the percentile distribution (`.hgrm`), as printed by `outputPercentileDistribution`
+ * - the interval log (`.hlog`), with histograms in the V2 compressed encoding, as written by `HistogramLogWriter`
+ *
+ * This works because {@link LatencyHistogram} has the same counts layout as an HdrHistogram with a lowest discernible
+ * value of 1.
+ */
+final class HdrFormat {
+
+    private static final int ENCODING_COOKIE = 0x1c849303 | 0x10;
+    private static final int COMPRESSED_ENCODING_COOKIE = 0x1c849304 | 0x10;
+    private static final int ENCODING_HEADER_SIZE = 40;
+
+    static final int TICKS_PER_HALF_DISTANCE = 5;
+
+    private HdrFormat() {
+    }
+
+    /**
+     * Percentile distribution, with values divided by `unitRatio` (1000 for histograms in µs and output in ms).
+     */
+    static void percentileDistribution(LatencyHistogram histogram, double unitRatio, StringBuilder out) {
+        var digits = histogram.getSignificantDigits();
+        var line = "%12." + digits + "f %2.12f %10d %14.2f\n";
+        var lastLine = "%12." + digits + "f %2.12f %10d\n";
+        out.append(String.format(Locale.US, "%12s %14s %10s %14s\n\n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+
+        // same iteration as HdrHistogram's PercentileIterator, so the output can be compared with theirs
+        var total = histogram.getTotalCount();
+        var level = 0d;
+        var reachedLast = false;
+        long cumulative = 0;
+        var index = 0;
+        var fresh = true;
+        while (total > 0) {
+            if (cumulative >= total) {
+                if (reachedLast) {
+                    break;
+                }
+                level = 100d;
+                reachedLast = true;
+            }
+            while (true) {
+                var count = histogram.countAtIndex(index);
+                if (fresh) {
+                    cumulative += count;
+                    fresh = false;
+                }
+                if (count != 0 && 100d * cumulative / total >= level) {
+                    break;
+                }
+                index++;
+                fresh = true;
+            }
+            var value = histogram.highestEquivalentValue(histogram.valueFromIndex(index)) / unitRatio;
+            if (level != 100d) {
+                out.append(String.format(Locale.US, line, value, level / 100d, cumulative, 1d / (1d - level / 100d)));
+                var ticks = TICKS_PER_HALF_DISTANCE * (long) Math.pow(2, (long) (Math.log(100d / (100d - level)) / Math.log(2)) + 1);
+                level += 100d / ticks;
+            } else {
+                out.append(String.format(Locale.US, lastLine, value, 1d, cumulative));
+            }
+        }
+
+        out.append(String.format(Locale.US, "#[Mean    = %12." + digits + "f, StdDeviation   = %12." + digits + "f]\n",
+            histogram.getMean() / unitRatio, _stdDeviation(histogram) / unitRatio));
+        out.append(String.format(Locale.US, "#[Max     = %12." + digits + "f, Total count    = %12d]\n", histogram.getMax() / unitRatio, total));
+        out.append(String.format(Locale.US, "#[Buckets = %12d, SubBuckets     = %12d]\n", histogram.bucketCount(), histogram.subBucketCount()));
+    }
+
+    static void logHeader(long startTimeMillis, StringBuilder out) {
+        out.append("#[Histogram log format version 1.3]\n");
+        out.append(String.format(Locale.US, "#[StartTime: %.3f (seconds since epoch), %s]\n", startTimeMillis / 1000d, new Date(startTimeMillis)));
+        out.append(String.format(Locale.US, "#[BaseTime: %.3f (seconds since epoch)]\n", startTimeMillis / 1000d));
+        out.append("\"StartTimestamp\",\"Interval_Length\",\"Interval_Max\",\"Interval_Compressed_Histogram\"\n");
+    }
+
+    /**
+     * One interval line of a histogram log. Timestamps are in seconds since the log's base time, the max is divided
+     * by `unitRatio`. The tag must not contain commas or whitespace.
+     */
+    static void logInterval(String tag, double startSeconds, double endSeconds, LatencyHistogram histogram, double unitRatio, StringBuilder out) {
+        if (tag != null) {
+            out.append("Tag=").append(tag).append(',');
+        }
+        out.append(String.format(Locale.US, "%.3f,%.3f,%.3f,", startSeconds, endSeconds - startSeconds, histogram.getMax() / unitRatio));
+        out.append(Base64.getEncoder().encodeToString(encodeCompressed(histogram))).append('\n');
+    }
+
+    /**
+     * @return a tag (or file name) for a workload or phase name: commas, whitespace and slashes are replaced with `_`
+     */
+    static String tag(String name) {
+        return name.replaceAll("[,\\s/\\\\]", "_");
+    }
+
+    /**
+     * HdrHistogram V2 compressed encoding: a cookie, the length of the deflated contents, then the deflated V2
+     * encoding (a header and the counts, zigzag LEB128 encoded, with runs of zeros as negative counts).
+     */
+    static byte[] encodeCompressed(LatencyHistogram histogram) {
+        var payload = new ByteArrayOutputStream();
+        var countsLimit = histogram.getTotalCount() == 0 ? 0 : histogram.countsIndex(Math.min(histogram.getMax(), histogram.getHighestTrackableValue())) + 1;
+        var index = 0;
+        while (index < countsLimit) {
+            var count = histogram.countAtIndex(index++);
+            var zeros = 0;
+            if (count == 0) {
+                zeros = 1;
+                while (index < countsLimit && histogram.countAtIndex(index) == 0) {
+                    zeros++;
+                    index++;
+                }
+            }
+            _zigZag(zeros > 1 ? -zeros : count, payload);
+        }
+
+        var encoded = ByteBuffer.allocate(ENCODING_HEADER_SIZE + payload.size());
+        encoded.putInt(ENCODING_COOKIE);
+        encoded.putInt(payload.size());
+        encoded.putInt(0); // normalizing index offset
+        encoded.putInt(histogram.getSignificantDigits());
+        encoded.putLong(1); // lowest discernible value
+        encoded.putLong(histogram.getHighestTrackableValue());
+        encoded.putDouble(1d); // integer to double conversion ratio
+        encoded.put(payload.toByteArray());
+
+        var deflater = new Deflater();
+        deflater.setInput(encoded.array());
+        deflater.finish();
+        var compressed = new ByteArrayOutputStream();
+        var chunk = new byte[4096];
+        while (!deflater.finished()) {
+            var n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        deflater.end();
+
+        var result = ByteBuffer.allocate(8 + compressed.size());
+        result.putInt(COMPRESSED_ENCODING_COOKIE);
+        result.putInt(compressed.size());
+        result.put(compressed.toByteArray());
+        return result.array();
+    }
+
+    // 7 bits per byte, the 9th byte takes the last 8 bits
+    private static void _zigZag(long value, ByteArrayOutputStream out) {
+        var v = (value << 1) ^ (value >> 63);
+        for (var i = 0; i < 8; i++) {
+            if ((v >>> 7) == 0) {
+                out.write((int) v);
+                return;
+            }
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static double _stdDeviation(LatencyHistogram histogram) {
+        var total = histogram.getTotalCount();
+        if (total == 0) {
+            return 0d;
+        }
+        var mean = histogram.getMean();
+        var squares = 0d;
+        for (var i = 0; i < histogram.countsLength(); i++) {
+            var count = histogram.countAtIndex(i);
+            if (count != 0) {
+                var lowest = histogram.valueFromIndex(i);
+                var median = lowest + (histogram.highestEquivalentValue(lowest) - lowest + 1) / 2;
+                var deviation = median - mean;
+                squares += deviation * deviation * count;
+            }
+        }
+        return Math.sqrt(squares / total);
+    }
+}
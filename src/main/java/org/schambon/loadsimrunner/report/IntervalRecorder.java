@@ -0,0 +1,106 @@
+package org.schambon.loadsimrunner.report;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records operations for one workload over a report interval.
+ *
+ * Recording takes no lock and allocates nothing: writers update the active {@link Interval}s inside a
+ * {@link WriterReaderPhaser} critical section. Counts are striped by thread (up to {@link #STRIPES} stripes), so
+ * workers of the same workload mostly write to their own histogram rather than to shared cache lines. At each
+ * report, the reader swaps the active stripes with recycled ones and merges them, so memory stays fixed no matter
+ * how many operations run in an interval.
+ */
+class IntervalRecorder {
+
+    // a power of two, so a thread's stripe is its id masked
+    static final int STRIPES = Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+    private volatile Interval[] active;
+    private Interval[] inactive;
+    private final Interval merged;
+
+    IntervalRecorder(long highestTrackableValue, int significantDigits) {
+        this.merged = new Interval(new LatencyHistogram(highestTrackableValue, significantDigits));
+        this.active = _stripes(merged.durations);
+        this.inactive = _stripes(merged.durations);
+    }
+
+    private static Interval[] _stripes(LatencyHistogram layout) {
+        var stripes = new Interval[STRIPES];
+        for (var i = 0; i < STRIPES; i++) {
+            stripes[i] = new Interval(layout.copyLayout());
+        }
+        return stripes;
+    }
+
+    void record(long number, long duration) {
+        long criticalValue = phaser.writerCriticalSectionEnter();
+        try {
+            active[(int) Thread.currentThread().getId() & (STRIPES - 1)].record(number, duration);
+        } finally {
+            phaser.writerCriticalSectionExit(criticalValue);
+        }
+    }
+
+    /**
+     * Swap the active stripes and return the merge of the ones that were being recorded into.
+     * The returned interval is stable until the next call.
+     */
+    synchronized Interval swap() {
+        for (var stripe : inactive) {
+            stripe.reset();
+        }
+        var previous = active;
+        active = inactive;
+        phaser.flipPhase();
+        inactive = previous;
+
+        merged.reset();
+        for (var stripe : previous) {
+            merged.add(stripe);
+        }
+        return merged;
+    }
+
+    static class Interval {
+        final LatencyHistogram durations;
+        final LongAdder records = new LongAdder();
+        final LongAccumulator minBatch = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        final LongAccumulator maxBatch = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        Interval(LatencyHistogram durations) {
+            this.durations = durations;
+        }
+
+        void record(long number, long duration) {
+            durations.record(duration);
+            records.add(number);
+            minBatch.accumulate(number);
+            maxBatch.accumulate(number);
+        }
+
+        void add(Interval other) {
+            if (other.count() == 0) {
+                return;
+            }
+            durations.add(other.durations);
+            records.add(other.records.sum());
+            minBatch.accumulate(other.minBatch.get());
+            maxBatch.accumulate(other.maxBatch.get());
+        }
+
+        long count() {
+            return durations.getTotalCount();
+        }
+
+        void reset() {
+            durations.reset();
+            records.reset();
+            minBatch.reset();
+            maxBatch.reset();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.schambon.loadsimrunner.report;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-bucketed histogram of non-negative long values, laid out like an HdrHistogram
+ * (same bucket / sub-bucket indexing, unit magnitude 0).
+ *
+ * Recording is lock-free and allocation-free, and may be called concurrently from any number of threads.
+ * Reading methods (percentiles, mean, merge...) are meant to be called by a single reader on a histogram
+ * that is no longer being recorded into (see {@link IntervalRecorder}).
+ *
+ * Memory footprint is fixed at construction time, regardless of how many values are recorded. Values greater
+ * than the highest trackable value are clamped into the last bucket (but the true max is kept).
+ */
+public class LatencyHistogram {
+
+    private final long highestTrackableValue;
+    private final int significantDigits;
+
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final int bucketCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5");
+        }
+        this.significantDigits = significantDigits;
+
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        this.subBucketHalfCountMagnitude = Math.max(subBucketCountMagnitude, 1) - 1;
+        int subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        this.highestTrackableValue = Math.max(highestTrackableValue, 2L * subBucketCount);
+
+        // number of buckets needed to cover the highest trackable value
+        long smallestUntrackableValue = subBucketCount;
+        int bucketsNeeded = 1;
+        while (smallestUntrackableValue <= this.highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                bucketsNeeded++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketsNeeded++;
+        }
+
+        this.bucketCount = bucketsNeeded;
+        this.counts = new AtomicLongArray((bucketsNeeded + 1) * subBucketHalfCount);
+    }
+
+    /**
+     * Record one value. Negative values are recorded as zero.
+     */
+    public void record(long value) {
+        long v = value < 0 ? 0 : value;
+        counts.incrementAndGet(countsIndex(Math.min(v, highestTrackableValue)));
+        sum.add(v);
+        min.accumulate(v);
+        max.accumulate(v);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return getTotalCount() == 0 ? 0 : max.get();
+    }
+
+    public long getMin() {
+        return getTotalCount() == 0 ? 0 : min.get();
+    }
+
+    public double getMean() {
+        var total = getTotalCount();
+        return total == 0 ? 0d : (double) getSum() / (double) total;
+    }
+
+    /**
+     * Value at the given percentile (0-100), with the same semantics as HdrHistogram: the highest value that is
+     * equivalent (within the histogram precision) to the value at that rank, capped to the recorded max.
+     */
+    public long getValueAtPercentile(double percentile) {
+        var total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        double p = Math.min(Math.max(percentile, 0d), 100d);
+        long countAtPercentile = Math.max(1, (long) Math.ceil((p / 100d) * total));
+
+        long cumulative = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(valueFromIndex(i)), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Add all values of another histogram (with the same configuration) into this one.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length() != counts.length() || other.subBucketHalfCount != subBucketHalfCount) {
+            throw new IllegalArgumentException("Cannot add histograms with different layouts");
+        }
+        if (other.getTotalCount() == 0) {
+            return;
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            var c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        sum.add(other.getSum());
+        min.accumulate(other.getMin());
+        max.accumulate(other.getMax());
+    }
+
+    /**
+     * Clear all recorded values. Only call this on a histogram that is not being recorded into.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+
+    public LatencyHistogram copyLayout() {
+        return new LatencyHistogram(highestTrackableValue, significantDigits);
+    }
+
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /* Layout */
+
+    int bucketCount() {
+        return bucketCount;
+    }
+
+    int subBucketCount() {
+        return 2 * subBucketHalfCount;
+    }
+
+    int countsLength() {
+        return counts.length();
+    }
+
+    long countAtIndex(int index) {
+        return counts.get(index);
+    }
+
+    int countsIndex(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        int bucketBaseIndex = (bucketIndex + 1) << subBucketHalfCountMagnitude;
+        return bucketBaseIndex + (subBucketIndex - subBucketHalfCount);
+    }
+
+    long valueFromIndex(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << bucketIndex;
+    }
+
+    long highestEquivalentValue(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        int rangeMagnitude = subBucketIndex >= 2 * subBucketHalfCount ? bucketIndex + 1 : bucketIndex;
+        long lowestEquivalent = (((long) subBucketIndex) << bucketIndex);
+        return lowestEquivalent + (1L << rangeMagnitude) - 1;
+    }
+}
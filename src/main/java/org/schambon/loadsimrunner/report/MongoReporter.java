@@ -3,27 +3,59 @@ package org.schambon.loadsimrunner.report;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bson.Document;
 import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.TimeSeriesGranularity;
 import com.mongodb.client.model.TimeSeriesOptions;
 
+/**
+ * Exports reports to a MongoDB collection (the `mongoReporter` option).
+ *
+ * Report documents are queued and written with `insertMany` by a dedicated thread, so that a slow or unavailable
+ * results cluster never delays the computation of reports. The queue is bounded: when it is full, the oldest
+ * documents are dropped. Failed writes are retried a few times before being dropped (for a partly failed batch, only
+ * the documents that were not written). The exporter's own state
+ * (queued documents, lag, drops) is exported with each report as task `_mongoReporter`.
+ */
 public class MongoReporter implements ReporterCallback {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoReporter.class);
-    
+
+    static final String EXPORTER_TASK = "_mongoReporter";
+    private static final int DUPLICATE_KEY = 11000;
+
     boolean initialized = false;
 
     MongoCollection<Document> collection;
     String runIdentifier;
 
+    private BlockingQueue<Document> queue;
+    private int batchSize;
+    private int retries;
+    private long retryDelay;
+    private Thread flusher;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final List<Document> batch = new ArrayList<>(); // being written by the flusher
+    private long droppedReported = 0;
+
     public MongoReporter(Document config) {
         if (config == null) {
             initialized = false;
@@ -38,7 +70,6 @@ public class MongoReporter implements ReporterCallback {
                 var collectionName = config.getString("collection");
                 var drop = config.getBoolean("drop", false);
                 var runtimeSuffix = config.getBoolean("runtimeSuffix", false);
-                runIdentifier = config.getString("runIdentifier");
 
                 if (connstring == null || database == null || collectionName == null) {
                     LOGGER.error("connectionString, database and collection are mandatory parameters for mongoReporter");
@@ -52,10 +83,10 @@ public class MongoReporter implements ReporterCallback {
 
                 var exportClient = MongoClients.create(connstring);
                 var db = exportClient.getDatabase(database);
-                collection = db.getCollection(collectionName);
+                var _collection = db.getCollection(collectionName);
 
                 if (drop) {
-                    collection.drop();
+                    _collection.drop();
                     LOGGER.info("Dropped collection {}.{} for result export", database, collectionName);
                 }
 
@@ -73,26 +104,183 @@ public class MongoReporter implements ReporterCallback {
                     ));
                 }
 
-                initialized = true;
+                _start(_collection, config);
             }
         }
     }
 
+    /**
+     * Export to an existing collection
+     *
+     * @param config the `mongoReporter` options (`runIdentifier`, `bufferSize`, `batchSize`, `retries`, `retryDelayMS`)
+     */
+    public MongoReporter(MongoCollection<Document> collection, Document config) {
+        _start(collection, config);
+    }
+
+    private void _start(MongoCollection<Document> collection, Document config) {
+        this.collection = collection;
+        this.runIdentifier = config.getString("runIdentifier");
+
+        var bufferSize = config.getInteger("bufferSize", 100000);
+        this.batchSize = config.getInteger("batchSize", 1000);
+        this.retries = config.getInteger("retries", 3);
+        this.retryDelay = config.getInteger("retryDelayMS", 1000);
+        if (bufferSize < 1 || batchSize < 1 || retries < 0 || retryDelay < 0) {
+            throw new InvalidConfigException("mongoReporter: bufferSize and batchSize must be positive, retries and retryDelayMS must not be negative");
+        }
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+
+        this.flusher = new Thread(this::_flushLoop, "mongo-reporter");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::_shutdown, "mongo-reporter-shutdown"));
+
+        initialized = true;
+    }
+
     @Override
     public void report(Report report) {
         if (initialized) {
             for (var task : report.getReport().keySet()) {
-               
-                var meta = new Document("task", task);
-                if (runIdentifier != null) {
-                    meta.append("runIdentifier", runIdentifier);
+                _enqueue(_document(report.getTime(), task, (Document) report.getReport().get(task)));
+            }
+            _enqueue(_document(report.getTime(), EXPORTER_TASK, _exporterStats(report.getTime())));
+        }
+    }
+
+    private Document _document(Instant time, String task, Document measures) {
+        var meta = new Document("task", task);
+        if (runIdentifier != null) {
+            meta.append("runIdentifier", runIdentifier);
+        }
+        return new Document("time", time)
+            .append("test", meta)
+            .append("measures", measures);
+    }
+
+    private Document _exporterStats(Instant now) {
+        var oldest = queue.peek();
+        var lag = oldest == null ? 0L : Math.max(0L, now.toEpochMilli() - ((Instant) oldest.get("time")).toEpochMilli());
+        var totalDropped = dropped.get();
+        if (totalDropped > droppedReported) {
+            LOGGER.warn("mongoReporter: dropped {} report documents (the results cluster is too slow or unavailable)", totalDropped - droppedReported);
+            droppedReported = totalDropped;
+        }
+        return new Document("queued", (long) queue.size())
+            .append("lag ms", lag)
+            .append("written", written.get())
+            .append("dropped", totalDropped)
+            .append("failed batches", failedBatches.get());
+    }
+
+    // drop the oldest documents to make room
+    private void _enqueue(Document doc) {
+        while (!queue.offer(doc)) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void _flushLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                var first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                var before = written.get();
+                try {
+                    _write(batch, retries);
+                } catch (RuntimeException e) {
+                    // not a server error (encoding, closed client...): drop what was not written and go on with the next batch
+                    var lost = batch.size() - (written.get() - before);
+                    LOGGER.error(String.format("mongoReporter: cannot write %d report documents, dropping them", lost), e);
+                    failedBatches.incrementAndGet();
+                    dropped.addAndGet(lost);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void _write(List<Document> batch, int attempts) throws InterruptedException {
+        var pending = batch;
+        for (var attempt = 0; ; attempt++) {
+            try {
+                collection.insertMany(pending, new InsertManyOptions().ordered(false));
+                written.addAndGet(pending.size());
+                return;
+            } catch (MongoBulkWriteException e) {
+                // unordered: all the other documents were written. A duplicate key means the document was written by a
+                // previous attempt (the driver set its _id then), so only the other errors are worth retrying.
+                var failed = new ArrayList<Document>();
+                for (var error : e.getWriteErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) {
+                        failed.add(pending.get(error.getIndex()));
+                    }
+                }
+                written.addAndGet(pending.size() - failed.size());
+                if (failed.isEmpty()) {
+                    return;
+                }
+                pending = failed;
+                if (!_retry(attempt, attempts, pending, e)) {
+                    return;
+                }
+            } catch (MongoException e) {
+                if (!_retry(attempt, attempts, pending, e)) {
+                    return;
                 }
-                collection.insertOne(
-                    new Document("time", report.getTime())
-                        .append("test", meta)
-                        .append("measures", report.getReport().get(task))
-                );
             }
         }
     }
+
+    // wait before the next attempt, or drop the documents if that was the last one
+    private boolean _retry(int attempt, int attempts, List<Document> pending, MongoException e) throws InterruptedException {
+        if (attempt >= attempts) {
+            LOGGER.error(String.format("mongoReporter: cannot write %d report documents, dropping them", pending.size()), e);
+            failedBatches.incrementAndGet();
+            dropped.addAndGet(pending.size());
+            return false;
+        }
+        LOGGER.warn("mongoReporter: write of {} documents failed ({}), retrying", pending.size(), e.getMessage());
+        Thread.sleep(retryDelay << attempt);
+        return true;
+    }
+
+    // write what is left, once
+    private void _shutdown() {
+        flusher.interrupt();
+        try {
+            flusher.join(5000);
+            // if the flusher is stuck writing, leave its batch alone
+            var rest = flusher.isAlive() ? new ArrayList<Document>() : new ArrayList<Document>(batch);
+            queue.drainTo(rest);
+            for (var i = 0; i < rest.size(); i += batchSize) {
+                _write(rest.subList(i, Math.min(rest.size(), i + batchSize)), 0);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("mongoReporter: interrupted while writing the last reports");
+        }
+    }
+
+    /**
+     * @return the number of report documents written so far
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of report documents dropped so far (buffer full or writes failing)
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
 }
@@ -35,7 +35,7 @@ public class Report {
     }
 
     private String workloadReport(String name, Document wlReport) {
-        return String.format("%s:\n==========\n%d ops per second (%d total)\n%d records per second (%d total)\n%f ms mean duration\npercentiles: %s\n%f / %f / %f Batch size avg / min / max\n[util %%: %f -- report computed in %d]",
+        return String.format("%s:\n==========\n%d ops per second (%d total)\n%d records per second (%d total)\n%.3f ms mean duration\npercentiles: %s\n%f / %f / %f Batch size avg / min / max\n[util %%: %f -- report computed in %d]",
             name,
             wlReport.getLong("ops"), wlReport.getLong("total ops"),
             wlReport.getLong("records"), wlReport.getLong("total records"),
@@ -46,11 +46,11 @@ public class Report {
             wlReport.getDouble("max batch size"),
             wlReport.getDouble("client util"),
             wlReport.getLong("report compute time")
-        );
+        ) + (wlReport.containsKey("events") ? String.format("\nevents: %s", ((Document) wlReport.get("events")).toJson()) : "");
     } 
 
     private String percentilesToString(List<Document> list) {
-        return list.stream().map(doc -> String.format("P%d: %d", doc.getInteger("p"), doc.getLong("value"))).collect(Collectors.toList()).toString();
+        return list.stream().map(doc -> String.format("P%d: %.3f", doc.getInteger("p"), doc.getDouble("value"))).collect(Collectors.toList()).toString();
     }
 
     public String toJSON() {
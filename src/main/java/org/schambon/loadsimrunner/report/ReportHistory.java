@@ -0,0 +1,463 @@
+package org.schambon.loadsimrunner.report;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+
+/**
+ * Past reports (the `reportHistory` option), kept in memory as columns of primitive values per workload.
+ *
+ * Reports go to a ring of raw reports and are rolled up into rings of 10 seconds and 1 minute points, each with its
+ * own retention. Queries return the coarse points for the periods that finer rings no longer cover. In a rolled-up
+ * point, rates and client util are averaged, totals are summed, the mean duration is weighted by operations, and
+ * percentiles are the worst of the point's reports (percentiles cannot be merged). Rings grow as they fill, so a short
+ * run does not pay for the whole retention.
+ */
+public class ReportHistory {
+
+    static final long DEFAULT_RAW_RETENTION = 3600L * 1000L; // 1 hour
+    static final long DEFAULT_TEN_SECONDS_RETENTION = 6L * 3600L * 1000L; // 6 hours
+    static final long DEFAULT_ONE_MINUTE_RETENTION = 48L * 3600L * 1000L; // 2 days
+    static final int INITIAL_LENGTH = 64; // rings start this long and double as they fill, up to their capacity
+
+    private static final String[] HEAD_COLUMNS = {"ops", "records", "total ops", "total records", "mean duration"};
+    private static final String[] TAIL_COLUMNS = {"mean batch size", "min batch size", "max batch size", "client util", "report compute time"};
+
+    private final List<Integer> percentiles;
+    private final List<String> columns = new ArrayList<>();
+    private final boolean[] longColumn; // the others are stored as floats
+    private final int[] slot;
+    private final int longCount;
+    private final int floatCount;
+
+    private final Tier[] tiers; // finest first
+    private final int firstPercentile = HEAD_COLUMNS.length;
+    private final int meanBatch;
+
+    public ReportHistory(List<Integer> percentiles, long reportInterval, long rawRetention, long tenSecondsRetention, long oneMinuteRetention) {
+        this.percentiles = percentiles;
+        columns.addAll(Arrays.asList(HEAD_COLUMNS));
+        for (var p : percentiles) {
+            columns.add("p" + p);
+        }
+        columns.addAll(Arrays.asList(TAIL_COLUMNS));
+        this.meanBatch = firstPercentile + percentiles.size();
+
+        this.longColumn = new boolean[columns.size()];
+        this.slot = new int[columns.size()];
+        var longs = 0;
+        var floats = 0;
+        for (var c = 0; c < columns.size(); c++) {
+            var name = columns.get(c);
+            longColumn[c] = "ops".equals(name) || "records".equals(name) || name.startsWith("total") || "report compute time".equals(name);
+            slot[c] = longColumn[c] ? longs++ : floats++;
+        }
+        this.longCount = longs;
+        this.floatCount = floats;
+
+        var _tiers = new ArrayList<Tier>();
+        _tiers.add(new Tier(0, _capacity(rawRetention, Math.max(1, reportInterval))));
+        if (tenSecondsRetention > 0) {
+            _tiers.add(new Tier(10000, _capacity(tenSecondsRetention, 10000)));
+        }
+        if (oneMinuteRetention > 0) {
+            _tiers.add(new Tier(60000, _capacity(oneMinuteRetention, 60000)));
+        }
+        this.tiers = _tiers.toArray(new Tier[0]);
+    }
+
+    /**
+     * @param config null, or `{"raw": ms, "10s": ms, "1m": ms}`: how long to keep each resolution (0 to disable a roll-up)
+     */
+    public static ReportHistory parse(Object config, long reportInterval, List<Integer> percentiles) {
+        if (config == null) {
+            return new ReportHistory(percentiles, reportInterval, DEFAULT_RAW_RETENTION, DEFAULT_TEN_SECONDS_RETENTION, DEFAULT_ONE_MINUTE_RETENTION);
+        }
+        if (!(config instanceof Document)) {
+            throw new InvalidConfigException("reportHistory must be a document");
+        }
+        var doc = (Document) config;
+        var raw = _retention(doc, "raw", DEFAULT_RAW_RETENTION);
+        if (raw <= 0) {
+            throw new InvalidConfigException("reportHistory.raw must be positive");
+        }
+        return new ReportHistory(percentiles, reportInterval, raw, _retention(doc, "10s", DEFAULT_TEN_SECONDS_RETENTION), _retention(doc, "1m", DEFAULT_ONE_MINUTE_RETENTION));
+    }
+
+    private static long _retention(Document config, String key, long defaultValue) {
+        var value = config.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Number) || ((Number) value).longValue() < 0) {
+            throw new InvalidConfigException(String.format("reportHistory.%s must be a duration in ms", key));
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static int _capacity(long retention, long resolution) {
+        return (int) Math.min(Integer.MAX_VALUE - 1, retention / resolution + 1);
+    }
+
+    /**
+     * @return the length an array of `length` must grow to so that it holds `index`, at most `capacity`
+     */
+    private static int _grow(int length, int index, int capacity) {
+        if (index < length) {
+            return length;
+        }
+        return (int) Math.min(capacity, Math.max(index + 1L, Math.max(INITIAL_LENGTH, 2L * length)));
+    }
+
+    /**
+     * @return the columns of a row, in order: ops, records, totals, mean duration, percentiles (`p95`...), batch sizes, client util, report compute time
+     */
+    public List<String> columns() {
+        return columns;
+    }
+
+    public synchronized void add(Report report) {
+        var time = report.getTime().toEpochMilli();
+        var rows = new TreeMap<String, double[]>();
+        var events = new HashMap<String, Map<String, Long>>();
+        for (var entry : report.getReport().entrySet()) {
+            var wl = (Document) entry.getValue();
+            rows.put(entry.getKey(), _row(wl));
+            var _events = (Document) wl.get("events");
+            if (_events != null) {
+                var counts = new TreeMap<String, Long>();
+                for (var e : _events.entrySet()) {
+                    counts.put(e.getKey(), ((Number) e.getValue()).longValue());
+                }
+                events.put(entry.getKey(), counts);
+            }
+        }
+
+        tiers[0].append(time, rows, events);
+        for (var i = 1; i < tiers.length; i++) {
+            tiers[i].accumulate(time, rows, events);
+        }
+    }
+
+    private double[] _row(Document wl) {
+        var row = new double[columns.size()];
+        for (var c = 0; c < columns.size(); c++) {
+            if (c >= firstPercentile && c < meanBatch) {
+                continue;
+            }
+            var value = wl.get(columns.get(c));
+            row[c] = value instanceof Number ? ((Number) value).doubleValue() : 0d;
+        }
+        var _percentiles = wl.getList("percentiles", Document.class);
+        if (_percentiles != null) {
+            for (var p : _percentiles) {
+                var index = percentiles.indexOf(p.getInteger("p"));
+                if (index >= 0) {
+                    row[firstPercentile + index] = ((Number) p.get("value")).doubleValue();
+                }
+            }
+        }
+        return row;
+    }
+
+    public interface RowVisitor {
+        /**
+         * @param values the row's values, in the order of {@link #columns()} (Long or Double). Only valid during the call.
+         */
+        void row(Instant time, String workload, Object[] values);
+    }
+
+    /**
+     * Visit the rows (one per report and workload) after `since` (or all rows if null), oldest first, without
+     * building report documents.
+     */
+    public synchronized void forEachRow(Instant since, RowVisitor visitor) {
+        var values = new Object[columns.size()];
+        _forEach(since, (time, name, workload, index) -> {
+            for (var c = 0; c < values.length; c++) {
+                values[c] = workload.get(c, index);
+            }
+            visitor.row(time, name, values);
+        });
+    }
+
+    /**
+     * @return the reports after `since` (or all of them if null), oldest first
+     */
+    public synchronized List<Report> getReportsSince(Instant since) {
+        var reports = new ArrayList<Report>();
+        var current = new Document[1];
+        var currentTime = new Instant[1];
+        _forEach(since, (time, name, workload, index) -> {
+            if (!time.equals(currentTime[0])) {
+                current[0] = new Document();
+                currentTime[0] = time;
+                reports.add(new Report(time, current[0]));
+            }
+            current[0].append(name, workload.toDocument(index));
+        });
+        return reports;
+    }
+
+    private interface CellVisitor {
+        void visit(Instant time, String name, Columns workload, int index);
+    }
+
+    private void _forEach(Instant since, CellVisitor visitor) {
+        var sinceMillis = since == null ? Long.MIN_VALUE : since.toEpochMilli();
+        for (var i = tiers.length - 1; i >= 0; i--) {
+            var tier = tiers[i];
+            // coarse points only where the finer tiers don't have data anymore
+            var cutoff = Long.MAX_VALUE;
+            for (var j = i - 1; j >= 0; j--) {
+                if (tiers[j].size > 0) {
+                    cutoff = tiers[j].oldest();
+                    break;
+                }
+            }
+            for (var k = 0; k < tier.size; k++) {
+                var index = tier.index(k);
+                var time = tier.times[index];
+                if (time <= sinceMillis || time >= cutoff) {
+                    continue;
+                }
+                var instant = Instant.ofEpochMilli(time);
+                for (var entry : tier.workloads.entrySet()) {
+                    if (entry.getValue().present(index)) {
+                        visitor.visit(instant, entry.getKey(), entry.getValue(), index);
+                    }
+                }
+            }
+        }
+    }
+
+    private class Tier {
+        final long resolution; // 0 for raw reports
+        final int capacity;
+        long[] times = new long[0];
+        int next = 0;
+        int size = 0;
+        long written = 0;
+        final Map<String, Columns> workloads = new TreeMap<>();
+
+        // roll-up of the current bucket
+        long bucket;
+        long bucketEnd;
+        int bucketReports = 0;
+        final Map<String, Accumulator> accumulators = new TreeMap<>();
+
+        Tier(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+        }
+
+        int index(int k) {
+            return (next - size + k + capacity) % capacity;
+        }
+
+        long oldest() {
+            return times[index(0)];
+        }
+
+        void append(long time, Map<String, double[]> rows, Map<String, Map<String, Long>> events) {
+            var index = next;
+            var length = _grow(times.length, index, capacity);
+            if (length != times.length) {
+                times = Arrays.copyOf(times, length);
+            }
+            times[index] = time;
+            for (var name : rows.keySet()) {
+                if (!workloads.containsKey(name)) {
+                    workloads.put(name, new Columns(capacity));
+                }
+            }
+            for (var it = workloads.entrySet().iterator(); it.hasNext(); ) {
+                var entry = it.next();
+                var row = rows.get(entry.getKey());
+                entry.getValue().set(index, row, events.get(entry.getKey()));
+                if (row != null) {
+                    entry.getValue().lastWritten = written;
+                } else if (written - entry.getValue().lastWritten >= capacity) {
+                    it.remove(); // nothing left for this workload
+                }
+            }
+            next = (next + 1) % capacity;
+            size = Math.min(size + 1, capacity);
+            written++;
+        }
+
+        void accumulate(long time, Map<String, double[]> rows, Map<String, Map<String, Long>> events) {
+            var b = Math.floorDiv(time, resolution);
+            if (bucketReports > 0 && b != bucket) {
+                flush();
+            }
+            bucket = b;
+            bucketEnd = time;
+            bucketReports++;
+            for (var entry : rows.entrySet()) {
+                accumulators.computeIfAbsent(entry.getKey(), k -> new Accumulator()).add(entry.getValue(), events.get(entry.getKey()));
+            }
+        }
+
+        void flush() {
+            var rows = new TreeMap<String, double[]>();
+            var events = new HashMap<String, Map<String, Long>>();
+            for (var entry : accumulators.entrySet()) {
+                rows.put(entry.getKey(), entry.getValue().row(bucketReports));
+                if (!entry.getValue().events.isEmpty()) {
+                    events.put(entry.getKey(), entry.getValue().events);
+                }
+            }
+            append(bucketEnd, rows, events);
+            accumulators.clear();
+            bucketReports = 0;
+        }
+    }
+
+    private class Columns {
+        final long[][] longs = new long[longCount][];
+        final float[][] floats = new float[floatCount][];
+        boolean[] present = new boolean[0];
+        final Map<String, long[]> events = new TreeMap<>();
+        final int capacity;
+        long lastWritten;
+
+        Columns(int capacity) {
+            this.capacity = capacity;
+            for (var i = 0; i < longCount; i++) {
+                longs[i] = new long[0];
+            }
+            for (var i = 0; i < floatCount; i++) {
+                floats[i] = new float[0];
+            }
+        }
+
+        // indexes past the arrays were never written for this workload
+        boolean present(int index) {
+            return index < present.length && present[index];
+        }
+
+        private void _ensure(int index) {
+            var length = _grow(present.length, index, capacity);
+            if (length == present.length) {
+                return;
+            }
+            for (var i = 0; i < longCount; i++) {
+                longs[i] = Arrays.copyOf(longs[i], length);
+            }
+            for (var i = 0; i < floatCount; i++) {
+                floats[i] = Arrays.copyOf(floats[i], length);
+            }
+            for (var e : events.entrySet()) {
+                e.setValue(Arrays.copyOf(e.getValue(), length));
+            }
+            present = Arrays.copyOf(present, length);
+        }
+
+        void set(int index, double[] row, Map<String, Long> _events) {
+            if (row == null && _events == null && index >= present.length) {
+                return; // nothing to clear
+            }
+            _ensure(index);
+            present[index] = row != null;
+            if (row != null) {
+                for (var c = 0; c < row.length; c++) {
+                    if (longColumn[c]) {
+                        longs[slot[c]][index] = Math.round(row[c]);
+                    } else {
+                        floats[slot[c]][index] = (float) row[c];
+                    }
+                }
+            }
+            for (var e : events.values()) {
+                e[index] = 0;
+            }
+            if (_events != null) {
+                for (var e : _events.entrySet()) {
+                    events.computeIfAbsent(e.getKey(), k -> new long[present.length])[index] = e.getValue();
+                }
+            }
+        }
+
+        Object get(int column, int index) {
+            if (longColumn[column]) {
+                return longs[slot[column]][index];
+            }
+            // shortest decimal form of the float, not its exact binary value
+            return Double.parseDouble(Float.toString(floats[slot[column]][index]));
+        }
+
+        Document toDocument(int index) {
+            var doc = new Document();
+            for (var c = 0; c < firstPercentile; c++) {
+                doc.append(columns.get(c), get(c, index));
+            }
+            var _percentiles = new ArrayList<Document>(percentiles.size());
+            for (var i = 0; i < percentiles.size(); i++) {
+                _percentiles.add(new Document("p", percentiles.get(i)).append("value", get(firstPercentile + i, index)));
+            }
+            doc.append("percentiles", _percentiles);
+            for (var c = meanBatch; c < columns.size(); c++) {
+                doc.append(columns.get(c), get(c, index));
+            }
+            var _events = new Document();
+            for (var e : events.entrySet()) {
+                if (e.getValue()[index] > 0) {
+                    _events.append(e.getKey(), e.getValue()[index]);
+                }
+            }
+            if (!_events.isEmpty()) {
+                doc.append("events", _events);
+            }
+            return doc;
+        }
+    }
+
+    private class Accumulator {
+        final double[] sums = new double[columns.size()];
+        double minBatch = Double.MAX_VALUE;
+        final Map<String, Long> events = new TreeMap<>();
+
+        void add(double[] row, Map<String, Long> _events) {
+            var totalOps = row[2];
+            sums[0] += row[0];
+            sums[1] += row[1];
+            sums[2] += totalOps;
+            sums[3] += row[3];
+            sums[4] += row[4] * totalOps;
+            for (var c = firstPercentile; c < meanBatch; c++) {
+                sums[c] = Math.max(sums[c], row[c]);
+            }
+            if (totalOps > 0) {
+                minBatch = Math.min(minBatch, row[meanBatch + 1]);
+            }
+            sums[meanBatch + 2] = Math.max(sums[meanBatch + 2], row[meanBatch + 2]);
+            sums[meanBatch + 3] += row[meanBatch + 3];
+            sums[meanBatch + 4] = Math.max(sums[meanBatch + 4], row[meanBatch + 4]);
+            if (_events != null) {
+                for (var e : _events.entrySet()) {
+                    events.merge(e.getKey(), e.getValue(), Long::sum);
+                }
+            }
+        }
+
+        double[] row(int reports) {
+            var row = sums.clone();
+            var totalOps = sums[2];
+            row[0] = sums[0] / reports;
+            row[1] = sums[1] / reports;
+            row[4] = totalOps > 0 ? sums[4] / totalOps : 0d;
+            row[meanBatch] = totalOps > 0 ? sums[3] / totalOps : 0d;
+            row[meanBatch + 1] = minBatch == Double.MAX_VALUE ? 0d : minBatch;
+            row[meanBatch + 3] = sums[meanBatch + 3] / reports;
+            return row;
+        }
+    }
+}
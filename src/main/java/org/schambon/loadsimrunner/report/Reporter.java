@@ -2,39 +2,49 @@ package org.schambon.loadsimrunner.report;
 
 import static java.lang.System.currentTimeMillis;
 
-import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.TreeMultiset;
-import com.google.common.math.Stats;
-
 public class Reporter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Reporter.class);
 
-    private volatile Map<String, StatsHolder> stats = null;
+    /**
+     * Event counting failed iterations
+     */
+    public static final String ERRORS = "errors";
+
+    private final Map<String, StatsHolder> stats = new ConcurrentHashMap<>();
+    private final CumulativeMetrics metrics = new CumulativeMetrics();
     private long startTime = 0;
-    private TreeMap<Instant, Report> reports = new TreeMap<>();
+    private final ReportHistory history;
+    private final RunHistograms runHistograms;
     private List<Integer> percentiles;
 
     public Reporter(List<Integer> reportPercentiles) {
+        this(reportPercentiles, ReportHistory.parse(null, 1000, reportPercentiles), RunHistograms.parse(null, reportPercentiles));
+    }
+
+    public Reporter(List<Integer> reportPercentiles, ReportHistory history, RunHistograms runHistograms) {
         this.percentiles = reportPercentiles;
+        this.history = history;
+        this.runHistograms = runHistograms;
     }
 
     public void start() {
-        stats = new TreeMap<>();
         startTime = System.currentTimeMillis();
     }
 
@@ -47,29 +57,22 @@ public class Reporter {
         asyncExecutor.submit(() -> {
             try {
                 LOGGER.debug("Running report compute");
-                var oldStats = stats;
                 long now = System.currentTimeMillis();
                 long interval = now - startTime;
+                runHistograms.nextInterval(Instant.ofEpochMilli(startTime), Instant.ofEpochMilli(now));
                 startTime = now;
-        
-                stats = new TreeMap<>();
-        
+
                 Document reportDoc = new Document();
-                for (var workload: oldStats.keySet()) {
-                    Document computedStats = oldStats.get(workload).compute(interval, percentiles);
+                for (var entry: new TreeMap<>(stats).entrySet()) {
+                    Document computedStats = entry.getValue().compute(interval, percentiles);
                     if (computedStats != null) {
-                        reportDoc.append(workload, computedStats);
+                        reportDoc.append(entry.getKey(), computedStats);
                     }
                 }
         
                 Instant reportInstant = Instant.ofEpochMilli(now);
                 Report report = new Report(reportInstant, reportDoc);
-                synchronized(this) {
-                    reports.put(reportInstant, report);
-                    // evict reports older than one hour
-                    var oneHourAgo = reportInstant.minus(Duration.ofHours(1));
-                    reports.headMap(oneHourAgo).clear();
-                }
+                history.add(report);
         
                 LOGGER.info(report.toString());
 
@@ -83,33 +86,99 @@ public class Reporter {
         });
     }
 
-    public synchronized void reportOp(String name, long i, long duration) {
-        //LOGGER.debug("Reported {} {} {}", name, i, duration);
+    /**
+     * Report an operation that took `duration` milliseconds.
+     * Prefer {@link #reportOpNanos(String, long, long)} which keeps sub-millisecond precision.
+     */
+    public void reportOp(String name, long i, long duration) {
+        reportOpNanos(name, i, TimeUnit.MILLISECONDS.toNanos(duration));
+    }
+
+    /**
+     * Report an operation that took `durationNanos` nanoseconds (as measured with System.nanoTime()).
+     * Durations are recorded with microsecond precision.
+     */
+    public void reportOpNanos(String name, long i, long durationNanos) {
+        StatsHolder h = stats.get(name);
+        if (h == null) {
+            h = stats.computeIfAbsent(name, k -> new StatsHolder(metrics.forWorkload(k), runHistograms.forWorkload(k)));
+        }
+        h.addOp(i, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Count an occurrence of `event` (a retry, an abort...) for workload `name`. Counts are reported per interval in
+     * the workload's `events` document.
+     */
+    public void reportEvent(String name, String event) {
         StatsHolder h = stats.get(name);
         if (h == null) {
-            h = new StatsHolder();
-            stats.put(name, h);
+            h = stats.computeIfAbsent(name, k -> new StatsHolder(metrics.forWorkload(k), runHistograms.forWorkload(k)));
         }
-        h.addOp(i, duration);
+        h.addEvent(event);
+    }
+
+    /**
+     * @return counters and histograms since the start, fed as operations are reported (for the `/metrics` endpoint)
+     */
+    public CumulativeMetrics getMetrics() {
+        return metrics;
     }
 
     public Collection<Report> getAllReports() {
-        return reports.values();
+        return history.getReportsSince(null);
+    }
+
+    public Collection<Report> getReportsSince(Instant start) {
+        return history.getReportsSince(start);
+    }
+
+    public ReportHistory getHistory() {
+        return history;
     }
 
-    public synchronized Collection<Report> getReportsSince(Instant start) {
-        return reports.tailMap(start, false).values();
+    /**
+     * @return latency histograms of the whole run and of its phases
+     */
+    public RunHistograms getRunHistograms() {
+        return runHistograms;
+    }
+
+    /**
+     * Add the operations since the last report to the run histograms, then export them. Called at shutdown.
+     */
+    public void finish() {
+        try {
+            asyncExecutor.submit(() -> {
+                long now = System.currentTimeMillis();
+                runHistograms.nextInterval(Instant.ofEpochMilli(startTime), Instant.ofEpochMilli(now));
+                startTime = now;
+                for (var holder : stats.values()) {
+                    holder.run.add(holder.recorder.swap().durations);
+                }
+            }).get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // e.g. the report thread is the one exiting: export what was reported
+            LOGGER.debug("Cannot add the last interval to the run histograms", e);
+        }
+        runHistograms.export();
     }
     
-    // a specific thread for logging durations
+    // a specific thread for computing reports
     static ExecutorService asyncExecutor = Executors.newFixedThreadPool(1);
 
     private static class StatsHolder {
 
-        AtomicLong numops = new AtomicLong(0);
-        // List<Long> durationsBatch = new ArrayList<>();
-        TreeMultiset<Long> durationsBatch = TreeMultiset.create();
-        List<Long> numbers = new ArrayList<>();
+        final IntervalRecorder recorder;
+        Map<String, LongAdder> events = new ConcurrentHashMap<>();
+        final CumulativeMetrics.Workload cumulative;
+        final RunHistograms.Workload run;
+
+        StatsHolder(CumulativeMetrics.Workload cumulative, RunHistograms.Workload run) {
+            this.cumulative = cumulative;
+            this.run = run;
+            this.recorder = run.newRecorder();
+        }
 
         // Compute some statistics
         // interval is the overall duration
@@ -117,61 +186,97 @@ public class Reporter {
 
             var __startCompute = currentTimeMillis();
 
-            List<Long> durations = new ArrayList<>();
-            durations.addAll(durationsBatch);
+            var batch = recorder.swap();
+            var count = batch.count();
+            run.add(batch.durations);
+
+            var eventCounts = new Document();
+            for (var event : new TreeMap<>(events).entrySet()) {
+                var n = event.getValue().sumThenReset();
+                if (n > 0) {
+                    eventCounts.append(event.getKey(), n);
+                }
+            }
+
+            if (count == 0) {
+                // e.g. all transactions aborted: still report the events, with no ops
+                return eventCounts.isEmpty() ? null : _noOps(percentiles, eventCounts, __startCompute);
+            }
+            var durations = batch.durations;
 
             List<Document> computedPercentiles = new ArrayList<>(percentiles.size());
             for (int _p : percentiles) {
-                double p = (double)_p/100d;
-
-                var index = (int)Math.ceil(p * (double)durations.size());
-                if (index >= durations.size()) {
-                    index = Math.max(0, durations.size() - 1);
-                }
-                long pctVal = durations.get(index);
+                double pctVal = toMillis(durations.getValueAtPercentile(_p));
                 computedPercentiles.add(new Document("p", _p).append("value", pctVal));
             }
 
-            // var ninetyFifthIndex = (int)Math.ceil(.95d * (double)durations.size());
-            // if (ninetyFifthIndex >= durations.size()) {
-            //     ninetyFifthIndex = Math.max(0, durations.size()-1);
-            // }
-            // long ninetyFifth = durations.get(ninetyFifthIndex);
-            // long fiftieth = durations.size() > 1 ? durations.get(durations.size()/2) : 0;
+            var meanBatch = durations.getMean() / 1000d;
+            var util = 100. * toMillis(durations.getSum()) / (double) interval;
+            var records = batch.records.sum();
 
-            Stats batchStats = Stats.of(durations);
-            var meanBatch = batchStats.mean();
-            var util = 100. * batchStats.sum() / (double) interval;
-            var numberStats = Stats.of(numbers);
-
-            long totalOps = (long) (numberStats.count() /  ((double)interval/1000.d));
+            long totalOps = (long) (count /  ((double)interval/1000.d));
             // TODO fix this properly - there are times when the number goes through the roof, either because of an overflow or because `interval` is too small.
             if (totalOps > 1e10) {
-                LOGGER.warn("Computed very large ops number {}. Count is {}, interval is {}", totalOps, numberStats.count(), interval);
+                LOGGER.warn("Computed very large ops number {}. Count is {}, interval is {}", totalOps, count, interval);
                 return null;
             }
 
             Document wlReport = new Document();
 
             wlReport.append("ops", totalOps);
-            wlReport.append("records", (long) (numberStats.sum() / (double) (interval/1000)));
-            wlReport.append("total ops", numberStats.count());
-            wlReport.append("total records", (long)numberStats.sum());
+            wlReport.append("records", (long) (records / ((double)interval/1000.d)));
+            wlReport.append("total ops", count);
+            wlReport.append("total records", records);
             wlReport.append("mean duration", meanBatch);
             wlReport.append("percentiles", computedPercentiles);
-            wlReport.append("mean batch size", numberStats.mean());
-            wlReport.append("min batch size", numberStats.min());
-            wlReport.append("max batch size", numberStats.max());
+            wlReport.append("mean batch size", (double) records / (double) count);
+            wlReport.append("min batch size", (double) batch.minBatch.get());
+            wlReport.append("max batch size", (double) batch.maxBatch.get());
             wlReport.append("client util", util);
             wlReport.append("report compute time", currentTimeMillis() - __startCompute);
+            if (!eventCounts.isEmpty()) {
+                wlReport.append("events", eventCounts);
+            }
 
             return wlReport;
 
         }
 
-        public void addOp(long number, long duration) {
-            numops.incrementAndGet();
-            Reporter.asyncExecutor.submit(() ->  {durationsBatch.add(duration); numbers.add(number);});
+        private static Document _noOps(List<Integer> percentiles, Document eventCounts, long startCompute) {
+            List<Document> computedPercentiles = new ArrayList<>(percentiles.size());
+            for (int _p : percentiles) {
+                computedPercentiles.add(new Document("p", _p).append("value", 0d));
+            }
+            return new Document("ops", 0L)
+                .append("records", 0L)
+                .append("total ops", 0L)
+                .append("total records", 0L)
+                .append("mean duration", 0d)
+                .append("percentiles", computedPercentiles)
+                .append("mean batch size", 0d)
+                .append("min batch size", 0d)
+                .append("max batch size", 0d)
+                .append("client util", 0d)
+                .append("report compute time", currentTimeMillis() - startCompute)
+                .append("events", eventCounts);
+        }
+
+        public void addOp(long number, long durationMicros) {
+            recorder.record(number, durationMicros);
+            cumulative.record(number, durationMicros);
+        }
+
+        public void addEvent(String event) {
+            var counter = events.get(event);
+            if (counter == null) {
+                counter = events.computeIfAbsent(event, k -> new LongAdder());
+            }
+            counter.increment();
+            cumulative.event(event);
+        }
+
+        private static double toMillis(long micros) {
+            return (double) micros / 1000d;
         }
     }
 }
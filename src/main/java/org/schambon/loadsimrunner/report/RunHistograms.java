@@ -0,0 +1,404 @@
+package org.schambon.loadsimrunner.report;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency histograms per workload over the whole run and over each phase of it (the `latencyHistograms` option).
+ *
+ * Interval histograms are added in when each report is computed, so recording operations costs nothing more, and
+ * nothing is lost but the configured precision: percentiles of the whole run or of a phase are exact within that
+ * precision, unlike an average of per-report percentiles.
+ *
+ * A phase starts at the next report after {@link #startPhase(String)} is called, or at the offsets given in the
+ * config. Histograms can be exported as a JSON summary, as HdrHistogram percentile distributions (`.hgrm`) and as an
+ * HdrHistogram interval log (`.hlog`, one interval per phase and workload).
+ */
+public class RunHistograms {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunHistograms.class);
+
+    static final long HIGHEST_TRACKABLE_VALUE = 3600L * 1000L * 1000L; // durations are in µs, up to one hour
+    static final String DEFAULT_PHASE = "main";
+    static final double[] SUMMARY_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final double MILLIS = 1000d;
+
+    private final int significantDigits;
+    private final List<Integer> percentiles;
+    private final Path output;
+    private final List<Document> scheduledPhases; // {name, start}, by start
+
+    private final Map<String, Workload> workloads = new TreeMap<>();
+    private final List<Phase> phases = new ArrayList<>();
+    private final List<Window> windows = new ArrayList<>();
+    private Phase current;
+    private Instant start;
+    private Instant end;
+    private int nextScheduled = 0;
+
+    public RunHistograms(int significantDigits, List<Integer> percentiles, Path output, List<Document> scheduledPhases) {
+        this.significantDigits = significantDigits;
+        this.percentiles = percentiles;
+        this.output = output;
+        this.scheduledPhases = scheduledPhases;
+    }
+
+    /**
+     * @param config null, or `{"significantDigits": 2, "output": "<directory>", "phases": [{"name": ..., "start": ms}]}`
+     */
+    public static RunHistograms parse(Object config, List<Integer> percentiles) {
+        if (config == null) {
+            return new RunHistograms(2, percentiles, null, List.of());
+        }
+        if (!(config instanceof Document)) {
+            throw new InvalidConfigException("latencyHistograms must be a document");
+        }
+        var doc = (Document) config;
+        var digits = doc.get("significantDigits", 2);
+        if (digits < 1 || digits > 5) {
+            throw new InvalidConfigException("latencyHistograms.significantDigits must be between 1 and 5");
+        }
+        var output = doc.getString("output");
+
+        var phases = new ArrayList<Document>();
+        var names = new ArrayList<String>();
+        long previous = -1;
+        for (var phase : doc.getList("phases", Document.class, List.of())) {
+            var name = phase.getString("name");
+            var phaseStart = phase.get("start");
+            if (name == null || !(phaseStart instanceof Number) || ((Number) phaseStart).longValue() < 0) {
+                throw new InvalidConfigException("latencyHistograms.phases must have a name and a start (in ms since the start of the run)");
+            }
+            if (names.contains(name) || ((Number) phaseStart).longValue() <= previous) {
+                throw new InvalidConfigException("latencyHistograms.phases must have unique names and be in order of start");
+            }
+            names.add(name);
+            previous = ((Number) phaseStart).longValue();
+            phases.add(new Document("name", name).append("start", previous));
+        }
+        return new RunHistograms(digits, percentiles, output == null ? null : Path.of(output), phases);
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    synchronized Workload forWorkload(String name) {
+        return workloads.computeIfAbsent(name, Workload::new);
+    }
+
+    /**
+     * @return a window on the latencies of `workload` (a report entry), to merge the intervals of reports of its choice
+     */
+    public synchronized Window newWindow(String workload) {
+        var window = new Window(workload);
+        windows.add(window);
+        return window;
+    }
+
+    /**
+     * Called before the interval histograms of a report are added: starts scheduled phases, and opens the first one.
+     */
+    synchronized void nextInterval(Instant intervalStart, Instant intervalEnd) {
+        for (var window : windows) {
+            window.last.reset();
+        }
+        if (start == null) {
+            start = intervalStart;
+        }
+        end = intervalEnd;
+
+        var offset = intervalStart.toEpochMilli() - start.toEpochMilli();
+        String scheduled = null;
+        while (nextScheduled < scheduledPhases.size() && scheduledPhases.get(nextScheduled).getLong("start") <= offset) {
+            scheduled = scheduledPhases.get(nextScheduled++).getString("name");
+        }
+        if (scheduled != null) {
+            _newPhase(scheduled);
+        } else if (current == null) {
+            _newPhase(DEFAULT_PHASE);
+        }
+        if (current.start == null) {
+            current.start = intervalStart;
+        }
+        current.end = intervalEnd;
+    }
+
+    /**
+     * Start a new phase at the next report: the histograms of the current phase are kept as they are.
+     *
+     * @throws IllegalArgumentException if there already is a phase with this name
+     */
+    public synchronized void startPhase(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("A phase needs a name");
+        }
+        for (var phase : phases) {
+            // a phase that has no report yet is replaced
+            if (phase.name.equals(name) && !(phase == current && phase.start == null)) {
+                throw new IllegalArgumentException(String.format("There already is a phase named %s", name));
+            }
+        }
+        _newPhase(name);
+        LOGGER.info("Starting latency phase {}", name);
+    }
+
+    private void _newPhase(String name) {
+        if (current != null && current.start == null) {
+            _dropCurrent();
+        }
+        current = new Phase(name);
+        phases.add(current);
+    }
+
+    private void _dropCurrent() {
+        phases.remove(current);
+        current = null;
+    }
+
+    /**
+     * @return for the whole run and for each phase: count, min, mean, max and percentiles (in ms) of each workload
+     */
+    public synchronized Document summary() {
+        var run = new Document();
+        for (var workload : workloads.values()) {
+            run.append(workload.name, _summary(workload.run));
+        }
+        var _phases = new ArrayList<Document>();
+        for (var phase : phases) {
+            var doc = new Document("name", phase.name).append("start", _time(phase.start)).append("end", _time(phase.end));
+            var wl = new Document();
+            for (var entry : phase.histograms.entrySet()) {
+                wl.append(entry.getKey(), _summary(entry.getValue()));
+            }
+            _phases.add(doc.append("workloads", wl));
+        }
+        return new Document("start", _time(start))
+            .append("end", _time(end))
+            .append("significantDigits", significantDigits)
+            .append("workloads", run)
+            .append("phases", _phases);
+    }
+
+    private static String _time(Instant time) {
+        return time == null ? null : time.toString();
+    }
+
+    private Document _summary(LatencyHistogram histogram) {
+        var _percentiles = new ArrayList<Document>();
+        for (var p : _percentileLevels()) {
+            _percentiles.add(new Document("p", p).append("value", histogram.getValueAtPercentile(p) / MILLIS));
+        }
+        return new Document("count", histogram.getTotalCount())
+            .append("min", histogram.getMin() / MILLIS)
+            .append("mean", histogram.getMean() / MILLIS)
+            .append("max", histogram.getMax() / MILLIS)
+            .append("percentiles", _percentiles);
+    }
+
+    // the report percentiles and the usual tail ones
+    private List<Double> _percentileLevels() {
+        var levels = new TreeMap<Double, Double>();
+        for (var p : percentiles) {
+            levels.put(p.doubleValue(), p.doubleValue());
+        }
+        for (var p : SUMMARY_PERCENTILES) {
+            levels.put(p, p);
+        }
+        return new ArrayList<>(levels.keySet());
+    }
+
+    /**
+     * Percentile distribution (values in ms) of a workload over the whole run, or over a phase if `phase` is not null.
+     *
+     * @return false if there is no such workload or phase
+     */
+    public synchronized boolean writeDistribution(String workload, String phase, StringBuilder out) {
+        LatencyHistogram histogram = null;
+        if (phase == null) {
+            var w = workloads.get(workload);
+            histogram = w == null ? null : w.run;
+        } else {
+            for (var p : phases) {
+                if (p.name.equals(phase)) {
+                    histogram = p.histograms.get(workload);
+                }
+            }
+        }
+        if (histogram == null) {
+            return false;
+        }
+        HdrFormat.percentileDistribution(histogram, MILLIS, out);
+        return true;
+    }
+
+    /**
+     * Interval log with one interval per phase and workload, tagged with the workload name. Merge all the intervals
+     * of a tag to get the whole run.
+     */
+    public synchronized void writeLog(StringBuilder out) {
+        var base = start == null ? System.currentTimeMillis() : start.toEpochMilli();
+        HdrFormat.logHeader(base, out);
+        for (var phase : phases) {
+            if (phase.start == null) {
+                continue;
+            }
+            out.append("#Phase ").append(phase.name).append('\n');
+            for (var entry : phase.histograms.entrySet()) {
+                HdrFormat.logInterval(HdrFormat.tag(entry.getKey()), (phase.start.toEpochMilli() - base) / 1000d,
+                    (phase.end.toEpochMilli() - base) / 1000d, entry.getValue(), MILLIS, out);
+            }
+        }
+    }
+
+    /**
+     * Log the whole-run latencies of each workload, and write all histograms to the output directory (if configured):
+     * `summary.json`, `latency.hlog`, and one `.hgrm` per workload (and per workload and phase if there are several).
+     */
+    public synchronized void export() {
+        for (var workload : workloads.values()) {
+            var h = workload.run;
+            var line = new StringBuilder();
+            for (var p : _percentileLevels()) {
+                line.append(String.format(", p%s: %.3f", _label(p), h.getValueAtPercentile(p) / MILLIS));
+            }
+            LOGGER.info("Whole run - {}: {} ops, mean: {} ms{}, max: {} ms", workload.name, h.getTotalCount(),
+                String.format("%.3f", h.getMean() / MILLIS), line, String.format("%.3f", h.getMax() / MILLIS));
+        }
+        if (output == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(output);
+            _write("summary.json", summary().toJson());
+            var log = new StringBuilder();
+            writeLog(log);
+            _write("latency.hlog", log.toString());
+            var withPhases = phases.size() > 1;
+            for (var workload : workloads.keySet()) {
+                var hgrm = new StringBuilder();
+                writeDistribution(workload, null, hgrm);
+                _write(HdrFormat.tag(workload) + ".hgrm", hgrm.toString());
+                for (var phase : withPhases ? phases : List.<Phase>of()) {
+                    hgrm.setLength(0);
+                    if (writeDistribution(workload, phase.name, hgrm)) {
+                        _write(HdrFormat.tag(workload) + "." + HdrFormat.tag(phase.name) + ".hgrm", hgrm.toString());
+                    }
+                }
+            }
+            LOGGER.info("Latency histograms written to {}", output.toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.error(String.format("Cannot write latency histograms to %s", output), e);
+        }
+    }
+
+    private void _write(String file, String content) throws IOException {
+        Files.writeString(output.resolve(file), content, StandardCharsets.UTF_8);
+    }
+
+    private static String _label(double p) {
+        return p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p);
+    }
+
+    private LatencyHistogram _newHistogram() {
+        return new LatencyHistogram(HIGHEST_TRACKABLE_VALUE, significantDigits);
+    }
+
+    private class Phase {
+        final String name;
+        final Map<String, LatencyHistogram> histograms = new TreeMap<>();
+        Instant start;
+        Instant end;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    class Workload {
+        final String name;
+        final LatencyHistogram run = _newHistogram();
+
+        Workload(String name) {
+            this.name = name;
+        }
+
+        IntervalRecorder newRecorder() {
+            return new IntervalRecorder(HIGHEST_TRACKABLE_VALUE, significantDigits);
+        }
+
+        /**
+         * Add the histogram of an interval (that is no longer being recorded into) to the run and the current phase.
+         */
+        void add(LatencyHistogram interval) {
+            if (interval.getTotalCount() == 0) {
+                return;
+            }
+            synchronized (RunHistograms.this) {
+                run.add(interval);
+                if (current != null) {
+                    current.histograms.computeIfAbsent(name, k -> _newHistogram()).add(interval);
+                }
+                for (var window : windows) {
+                    if (window.workload.equals(name)) {
+                        window.last.add(interval);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Latencies of a workload over the reports its owner keeps: call {@link #keepLast()} from a {@link ReporterCallback}
+     * to add the interval of the report being handled.
+     */
+    public class Window {
+        private final String workload;
+        private final LatencyHistogram last = _newHistogram(); // interval of the latest report
+        private final LatencyHistogram merged = _newHistogram();
+
+        Window(String workload) {
+            this.workload = workload;
+        }
+
+        public void keepLast() {
+            synchronized (RunHistograms.this) {
+                merged.add(last);
+            }
+        }
+
+        public void reset() {
+            synchronized (RunHistograms.this) {
+                merged.reset();
+            }
+        }
+
+        public long getTotalCount() {
+            synchronized (RunHistograms.this) {
+                return merged.getTotalCount();
+            }
+        }
+
+        /**
+         * @return the latency at `percentile` of the reports kept, in ms
+         */
+        public double getValueAtPercentile(double percentile) {
+            synchronized (RunHistograms.this) {
+                return merged.getValueAtPercentile(percentile) / MILLIS;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.schambon.loadsimrunner.report;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal writer/reader phaser (after Gil Tene's WriterReaderPhaser in HdrHistogram).
+ *
+ * Writers wrap their critical section in {@link #writerCriticalSectionEnter()} / {@link #writerCriticalSectionExit(long)},
+ * which are wait-free. A single reader swaps the data structure the writers point to, then calls {@link #flipPhase()},
+ * which returns once every writer that could have seen the previous structure has left its critical section.
+ */
+class WriterReaderPhaser {
+
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    long writerCriticalSectionEnter() {
+        return startEpoch.getAndIncrement();
+    }
+
+    void writerCriticalSectionExit(long criticalValueAtEnter) {
+        (criticalValueAtEnter < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+    }
+
+    /**
+     * Must only be called by one reader at a time.
+     */
+    void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).lazySet(initialStartValue);
+
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+
+        var endEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (endEpoch.get() != startValueAtFlip) {
+            Thread.yield();
+        }
+    }
+}
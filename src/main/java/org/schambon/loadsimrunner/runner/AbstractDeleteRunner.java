@@ -3,26 +3,26 @@ package org.schambon.loadsimrunner.runner;
 import com.mongodb.client.result.DeleteResult;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 
 public abstract class AbstractDeleteRunner extends AbstractRunner {
 
+    private DocumentGenerator filter;
+
     public AbstractDeleteRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+        this.filter = compile((Document) params.get("filter"));
     }
     
     @Override
     protected long doRun() {
-        var filter = (Document) params.get("filter");
-        filter = template.generate(filter);
+        var filter = template.generate(this.filter);
 
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var deleteResult = doDelete(filter);
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, deleteResult.getDeletedCount(), duration);
-        return duration;
+        return reportOp(deleteResult.getDeletedCount(), start);
     }
 
     abstract protected DeleteResult doDelete(Document filter);
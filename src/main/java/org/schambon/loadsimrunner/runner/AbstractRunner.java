@@ -1,8 +1,15 @@
 package org.schambon.loadsimrunner.runner;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.mongodb.client.MongoCollection;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.Generator;
+import org.schambon.loadsimrunner.ListGenerator;
 import org.schambon.loadsimrunner.TemplateManager;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
@@ -13,6 +20,10 @@ public abstract class AbstractRunner implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractRunner.class);
 
+    private static final long PAUSED_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final WorkloadManager workload;
+
     protected TemplateManager template;
     protected MongoCollection<Document> mongoColl;
     protected int pace;
@@ -21,14 +32,25 @@ public abstract class AbstractRunner implements Runnable {
     protected String name;
     protected Document params;
     protected Document variables; // may be null!
+    protected DocumentGenerator variablesGenerator; // compiled variables, may be null!
     protected long stopAfter;
     protected long stopAfterDuration;
     protected long startAfterDuration;
     protected String variablesScope;
+    protected ArrivalRate arrivalRate; // may be null!
 
     protected long counter = 0;
+    private long totalDuration = 0;
+
+    // a client never runs step() concurrently, but it may run it on another carrier thread each time
+    private volatile long intendedStart;
+    private volatile boolean slotClaimed = false;
+    // set once intendedStart is written; the first operation of the iteration claims it, from any thread
+    private final AtomicBoolean hasIntendedStart = new AtomicBoolean(false);
+    private volatile boolean stopped = false;
 
     public AbstractRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        this.workload = workloadConfiguration;
         this.template = workloadConfiguration.getTemplateConfig();
         this.name = workloadConfiguration.getName();
 
@@ -50,60 +72,170 @@ public abstract class AbstractRunner implements Runnable {
         this.reporter = reporter;
         this.params = workloadConfiguration.getParams();
         this.variables = workloadConfiguration.getVariables();
+        this.variablesGenerator = workloadConfiguration.compile(variables);
         this.stopAfter = workloadConfiguration.getStopAfter();
         this.stopAfterDuration = workloadConfiguration.getStopAfterDuration();
         this.startAfterDuration = workloadConfiguration.getStartAfterDuration();
         this.variablesScope = workloadConfiguration.getVariablesScope();
+        this.arrivalRate = workloadConfiguration.getArrivalRate();
     }
 
     @Override
     public void run() {
-        var keepGoing = true;
-        long totalDuration = 0;
+        long wait = TimeUnit.MILLISECONDS.toNanos(Math.max(0, startAfterDuration));
+        while (wait >= 0) {
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    LOGGER.info("Workload {} interrupted, stopping.", name);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            wait = step();
+        }
+    }
 
-        if(this.startAfterDuration >0){
-            try {
-                Thread.sleep(this.startAfterDuration);
-            } catch (InterruptedException e) {
-                LOGGER.error(String.format("Workload %s: Error caught in execution", name), e);
+    /**
+     * Run one iteration of the workload, without ever sleeping - this lets a {@link PooledExecutor} multiplex many
+     * simulated clients on a few carrier threads.
+     *
+     * @return how long to wait (in nanoseconds) before calling step() again, or -1 if the workload is over
+     */
+    public long step() {
+        if (stopped) {
+            return -1;
+        }
+        // pace, rate and pause can be changed at runtime
+        if (workload.isPaused()) {
+            slotClaimed = false;
+            return PAUSED_POLL_NANOS;
+        }
+        pace = workload.getPace();
+        arrivalRate = workload.getArrivalRate();
+        if (arrivalRate != null && !slotClaimed) {
+            var slot = arrivalRate.nextIntendedStart();
+            if (slot == ArrivalRate.NO_SLOT) {
+                return ArrivalRate.IDLE_POLL_NANOS;
+            }
+            intendedStart = slot;
+            slotClaimed = true;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                return wait;
             }
         }
+        slotClaimed = false;
+        hasIntendedStart.set(arrivalRate != null);
 
-        while (keepGoing) {
-            long duration = 0;
-            try {
-                ((WorkloadThread) Thread.currentThread()).setContextValue("iteration", Long.valueOf(counter));
-                template.setVariables(variables);
-                duration = doRun();
-                totalDuration += duration;
-                counter++;
-
-                LOGGER.debug("Counter: {}, stopAfter: {}", counter, stopAfter);
-                LOGGER.debug("Duration: {}, stopAfterDuration: {}", totalDuration, stopAfterDuration);
-                if (stopAfter > 0 && counter >= stopAfter) {
-                    LOGGER.info("Workload {} stopping.", name);
-                    keepGoing = false;
-                }
-                if (stopAfterDuration > 0 && totalDuration >= stopAfterDuration) {
-                    LOGGER.info("Workload {} stopping.", name);
-                    keepGoing = false;
-                }
-            } catch (Exception e) {
-                LOGGER.error(String.format("Workload %s: Error caught in execution", name), e);
-            } finally {
-                template.clearVariables();
-            } 
-
-            if (pace != 0) {
-                long wait = Math.max(0, pace - duration);
-                try {
-                    Thread.sleep(wait);
-                } catch (InterruptedException e) {
-                }
+        var keepGoing = true;
+        long duration = 0;
+        try {
+            var context = WorkloadContext.current();
+            if (context != null) {
+                context.setContextValue("iteration", Long.valueOf(counter));
+            }
+            template.setVariables(variablesGenerator);
+            duration = doRun();
+            totalDuration += duration;
+            counter++;
+
+            LOGGER.debug("Counter: {}, stopAfter: {}", counter, stopAfter);
+            LOGGER.debug("Duration: {}, stopAfterDuration: {}", totalDuration, stopAfterDuration);
+            if (stopAfter > 0 && counter >= stopAfter) {
+                LOGGER.info("Workload {} stopping.", name);
+                keepGoing = false;
+            }
+            if (stopAfterDuration > 0 && totalDuration >= stopAfterDuration) {
+                LOGGER.info("Workload {} stopping.", name);
+                keepGoing = false;
             }
+        } catch (Exception e) {
+            LOGGER.error(String.format("Workload %s: Error caught in execution", name), e);
+            reporter.reportEvent(name, Reporter.ERRORS);
+        } finally {
+            template.clearVariables();
+            hasIntendedStart.set(false);
         }
-        
+
+        if (!keepGoing) {
+            return -1;
+        }
+        if (pace != 0) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, pace - duration));
+        }
+        return 0;
+    }
+
+    public long getStartAfterDuration() {
+        return startAfterDuration;
+    }
+
+    /**
+     * Stop this client at the end of its current iteration (when scaling a workload down).
+     */
+    public void stop() {
+        stopped = true;
     }
     
     protected abstract long doRun();
+
+    /**
+     * Compile a template from the workload config: it is compiled once per workload, and shared by all its runners.
+     */
+    protected DocumentGenerator compile(Document from) {
+        return workload.compile(from);
+    }
+
+    protected ListGenerator compile(List<Document> from) {
+        return workload.compile(from);
+    }
+
+    protected Generator compileExpression(Object expression) {
+        return workload.compileExpression(expression);
+    }
+
+    /**
+     * Run one iteration of this runner on behalf of `parent` (a {@link MixRunner}) with this runner's variables, as
+     * {@link #step()} would: the first operation is timed from the parent's intended start, if any.
+     *
+     * @return the duration of the iteration in milliseconds
+     */
+    protected long runWithin(AbstractRunner parent) {
+        intendedStart = parent.intendedStart;
+        hasIntendedStart.set(parent.hasIntendedStart.getAndSet(false));
+        try {
+            template.setVariables(variablesGenerator);
+            return doRun();
+        } finally {
+            template.clearVariables();
+            hasIntendedStart.set(false);
+        }
+    }
+
+    /**
+     * @return the time the operation starting at `startNanos` should be timed from: its intended start if running at
+     * a target arrival rate and this is the first operation of the iteration, `startNanos` otherwise.
+     */
+    protected long operationStart(long startNanos) {
+        if (hasIntendedStart.compareAndSet(true, false)) {
+            if (intendedStart - startNanos < 0) {
+                return intendedStart;
+            }
+        }
+        return startNanos;
+    }
+
+    /**
+     * Report an operation to the reporter, timed from `startNanos` (obtained with System.nanoTime()) to now.
+     * When running at a target arrival rate, the first operation of an iteration is timed from its intended start instead,
+     * so that time spent waiting behind a slow server is accounted for.
+     * @return the duration of the operation in milliseconds
+     */
+    protected long reportOp(long count, long startNanos) {
+        long duration = System.nanoTime() - operationStart(startNanos);
+        reporter.reportOpNanos(name, count, duration);
+        return TimeUnit.NANOSECONDS.toMillis(duration);
+    }
 }
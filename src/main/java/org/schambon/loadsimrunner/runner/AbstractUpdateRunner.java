@@ -10,6 +10,8 @@ import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.UpdateResult;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.ListGenerator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 import org.slf4j.Logger;
@@ -19,8 +21,20 @@ public abstract class AbstractUpdateRunner extends AbstractRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractUpdateRunner.class);
 
+    private DocumentGenerator filter;
+    private DocumentGenerator update;
+    private ListGenerator updatePipeline;
+
     public AbstractUpdateRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+
+        this.filter = compile((Document) params.get("filter"));
+        var _update = params.get("update");
+        if (_update instanceof Document) {
+            this.update = compile((Document) _update);
+        } else if (_update instanceof List) {
+            this.updatePipeline = compile((List<Document>) _update);
+        }
     }
 
     @Override
@@ -33,32 +47,28 @@ public abstract class AbstractUpdateRunner extends AbstractRunner {
     }
 
     private long singleUpdate() {
-        var filter = (Document) params.get("filter");
-        filter = template.generate(filter);
+        var filter = template.generate(this.filter);
 
         var options = new UpdateOptions().upsert(params.getBoolean("upsert", false));
 
         // TODO handle arrayfilters, hint, etc.
-        var update = params.get("update");
-        if (update instanceof Document) {
-            update = template.generate((Document) update);
-        } else if (update instanceof List) {
-            update = template.generate((List<Document>) update);
+        Object update;
+        if (this.update != null) {
+            update = template.generate(this.update);
+        } else if (this.updatePipeline != null) {
+            update = template.generate(this.updatePipeline);
         } else {
             LOGGER.error("Invalid update definition");
             return 0;
         }
         
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var updateResults = 
             update instanceof Document ? 
                 doUpdate(filter, (Document) update, options) :
                 doUpdate(filter, (List<Document>) update, options);
 
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, updateResults.getMatchedCount() + (updateResults.getUpsertedId() != null ? 1 : 0), duration);
-        return duration;
+        return reportOp(updateResults.getMatchedCount() + (updateResults.getUpsertedId() != null ? 1 : 0), start);
     }
 
 
@@ -68,20 +78,18 @@ public abstract class AbstractUpdateRunner extends AbstractRunner {
         List operations = new ArrayList<>(batch);
 
         var options = new UpdateOptions().upsert(params.getBoolean("upsert", false));
-        var filter = (Document) params.get("filter");
-        var update = params.get("update");
         var refreshVariables = ("operation".equals(variablesScope)) ? true : false;
 
         for (int i = 0; i < batch; i++) {
             if(refreshVariables){
-                template.setVariables(variables);
+                template.setVariables(variablesGenerator);
             }
             var _f = template.generate(filter);
             UpdateOneModel<Document> model;
-            if (update instanceof Document) {
-                model = new UpdateOneModel<>(_f, template.generate((Document)update), options);
-            } else if (update instanceof List) {
-                model = new UpdateOneModel<>(_f, template.generate((List<Document>)update), options);
+            if (update != null) {
+                model = new UpdateOneModel<>(_f, template.generate(update), options);
+            } else if (updatePipeline != null) {
+                model = new UpdateOneModel<>(_f, template.generate(updatePipeline), options);
             } else {
                 LOGGER.error("Invalid update definition");
                 return 0;
@@ -91,12 +99,10 @@ public abstract class AbstractUpdateRunner extends AbstractRunner {
                 template.clearVariables();
             }           
         }
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var bulkWriteResult = mongoColl.bulkWrite(operations, new BulkWriteOptions().ordered(params.getBoolean("ordered", false)));
-        long duration = System.currentTimeMillis() - start;
         //LOGGER.debug("Modified {}, upserted {}", bulkWriteResult.getModifiedCount(), bulkWriteResult.getUpserts().size());
-        reporter.reportOp(name, batch, duration);
-        return duration;
+        return reportOp(batch, start);
     }
 
     abstract protected UpdateResult doUpdate(Document filter, Document update, UpdateOptions options);
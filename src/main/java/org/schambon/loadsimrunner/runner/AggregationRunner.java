@@ -2,30 +2,31 @@ package org.schambon.loadsimrunner.runner;
 
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.ListGenerator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 
 public class AggregationRunner extends AbstractRunner {
 
+    private ListGenerator pipeline;
+
     public AggregationRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+        this.pipeline = compile(params.getList("pipeline", Document.class));
     }
 
     @Override
     protected long doRun() {
-        var pipeline = template.generate(params.getList("pipeline", Document.class));
+        var pipeline = template.generate(this.pipeline);
 
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var i = 0;
         var iterator = mongoColl.aggregate(pipeline).iterator();
         while (iterator.hasNext()) {
             iterator.next();
             i++;
         }
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, i, duration);
-        return duration;
+        return reportOp(i, start);
         
     }
     
@@ -0,0 +1,215 @@
+package org.schambon.loadsimrunner.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+
+/**
+ * Open-loop arrival schedule for a workload (the `rate` workload option).
+ *
+ * All threads of a workload share one schedule: each operation claims the next intended start time, which advances
+ * by 1/rate seconds regardless of how long operations take. If the server stalls, intended start times fall behind
+ * the wall clock and the backlog shows up as latency (measured from the intended start) instead of simply
+ * lowering the request rate.
+ *
+ * The rate is in operations per second (batches, for bulk workloads) and can be:
+ * - a number: constant rate
+ * - `{"start": r0, "end": r1, "rampDuration": ms}`: linear ramp from r0 to r1, then constant at r1
+ * - `{"schedule": [{"at": ms, "rate": r}, ...]}`: step function, `at` being the time since the workload started
+ */
+public class ArrivalRate {
+
+    /**
+     * Returned by {@link #nextIntendedStart()} while the rate is zero
+     */
+    public static final long NO_SLOT = Long.MIN_VALUE;
+
+    /**
+     * How long to wait before asking for a slot again, while the rate is zero
+     */
+    public static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long[] atMillis;
+    private final double[] rates;
+    private final boolean interpolate;
+
+    private volatile double override = -1;
+
+    private volatile boolean started = false;
+    private long origin;
+    private final AtomicLong next = new AtomicLong();
+
+    private ArrivalRate(long[] atMillis, double[] rates, boolean interpolate) {
+        this.atMillis = atMillis;
+        this.rates = rates;
+        this.interpolate = interpolate;
+    }
+
+    /**
+     * @return the arrival rate described by the `rate` config value, or null if there is none
+     */
+    public static ArrivalRate parse(Object config) {
+        if (config == null) {
+            return null;
+        }
+        if (config instanceof Number) {
+            return new ArrivalRate(new long[] {0}, new double[] {checkRate(config)}, false);
+        }
+        if (!(config instanceof Document)) {
+            throw new InvalidConfigException("rate must be a number or a document");
+        }
+
+        var doc = (Document) config;
+        if (doc.containsKey("schedule")) {
+            var schedule = doc.get("schedule");
+            if (!(schedule instanceof List) || ((List<?>) schedule).isEmpty()) {
+                throw new InvalidConfigException("rate schedule must be a non-empty array of {at, rate}");
+            }
+            var steps = new ArrayList<Document>();
+            for (var step : (List<?>) schedule) {
+                if (!(step instanceof Document) || !(((Document) step).get("at") instanceof Number)) {
+                    throw new InvalidConfigException("rate schedule must be a non-empty array of {at, rate}");
+                }
+                steps.add((Document) step);
+            }
+            steps.sort((a, b) -> Long.compare(((Number) a.get("at")).longValue(), ((Number) b.get("at")).longValue()));
+
+            var at = new long[steps.size()];
+            var r = new double[steps.size()];
+            for (var i = 0; i < steps.size(); i++) {
+                at[i] = ((Number) steps.get(i).get("at")).longValue();
+                r[i] = checkRate(steps.get(i).get("rate"));
+            }
+            return new ArrivalRate(at, r, false);
+        }
+
+        if (doc.containsKey("start") || doc.containsKey("end")) {
+            var start = checkRate(doc.get("start"));
+            var end = checkRate(doc.get("end"));
+            var ramp = doc.get("rampDuration");
+            if (!(ramp instanceof Number) || ((Number) ramp).longValue() <= 0) {
+                throw new InvalidConfigException("rate ramp needs a positive rampDuration (in ms)");
+            }
+            return new ArrivalRate(new long[] {0, ((Number) ramp).longValue()}, new double[] {start, end}, true);
+        }
+
+        throw new InvalidConfigException("rate must be a number, {start, end, rampDuration} or {schedule: [...]}");
+    }
+
+    private static double checkRate(Object rate) {
+        if (!(rate instanceof Number) || ((Number) rate).doubleValue() < 0) {
+            throw new InvalidConfigException(String.format("Invalid rate: %s (must be a non-negative number)", rate));
+        }
+        return ((Number) rate).doubleValue();
+    }
+
+    /**
+     * Target rate (ops/s) at the given time since the workload started
+     */
+    public double rateAt(long elapsedMillis) {
+        var o = override;
+        if (o >= 0) {
+            return o;
+        }
+        if (elapsedMillis <= atMillis[0]) {
+            return rates[0];
+        }
+        for (var i = 1; i < atMillis.length; i++) {
+            if (elapsedMillis < atMillis[i]) {
+                if (interpolate) {
+                    var ratio = (double) (elapsedMillis - atMillis[i - 1]) / (double) (atMillis[i] - atMillis[i - 1]);
+                    return rates[i - 1] + ratio * (rates[i] - rates[i - 1]);
+                }
+                return rates[i - 1];
+            }
+        }
+        return rates[rates.length - 1];
+    }
+
+    /**
+     * Current target rate (ops/s)
+     */
+    public double getRate() {
+        return rateAt(started ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin) : 0);
+    }
+
+    /**
+     * Replace the configured rate (ramp or schedule included) with a constant rate, effective immediately.
+     */
+    public void setRate(double opsPerSecond) {
+        if (opsPerSecond < 0) {
+            throw new IllegalArgumentException("rate must not be negative");
+        }
+        this.override = opsPerSecond;
+        if (started) {
+            // don't make threads wait for a slot computed with the previous rate
+            long now = System.nanoTime();
+            while (true) {
+                long slot = next.get();
+                if (slot - now <= 0 || next.compareAndSet(slot, now)) {
+                    break; // no slot in the future any more
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the slots that fell due while the workload did not run (e.g. while it was paused), so that it resumes at the
+     * target rate instead of catching up with a burst.
+     */
+    public void resync() {
+        if (!started) {
+            return;
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long slot = next.get();
+            if (slot - now >= 0 || next.compareAndSet(slot, now)) {
+                break; // no slot in the past any more
+            }
+        }
+    }
+
+    /**
+     * Claim the next slot in the schedule. This never blocks: while the rate is zero there is no slot to claim, and the
+     * caller should ask again after {@link #IDLE_POLL_NANOS}.
+     *
+     * @return the intended start time of the operation, in System.nanoTime() terms, or {@link #NO_SLOT} if the rate is
+     * zero. It may be in the past if the workload is falling behind.
+     */
+    public long nextIntendedStart() {
+        ensureStarted();
+        while (true) {
+            long slot = next.get();
+            double rate = rateAt(TimeUnit.NANOSECONDS.toMillis(slot - origin));
+            if (rate > 0) {
+                long interval = Math.max(1L, (long) (1e9 / rate));
+                if (next.compareAndSet(slot, slot + interval)) {
+                    return slot;
+                }
+            } else {
+                // paused: don't accumulate a backlog, the rate is checked again at the next poll
+                long now = System.nanoTime();
+                if (slot - now > 0 || next.compareAndSet(slot, now + IDLE_POLL_NANOS)) {
+                    return NO_SLOT;
+                }
+            }
+        }
+    }
+
+    private void ensureStarted() {
+        if (!started) {
+            synchronized (this) {
+                if (!started) {
+                    origin = System.nanoTime();
+                    next.set(origin);
+                    started = true;
+                }
+            }
+        }
+    }
+}
@@ -30,7 +30,7 @@ public class BucketTimeSeriesRunner extends TimeSeriesRunner {
     protected Callable<Void> addOneMeasure(Document doc) {
 
         return () -> {
-            var _s = System.currentTimeMillis();
+            var _s = System.nanoTime();
 
             mongoColl.updateOne(
                 new Document(metaField, doc.remove(metaField)).append(countField, new Document("$lt", bucketSize)),
@@ -42,7 +42,7 @@ public class BucketTimeSeriesRunner extends TimeSeriesRunner {
                 new UpdateOptions().upsert(true)
             );
 
-            reporter.reportOp(name, 1, System.currentTimeMillis() - _s);
+            reportOp(1, _s);
             return null;
         };
     }
@@ -50,7 +50,7 @@ public class BucketTimeSeriesRunner extends TimeSeriesRunner {
     @Override
     protected Callable<Void> addManyMeasures(final ArrayList<Document> docs) {
         return () -> {
-            var _s = System.currentTimeMillis();
+            var _s = System.nanoTime();
 
             List<WriteModel<Document>> ops = new ArrayList<>(docs.size());
             for (var d : docs) {
@@ -68,7 +68,7 @@ public class BucketTimeSeriesRunner extends TimeSeriesRunner {
 
             mongoColl.bulkWrite(ops);
 
-            reporter.reportOp(name, docs.size(), System.currentTimeMillis() - _s);
+            reportOp(docs.size(), _s);
             return null;
         };
     }
@@ -3,6 +3,7 @@ package org.schambon.loadsimrunner.runner;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 import org.slf4j.Logger;
@@ -12,14 +13,16 @@ public class FindRunner extends AbstractRunner {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(FindRunner.class);
 
+    private DocumentGenerator filter;
+
     public FindRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+        this.filter = compile((Document) params.get("filter"));
     }
 
     @Override
     protected long doRun() {
-        Document filter = (Document) params.get("filter");
-        filter = template.generate(filter);
+        Document filter = template.generate(this.filter);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{} - filter: {}", name, filter);
@@ -38,17 +41,14 @@ public class FindRunner extends AbstractRunner {
         }
 
         int count = 0;
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var iterator = cursor.iterator();
 
         while (iterator.hasNext()) {
             iterator.next();
             count++;
         }
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, count, duration);
-        return duration;
+        return reportOp(count, start);
     }
     
  
@@ -3,9 +3,12 @@ package org.schambon.loadsimrunner.runner;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.InsertManyOptions;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.schambon.loadsimrunner.RawDocumentWriter;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 import org.slf4j.Logger;
@@ -15,22 +18,30 @@ public class InsertRunner extends AbstractRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(InsertRunner.class);
 
+    private MongoCollection<RawBsonDocument> rawColl = null; // only with rawBson: true
+    private RawDocumentWriter rawWriter = null;
+
     public InsertRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+
+        if (params.getBoolean("rawBson", false)) {
+            rawColl = mongoColl.withDocumentClass(RawBsonDocument.class);
+            rawWriter = new RawDocumentWriter(mongoColl.getCodecRegistry());
+        }
     }
 
     @Override
     protected long doRun() {
+        if (rawColl != null) {
+            return batch == 0 ? insertOneRaw() : insertBatchRaw();
+        }
         return batch == 0 ? insertOne() : insertBatch();
     }
     private long insertOne() {
         Document doc = template.generate();
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         mongoColl.insertOne(doc);
-        long duration = System.currentTimeMillis() - start;
-        reporter.reportOp(name, 1, duration);
-
-        return duration;
+        return reportOp(1, start);
     }
 
     private long insertBatch() {
@@ -41,7 +52,7 @@ public class InsertRunner extends AbstractRunner {
 
         for (int i = 0; i < batch; i++) {
             if(refreshVariables){
-                template.setVariables(variables);
+                template.setVariables(variablesGenerator);
             }
 
             docs.add(template.generate());
@@ -53,11 +64,36 @@ public class InsertRunner extends AbstractRunner {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Generated batch of {} in {}ms", batch, System.currentTimeMillis()-s);
         }
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         mongoColl.insertMany(docs, new InsertManyOptions().ordered(params.getBoolean("ordered", false)));
-        long duration = System.currentTimeMillis() - start;
-        reporter.reportOp(name, batch, duration);
+        return reportOp(batch, start);
+    }
+
+    private long insertOneRaw() {
+        var doc = template.generateRaw(rawWriter);
+        long start = System.nanoTime();
+        rawColl.insertOne(doc);
+        return reportOp(1, start);
+    }
+
+    private long insertBatchRaw() {
+        List<RawBsonDocument> docs = new ArrayList<>(batch);
 
-        return duration;
+        var refreshVariables = "operation".equals(variablesScope);
+
+        for (int i = 0; i < batch; i++) {
+            if (refreshVariables) {
+                template.setVariables(variablesGenerator);
+            }
+
+            docs.add(template.generateRaw(rawWriter));
+
+            if (refreshVariables) {
+                template.clearVariables();
+            }
+        }
+        long start = System.nanoTime();
+        rawColl.insertMany(docs, new InsertManyOptions().ordered(params.getBoolean("ordered", false)));
+        return reportOp(batch, start);
     }
 }
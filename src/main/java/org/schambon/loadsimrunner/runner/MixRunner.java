@@ -0,0 +1,92 @@
+package org.schambon.loadsimrunner.runner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Reporter;
+
+/**
+ * Runs one of several operations at each iteration, picked according to their weights, so that the mix of operations
+ * stays the same whatever their latencies. Each operation is a regular runner and reports under `name.op` (or the
+ * name given to the operation).
+ *
+ * Operations are picked by smooth weighted round-robin rather than at random: over any run of iterations each
+ * operation gets its share within one iteration, and operations are interleaved (weights 2 and 1 give a, b, a, a, b, a...).
+ */
+public class MixRunner extends AbstractRunner {
+
+    private final List<AbstractRunner> runners = new ArrayList<>();
+    private final double[] weights;
+    private final double[] current; // smooth weighted round-robin state, this runner's own
+    private final double totalWeight;
+
+    public MixRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+
+        var ops = params.getList("ops", Document.class);
+        if (ops == null || ops.isEmpty()) {
+            throw new InvalidConfigException(String.format("Mix workload %s must have ops", name));
+        }
+
+        var _weights = new double[ops.size()];
+        var names = new HashSet<String>();
+        for (var i = 0; i < ops.size(); i++) {
+            var opConfig = ops.get(i);
+            var op = opConfig.getString("op");
+            if (op == null || "mix".equals(op)) {
+                throw new InvalidConfigException(String.format("Op %d of mix workload %s must have an op other than mix", i, name));
+            }
+
+            var weight = opConfig.get("weight", 1);
+            if (!(weight instanceof Number) || ((Number) weight).doubleValue() < 0) {
+                throw new InvalidConfigException(String.format("Op %d of mix workload %s must have a non-negative weight", i, name));
+            }
+            _weights[i] = ((Number) weight).doubleValue();
+
+            var opName = opConfig.getString("name") != null ? opConfig.getString("name") : op;
+            if (!names.add(opName)) {
+                opName = String.format("%s-%d", opName, i);
+                names.add(opName);
+            }
+
+            var runner = workloadConfiguration.newMixedRunner(opConfig, opName);
+            if (!(runner instanceof AbstractRunner)) {
+                throw new InvalidConfigException(String.format("Op %s cannot be used in mix workload %s", op, name));
+            }
+            runners.add((AbstractRunner) runner);
+        }
+
+        double total = 0;
+        for (var weight : _weights) {
+            total += weight;
+        }
+        if (!(total > 0) || Double.isInfinite(total)) {
+            throw new InvalidConfigException(String.format("Mix workload %s: the sum of weights must be positive", name));
+        }
+        this.weights = _weights;
+        this.current = new double[_weights.length];
+        this.totalWeight = total;
+    }
+
+    @Override
+    protected long doRun() {
+        return runners.get(_next()).runWithin(this);
+    }
+
+    // each op earns its weight, the richest one runs and pays the total back
+    private int _next() {
+        var picked = 0;
+        for (var i = 0; i < weights.length; i++) {
+            current[i] += weights[i];
+            if (current[i] > current[picked]) {
+                picked = i;
+            }
+        }
+        current[picked] -= totalWeight;
+        return picked;
+    }
+}
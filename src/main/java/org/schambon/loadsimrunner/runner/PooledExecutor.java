@@ -0,0 +1,102 @@
+package org.schambon.loadsimrunner.runner;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many simulated clients of a workload on a small pool of carrier threads (the `pooled` executor mode).
+ *
+ * Each client is an {@link AbstractRunner} driven step by step: a client that is pacing or waiting for its arrival
+ * slot does not hold a thread, it is simply scheduled again when it is due. A client only occupies a carrier
+ * while an iteration actually runs.
+ */
+public class PooledExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledExecutor.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger activeClients = new AtomicInteger();
+
+    public PooledExecutor(String workloadName, int carrierThreads) {
+        var counter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(carrierThreads,
+            r -> new Thread(r, String.format("%s-carrier-%d", workloadName, counter.getAndIncrement())));
+    }
+
+    /**
+     * Start a client. Runnables that are not AbstractRunners cannot be run step by step, they get a carrier for themselves.
+     *
+     * @return false if the executor has shut down because all its clients were done - the caller needs a new one
+     */
+    public synchronized boolean start(WorkloadContext context, Runnable client) {
+        if (scheduler.isShutdown()) {
+            return false;
+        }
+        activeClients.incrementAndGet();
+        if (client instanceof AbstractRunner) {
+            var runner = (AbstractRunner) client;
+            scheduler.schedule(new Step(context, runner), Math.max(0, runner.getStartAfterDuration()), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(() -> {
+                try {
+                    context.wrap(client).run();
+                } finally {
+                    clientDone();
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Wait for all the clients started so far to be done (the executor shuts down when the last one is).
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return scheduler.awaitTermination(timeout, unit);
+    }
+
+    private synchronized void clientDone() {
+        if (activeClients.decrementAndGet() == 0) {
+            scheduler.shutdown();
+        }
+    }
+
+    private class Step implements Runnable {
+        private final WorkloadContext context;
+        private final AbstractRunner runner;
+
+        Step(WorkloadContext context, AbstractRunner runner) {
+            this.context = context;
+            this.runner = runner;
+        }
+
+        @Override
+        public void run() {
+            long wait;
+            WorkloadContext.bind(context);
+            try {
+                wait = runner.step();
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("Workload %s: Error caught in execution", context.getWorkloadName()), e);
+                wait = 0;
+            } finally {
+                WorkloadContext.unbind();
+            }
+
+            if (wait == 0) {
+                scheduler.execute(this);
+            } else if (wait > 0) {
+                scheduler.schedule(this, wait, TimeUnit.NANOSECONDS);
+            } else {
+                clientDone();
+            }
+        }
+    }
+}
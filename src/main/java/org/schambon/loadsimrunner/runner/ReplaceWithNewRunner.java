@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 import org.slf4j.Logger;
@@ -18,8 +19,11 @@ public class ReplaceWithNewRunner extends AbstractRunner {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ReplaceWithNewRunner.class);
 
+    private DocumentGenerator filter;
+
     public ReplaceWithNewRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
+        this.filter = compile((Document) params.get("filter"));
     }
 
     @Override
@@ -32,27 +36,22 @@ public class ReplaceWithNewRunner extends AbstractRunner {
     }
 
     private long singleReplace() {
-        var filter = (Document) params.get("filter");
-        filter = template.generate(filter);
+        var filter = template.generate(this.filter);
 
         var replace = template.generate();
         replace.remove("_id");
 
         var options = new ReplaceOptions().upsert(params.getBoolean("upsert", false));
         
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var replaceResults = mongoColl.replaceOne(filter, replace, options);
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, replaceResults.getModifiedCount() + (replaceResults.getUpsertedId() != null ? 1 : 0), duration);
-        return duration;
+        return reportOp(replaceResults.getModifiedCount() + (replaceResults.getUpsertedId() != null ? 1 : 0), start);
     }
     
     private long bulkReplace() {
         List<ReplaceOneModel<Document>> operations = new ArrayList<>(batch);
 
         var options = new ReplaceOptions().upsert(params.getBoolean("upsert", false));
-        var filter = (Document) params.get("filter");
 
         for (int i = 0; i < batch; i++) {
             var _f = template.generate(filter);
@@ -66,12 +65,9 @@ public class ReplaceWithNewRunner extends AbstractRunner {
             operations.add(model);
         }
 
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var bulkWriteResult = mongoColl.bulkWrite(operations, new BulkWriteOptions().ordered(params.getBoolean("ordered", false)));
-        var duration = System.currentTimeMillis() - start;
-
-        reporter.reportOp(name, bulkWriteResult.getModifiedCount() + bulkWriteResult.getUpserts().size(), duration);
-        return duration;
+        return reportOp(bulkWriteResult.getModifiedCount() + bulkWriteResult.getUpserts().size(), start);
     }
 
 }
@@ -11,9 +11,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.bson.Document;
+import org.schambon.loadsimrunner.Generator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.errors.InvalidConfigException;
 import org.schambon.loadsimrunner.report.Reporter;
@@ -33,6 +35,8 @@ public class TimeSeriesRunner extends AbstractRunner {
     protected String timeField;
     protected Document metaConfig;
     protected String metaField;
+    protected Generator timeValue; // may be null
+    protected Generator randomSeries; // may be null
 
     public TimeSeriesRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
         super(workloadConfiguration, reporter);
@@ -46,6 +50,13 @@ public class TimeSeriesRunner extends AbstractRunner {
         this.metaConfig = (Document) params.get("meta");
         this.metaField = metaConfig.getString("metaField");
 
+        if (timeConfig.containsKey("value")) {
+            this.timeValue = compileExpression(timeConfig.get("value"));
+        }
+        if (isDocKey("random", metaConfig.get("generate"))) {
+            this.randomSeries = compileExpression(((Document) metaConfig.get("generate")).get("random"));
+        }
+
         var workers = params.getInteger("workers", 1);
         exec = Executors.newFixedThreadPool(workers);
     }
@@ -55,8 +66,8 @@ public class TimeSeriesRunner extends AbstractRunner {
         LOGGER.debug("Timeseries runner {} waking up", name);
 
         Instant base = null;
-        if (timeConfig.containsKey("value")) {
-            var value = template.generateExpression(timeConfig.get("value"));
+        if (timeValue != null) {
+            var value = timeValue.generate();
             if (value instanceof Date) {
                 base = ((Date)value).toInstant();
             } else if (value instanceof Long) {
@@ -106,7 +117,7 @@ public class TimeSeriesRunner extends AbstractRunner {
         if (generateOption == null || "all".equals(generateOption)) {
             series = allSeries;
         } else if (isDocKey("random", generateOption)) {
-            var rnd = template.generateExpression(((Document)generateOption).get("random"));
+            var rnd = randomSeries.generate();
             if (!(rnd instanceof Integer)) {
                 throw new InvalidConfigException("generate: {random: xxx} should evaluate to an integer");
             }
@@ -131,9 +142,9 @@ public class TimeSeriesRunner extends AbstractRunner {
                     final var _docs = new ArrayList<>(docs); // make a final copy
                     final var _batch = batch;
                     tasks.add(() -> {
-                        var _s = System.currentTimeMillis();
+                        var _s = System.nanoTime();
                         mongoColl.insertMany(_docs, new InsertManyOptions().ordered(false));
-                        reporter.reportOp(name, _batch, System.currentTimeMillis() - _s);
+                        reportOp(_batch, _s);
                         return null;
                     });
                     docs.clear();
@@ -149,12 +160,12 @@ public class TimeSeriesRunner extends AbstractRunner {
 
 
         try {
-            var _s = System.currentTimeMillis();
+            var _s = System.nanoTime();
             List<Future<Void>> futures = exec.invokeAll(tasks);
             for (var f : futures) {
                 f.get();
             }
-            return System.currentTimeMillis() - _s;
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _s);
         } catch (InterruptedException|ExecutionException e) {
             LOGGER.error("Interrupted", e);
             throw new RuntimeException(e);
@@ -165,18 +176,18 @@ public class TimeSeriesRunner extends AbstractRunner {
 
     protected Callable<Void> addOneMeasure(Document doc) {
         return () -> {
-            var _s = System.currentTimeMillis();
+            var _s = System.nanoTime();
             mongoColl.insertOne(doc);
-            reporter.reportOp(name, 1, System.currentTimeMillis() - _s);
+            reportOp(1, _s);
             return null;
         };
     }
 
     protected Callable<Void> addManyMeasures(final ArrayList<Document> _docs) {
         return () -> {
-            var _s = System.currentTimeMillis();
+            var _s = System.nanoTime();
             mongoColl.insertMany(_docs, new InsertManyOptions().ordered(false));
-            reporter.reportOp(name, _docs.size(), System.currentTimeMillis() - _s);
+            reportOp(_docs.size(), _s);
             return null;
         };
     }
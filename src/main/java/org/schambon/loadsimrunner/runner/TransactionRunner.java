@@ -0,0 +1,260 @@
+package org.schambon.loadsimrunner.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.model.DeleteOptions;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.ListGenerator;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs an ordered list of steps (find, insert, updates, replaceOne, deletes, aggregate) on the workload's template
+ * collection, in a multi-document transaction with `ClientSession.withTransaction`. All steps see the same workload
+ * variables.
+ *
+ * The whole transaction is reported under the workload name, each step under `name.step`. Retries of the transaction
+ * body (TransientTransactionError) and aborted transactions are reported as events. Step latencies are those of the
+ * attempt that committed; an aborted transaction reports its latency under the workload name, with no records.
+ */
+public class TransactionRunner extends AbstractRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionRunner.class);
+
+    private final MongoClient client; // null in sink mode, steps then run without a transaction
+    private final TransactionOptions transactionOptions;
+    private final List<Step> steps = new ArrayList<>();
+
+    public TransactionRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+        this.client = workloadConfiguration.getMongoClient();
+
+        var options = TransactionOptions.builder().readPreference(ReadPreference.primary());
+        if (workloadConfiguration.getReadConcern() != null) {
+            options.readConcern(workloadConfiguration.getReadConcern());
+        }
+        if (workloadConfiguration.getWriteConcern() != null) {
+            options.writeConcern(workloadConfiguration.getWriteConcern());
+        }
+        if (params.containsKey("maxCommitTimeMS")) {
+            options.maxCommitTime(((Number) params.get("maxCommitTimeMS")).longValue(), TimeUnit.MILLISECONDS);
+        }
+        this.transactionOptions = options.build();
+
+        var _steps = params.getList("steps", Document.class);
+        if (_steps == null || _steps.isEmpty()) {
+            throw new InvalidConfigException(String.format("Transaction workload %s must have steps", name));
+        }
+        for (var i = 0; i < _steps.size(); i++) {
+            steps.add(new Step(i, _steps.get(i)));
+        }
+    }
+
+    @Override
+    protected long doRun() {
+        // per step count and duration of the current attempt, reported once it commits
+        var counts = new long[steps.size()];
+        var durations = new long[steps.size()];
+
+        if (client == null) {
+            var start = System.nanoTime();
+            for (var step : steps) {
+                step.run(null, counts, durations);
+            }
+            _reportSteps(counts, durations);
+            return reportOp(steps.size(), start);
+        }
+
+        var attempts = new AtomicInteger();
+        var start = System.nanoTime();
+        try (var session = client.startSession()) {
+            session.withTransaction(() -> {
+                if (attempts.getAndIncrement() > 0) {
+                    reporter.reportEvent(name, "retries");
+                }
+                for (var step : steps) {
+                    step.run(session, counts, durations);
+                }
+                return null;
+            }, transactionOptions);
+        } catch (MongoException e) {
+            reporter.reportEvent(name, "aborts");
+            LOGGER.debug(String.format("Workload %s: transaction aborted", name), e);
+            // the time spent until giving up is part of the workload's latency, with no records
+            return reportOp(0, start);
+        }
+        reporter.reportEvent(name, "commits");
+        _reportSteps(counts, durations);
+        return reportOp(steps.size(), start);
+    }
+
+    private void _reportSteps(long[] counts, long[] durations) {
+        for (var i = 0; i < steps.size(); i++) {
+            reporter.reportOpNanos(steps.get(i).stepName, counts[i], durations[i]);
+        }
+    }
+
+    private class Step {
+        private final int index;
+        private final String stepName;
+        private final String op;
+        private final Document config;
+        private DocumentGenerator filter = null;
+        private DocumentGenerator update = null;
+        private ListGenerator pipeline = null; // update pipeline or aggregation
+
+        Step(int index, Document config) {
+            this.index = index;
+            this.op = config.getString("op");
+            this.config = config;
+            this.stepName = String.format("%s.%s", name, config.getString("name") != null ? config.getString("name") : String.format("%d-%s", index, op));
+            if (op == null) {
+                throw new InvalidConfigException(String.format("Step %d of transaction workload %s has no op", index, name));
+            }
+
+            switch (op) {
+                case "insert":
+                    break;
+                case "find":
+                case "deleteOne":
+                case "deleteMany":
+                    filter = compile((Document) config.get("filter"));
+                    break;
+                case "updateOne":
+                case "updateMany":
+                    filter = compile((Document) config.get("filter"));
+                    var _update = config.get("update");
+                    if (_update instanceof Document) {
+                        update = compile((Document) _update);
+                    } else if (_update instanceof List) {
+                        pipeline = compile(config.getList("update", Document.class));
+                    } else {
+                        throw new InvalidConfigException(String.format("Step %s has no valid update", stepName));
+                    }
+                    break;
+                case "replaceOne":
+                    filter = compile((Document) config.get("filter"));
+                    update = compile((Document) config.get("replacement"));
+                    break;
+                case "aggregate":
+                    pipeline = compile(config.getList("pipeline", Document.class));
+                    break;
+                default:
+                    throw new InvalidConfigException(String.format("Step %s: op %s is not supported in transactions", stepName, op));
+            }
+        }
+
+        /**
+         * Run the step and set its count and duration (in ns) in `counts` and `durations`
+         *
+         * @param session null to run outside of a transaction
+         */
+        void run(ClientSession session, long[] counts, long[] durations) {
+            long count;
+            long start;
+            switch (op) {
+                case "insert": {
+                    var doc = template.generate();
+                    start = System.nanoTime();
+                    if (session == null) {
+                        mongoColl.insertOne(doc);
+                    } else {
+                        mongoColl.insertOne(session, doc);
+                    }
+                    count = 1;
+                    break;
+                }
+                case "find": {
+                    var f = template.generate(filter);
+                    start = System.nanoTime();
+                    var cursor = session == null ? mongoColl.find(f) : mongoColl.find(session, f);
+                    cursor = cursor.sort((Document) config.get("sort")).projection((Document) config.get("project"));
+                    if (config.containsKey("limit")) {
+                        cursor = cursor.limit(config.getInteger("limit"));
+                    }
+                    count = 0;
+                    var iterator = cursor.iterator();
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        count++;
+                    }
+                    break;
+                }
+                case "updateOne":
+                case "updateMany": {
+                    var f = template.generate(filter);
+                    var options = new UpdateOptions().upsert(config.getBoolean("upsert", false));
+                    var many = "updateMany".equals(op);
+                    start = System.nanoTime();
+                    UpdateResult result;
+                    if (update != null) {
+                        var u = template.generate(update);
+                        result = session == null
+                            ? (many ? mongoColl.updateMany(f, u, options) : mongoColl.updateOne(f, u, options))
+                            : (many ? mongoColl.updateMany(session, f, u, options) : mongoColl.updateOne(session, f, u, options));
+                    } else {
+                        var u = template.generate(pipeline);
+                        result = session == null
+                            ? (many ? mongoColl.updateMany(f, u, options) : mongoColl.updateOne(f, u, options))
+                            : (many ? mongoColl.updateMany(session, f, u, options) : mongoColl.updateOne(session, f, u, options));
+                    }
+                    count = result.getMatchedCount() + (result.getUpsertedId() != null ? 1 : 0);
+                    break;
+                }
+                case "replaceOne": {
+                    var f = template.generate(filter);
+                    var r = template.generate(update);
+                    var options = new ReplaceOptions().upsert(config.getBoolean("upsert", false));
+                    start = System.nanoTime();
+                    var result = session == null ? mongoColl.replaceOne(f, r, options) : mongoColl.replaceOne(session, f, r, options);
+                    count = result.getMatchedCount() + (result.getUpsertedId() != null ? 1 : 0);
+                    break;
+                }
+                case "deleteOne":
+                case "deleteMany": {
+                    var f = template.generate(filter);
+                    var options = new DeleteOptions();
+                    var many = "deleteMany".equals(op);
+                    start = System.nanoTime();
+                    var result = session == null
+                        ? (many ? mongoColl.deleteMany(f, options) : mongoColl.deleteOne(f, options))
+                        : (many ? mongoColl.deleteMany(session, f, options) : mongoColl.deleteOne(session, f, options));
+                    count = result.getDeletedCount();
+                    break;
+                }
+                case "aggregate": {
+                    var p = template.generate(pipeline);
+                    start = System.nanoTime();
+                    count = 0;
+                    var cursor = session == null ? mongoColl.aggregate(p) : mongoColl.aggregate(session, p);
+                    var iterator = cursor.iterator();
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        count++;
+                    }
+                    break;
+                }
+                default:
+                    return;
+            }
+            durations[index] = System.nanoTime() - start;
+            counts[index] = count;
+        }
+    }
+}
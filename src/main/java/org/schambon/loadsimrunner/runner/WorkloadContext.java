@@ -0,0 +1,76 @@
+package org.schambon.loadsimrunner.runner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Identity and per-client state of a simulated client (one "thread" of a workload).
+ *
+ * The context is bound to the thread currently running the client, which may be a platform {@link WorkloadThread},
+ * a virtual thread, or a pooled carrier thread that runs many clients in turn. Template expressions like
+ * `%threadNumber` or `%iteration` read it through {@link #current()}.
+ */
+public class WorkloadContext {
+
+    private static final ThreadLocal<WorkloadContext> CURRENT = new ThreadLocal<>();
+
+    private final String workloadName;
+    private final int threadNumber;
+    private final Map<String, Object> values = new HashMap<>();
+
+    public WorkloadContext(String workloadName, int threadNumber) {
+        this.workloadName = workloadName;
+        this.threadNumber = threadNumber;
+    }
+
+    /**
+     * @return the context of the client running on the current thread, or null if the current thread is not running a workload
+     */
+    public static WorkloadContext current() {
+        return CURRENT.get();
+    }
+
+    static void bind(WorkloadContext context) {
+        CURRENT.set(context);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return a runnable that runs the given task with this context bound to the running thread
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            bind(this);
+            try {
+                task.run();
+            } finally {
+                unbind();
+            }
+        };
+    }
+
+    public String getWorkloadName() {
+        return workloadName;
+    }
+
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+
+    public void setContextValue(String name, Object value) {
+        values.put(name, value);
+    }
+
+    public Object getContextValue(String name) {
+        return values.get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T computeContextValueIfAbsent(String name, Function<String, T> supplier) {
+        return (T) values.computeIfAbsent(name, supplier);
+    }
+}
@@ -1,35 +1,37 @@
 package org.schambon.loadsimrunner.runner;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class WorkloadThread extends Thread {
     
-    private String workloadName;
-    private int threadNumber;
-    private Map<String, Object> context = new HashMap<>();
+    private WorkloadContext context;
 
 
     public WorkloadThread(String workloadName, int threadNumber, Runnable executor) {
-        super(executor);
+        this(new WorkloadContext(workloadName, threadNumber), executor);
+    }
+
+    public WorkloadThread(WorkloadContext context, Runnable executor) {
+        super(context.wrap(executor), String.format("%s-%d", context.getWorkloadName(), context.getThreadNumber()));
 
-        this.threadNumber = threadNumber;
-        this.workloadName = workloadName;
+        this.context = context;
     }
 
     public String getWorkloadName() {
-        return workloadName;
+        return context.getWorkloadName();
     }
 
     public int getThreadNumber() {
-        return threadNumber;
+        return context.getThreadNumber();
     }
 
     public void setContextValue(String name, Object value) {
-        this.context.put(name, value);
+        context.setContextValue(name, value);
     }
 
     public Object getContextValue(String name) {
-        return this.context.get(name);
+        return context.getContextValue(name);
+    }
+
+    public WorkloadContext getContext() {
+        return context;
     }
 }
@@ -5,11 +5,15 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bson.Document;
+import org.schambon.loadsimrunner.Generator;
 import org.schambon.loadsimrunner.WorkloadManager;
 import org.schambon.loadsimrunner.report.Reporter;
 import org.schambon.loadsimrunner.runner.AbstractRunner;
@@ -22,9 +26,22 @@ public class JDBCRunner extends AbstractRunner {
 
     private Connection connection;
 
+    // statements and remembered values, compiled once
+    private List<CompiledStatement> statements = new ArrayList<>();
+    private Map<String, Generator> remember = new LinkedHashMap<>();
+
     public JDBCRunner(WorkloadManager config, Reporter reporter) {
         super(config, reporter);
 
+        for (var statement : params.getList("statements", Document.class)) {
+            statements.add(new CompiledStatement(statement));
+        }
+        var _remember = params.get("remember", Document.class);
+        if (_remember != null) {
+            for (var k : _remember.keySet()) {
+                remember.put(k, compileExpression(_remember.get(k)));
+            }
+        }
 
         var connectionString = params.getString("connectionString");
         try {
@@ -41,14 +58,13 @@ public class JDBCRunner extends AbstractRunner {
     protected long doRun() {
         try {
 
-            var start = System.currentTimeMillis();
+            var start = System.nanoTime();
             int count = 0;
-            var statements = params.getList("statements", Document.class);
             for (var statement: statements) {
-                if (statement.containsKey("sql")) {
-                    count = _runStatement(statement);
-                } else if (statement.containsKey("expr")) {
-                    var expr = template.generateExpression(statement.get("expr"));
+                if (statement.sql != null) {
+                    count = _runStatement(statement.sql, statement.params, statement.bind);
+                } else if (statement.expr != null) {
+                    var expr = statement.expr.generate();
                     if (expr instanceof Document) {
                         count = _runStatement((Document) expr);
                     } else if (expr instanceof List<?>) {
@@ -62,35 +78,41 @@ public class JDBCRunner extends AbstractRunner {
                 
             }
 
-            var remember = params.get("remember", Document.class);
-            if (remember != null) {
-                // force remember some values
-                for (var k: remember.keySet()) {
-                    var val = template.generateExpression(remember.get(k));
-                    if (val instanceof List<?>) {
-                        template.remember(k, (List<?>) val);
-                    } else {
-                        template.remember(k, Collections.singletonList(val));
-                    }
+            // force remember some values
+            for (var entry: remember.entrySet()) {
+                var val = entry.getValue().generate();
+                if (val instanceof List<?>) {
+                    template.remember(entry.getKey(), (List<?>) val);
+                } else {
+                    template.remember(entry.getKey(), Collections.singletonList(val));
                 }
             }
 
-            var duration = System.currentTimeMillis() - start;
-            reporter.reportOp(name, count, duration);
-            return duration;
+            return reportOp(count, start);
 
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // statement generated at runtime by an "expr"
     private int _runStatement(Document statement) throws SQLException {
+        List<Generator> statementParams = null;
+        if (statement.containsKey("params")) {
+            statementParams = new ArrayList<>();
+            for (var param : statement.getList("params", Object.class)) {
+                statementParams.add(template.compileExpression(param));
+            }
+        }
+        return _runStatement(statement.getString("sql"), statementParams, statement.getString("bind"));
+    }
+
+    private int _runStatement(String sql, List<Generator> statementParams, String bindName) throws SQLException {
         int count;
-        try (var ps = connection.prepareStatement(statement.getString("sql"))) {
-            if (statement.containsKey("params")) {
-                var statementParams = statement.getList("params", Object.class);
+        try (var ps = connection.prepareStatement(sql)) {
+            if (statementParams != null) {
                 for (var i = 1; i <= statementParams.size(); i++) {
-                    setValue(ps, i, template.generateExpression(statementParams.get(i-1)));
+                    setValue(ps, i, statementParams.get(i-1).generate());
 
                 }
             }
@@ -110,7 +132,6 @@ public class JDBCRunner extends AbstractRunner {
                     count++;
                 }
 
-                var bindName = statement.getString("bind");
                 if (bindName != null)
                     template.getLocalVariables().put(bindName, last); // local variables are thread-local so we *SHOULD* be fine
             } else {
@@ -120,6 +141,28 @@ public class JDBCRunner extends AbstractRunner {
         return count;
     }
 
+    private class CompiledStatement {
+        String sql;
+        List<Generator> params;
+        String bind;
+        Generator expr;
+
+        CompiledStatement(Document statement) {
+            if (statement.containsKey("sql")) {
+                sql = statement.getString("sql");
+                bind = statement.getString("bind");
+                if (statement.containsKey("params")) {
+                    params = new ArrayList<>();
+                    for (var param : statement.getList("params", Object.class)) {
+                        params.add(compileExpression(param));
+                    }
+                }
+            } else if (statement.containsKey("expr")) {
+                expr = compileExpression(statement.get("expr"));
+            }
+        }
+    }
+
     private void setValue(PreparedStatement ps, int i, Object value) throws SQLException {
         if (value instanceof Date) {
             ps.setTimestamp(i, new Timestamp(((Date)value).getTime()));
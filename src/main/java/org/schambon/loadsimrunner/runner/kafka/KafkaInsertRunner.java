@@ -34,7 +34,7 @@ public class KafkaInsertRunner extends AbstractRunner {
 
     @Override
     protected long doRun() {
-        var start = System.currentTimeMillis();
+        var start = System.nanoTime();
         var doc = template.generate();
         var rawId = doc.get("_id");
         if (rawId == null) rawId = new ObjectId();
@@ -42,10 +42,7 @@ public class KafkaInsertRunner extends AbstractRunner {
 
         producer.send(new ProducerRecord<String,String>(topic, id, doc.toJson()));
 
-        long duration = System.currentTimeMillis() - start;
-        reporter.reportOp(name, 1, duration);
-
-        return duration;
+        return reportOp(1, start);
     }
 
 }
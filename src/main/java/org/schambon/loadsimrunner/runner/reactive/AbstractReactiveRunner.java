@@ -0,0 +1,122 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.runner.AbstractRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for runners using the reactive streams driver (`"driver": "reactive"`).
+ *
+ * Instead of blocking until the server responds, each iteration issues an operation and returns. The number of
+ * operations outstanding at any time for the whole workload is bounded by `inFlight`: once that many operations are
+ * pending, issuing threads block until one completes (back-pressure). Latency is recorded when the operation
+ * completes, on a driver thread.
+ */
+public abstract class AbstractReactiveRunner extends AbstractRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractReactiveRunner.class);
+
+    protected MongoCollection<Document> reactiveColl;
+    private Semaphore inFlight;
+
+    public AbstractReactiveRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+
+        var template = workloadConfiguration.getTemplateConfig();
+        var collection = workloadConfiguration.getReactiveClient()
+            .getDatabase(template.getDatabaseName())
+            .getCollection(template.getCollectionName());
+
+        if (workloadConfiguration.getReadPreference() != null) {
+            collection = collection.withReadPreference(workloadConfiguration.getReadPreference());
+        }
+        if (workloadConfiguration.getReadConcern() != null) {
+            collection = collection.withReadConcern(workloadConfiguration.getReadConcern());
+        }
+        if (workloadConfiguration.getWriteConcern() != null) {
+            collection = collection.withWriteConcern(workloadConfiguration.getWriteConcern());
+        }
+        this.reactiveColl = collection;
+        this.inFlight = workloadConfiguration.getInFlightPermits();
+    }
+
+    @Override
+    protected long doRun() {
+        var start = System.nanoTime();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        try {
+            issue();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Generate and issue one operation, using {@link #subscribe(Publisher, long, ToLongFunction)} to time it.
+     * Must not block.
+     */
+    protected abstract void issue();
+
+    /**
+     * Subscribe to an operation's publisher. When it completes, the operation is reported with the sum of `count` over
+     * all emitted items as its record count.
+     *
+     * @param startNanos the time (System.nanoTime()) the operation was issued
+     */
+    protected <T> void subscribe(Publisher<T> publisher, long startNanos, ToLongFunction<? super T> count) {
+        publisher.subscribe(new OperationSubscriber<>(operationStart(startNanos), count));
+    }
+
+    private class OperationSubscriber<T> implements Subscriber<T> {
+        private final long start;
+        private final ToLongFunction<? super T> count;
+        private long records = 0;
+
+        OperationSubscriber(long start, ToLongFunction<? super T> count) {
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            records += count.applyAsLong(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            inFlight.release();
+            LOGGER.error(String.format("Workload %s: Error caught in execution", name), t);
+            reporter.reportEvent(name, Reporter.ERRORS);
+        }
+
+        @Override
+        public void onComplete() {
+            inFlight.release();
+            reporter.reportOpNanos(name, records, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.ListGenerator;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class ReactiveAggregationRunner extends AbstractReactiveRunner {
+
+    private ListGenerator pipeline;
+
+    public ReactiveAggregationRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+        this.pipeline = compile(params.getList("pipeline", Document.class));
+    }
+
+    @Override
+    protected void issue() {
+        var pipeline = template.generate(this.pipeline);
+        subscribe(reactiveColl.aggregate(pipeline), System.nanoTime(), d -> 1);
+    }
+}
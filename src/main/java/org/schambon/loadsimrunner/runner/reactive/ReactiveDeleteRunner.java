@@ -0,0 +1,28 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+
+/**
+ * deleteOne / deleteMany on the reactive driver
+ */
+public class ReactiveDeleteRunner extends AbstractReactiveRunner {
+
+    private final boolean many;
+    private DocumentGenerator filter;
+
+    public ReactiveDeleteRunner(WorkloadManager workloadConfiguration, Reporter reporter, boolean many) {
+        super(workloadConfiguration, reporter);
+        this.many = many;
+        this.filter = compile((Document) params.get("filter"));
+    }
+
+    @Override
+    protected void issue() {
+        var filter = template.generate(this.filter);
+        var publisher = many ? reactiveColl.deleteMany(filter) : reactiveColl.deleteOne(filter);
+        subscribe(publisher, System.nanoTime(), r -> r.getDeletedCount());
+    }
+}
@@ -0,0 +1,45 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReactiveFindRunner extends AbstractReactiveRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveFindRunner.class);
+
+    private DocumentGenerator filter;
+
+    public ReactiveFindRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+        this.filter = compile((Document) params.get("filter"));
+    }
+
+    @Override
+    protected void issue() {
+        Document filter = template.generate(this.filter);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} - filter: {}", name, filter);
+        }
+
+        var limit = params.getInteger("limit", -1);
+        var skip = params.getBoolean("skip", false);
+        var publisher = reactiveColl.find(filter)
+            .sort((Document) params.get("sort"))
+            .projection((Document) params.get("project"));
+        if (limit != -1) {
+            publisher = publisher.limit(limit);
+            if (skip) {
+                publisher = publisher.skip(ThreadLocalRandom.current().nextInt(10) * limit);
+            }
+        }
+
+        subscribe(publisher, System.nanoTime(), d -> 1);
+    }
+}
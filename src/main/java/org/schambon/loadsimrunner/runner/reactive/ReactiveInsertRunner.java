@@ -0,0 +1,65 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.schambon.loadsimrunner.RawDocumentWriter;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class ReactiveInsertRunner extends AbstractReactiveRunner {
+
+    private MongoCollection<RawBsonDocument> rawColl = null; // only with rawBson: true
+    private RawDocumentWriter rawWriter = null;
+
+    public ReactiveInsertRunner(WorkloadManager workloadConfiguration, Reporter reporter) {
+        super(workloadConfiguration, reporter);
+
+        if (params.getBoolean("rawBson", false)) {
+            rawColl = reactiveColl.withDocumentClass(RawBsonDocument.class);
+            rawWriter = new RawDocumentWriter(reactiveColl.getCodecRegistry());
+        }
+    }
+
+    @Override
+    protected void issue() {
+        if (rawColl != null) {
+            if (batch == 0) {
+                var doc = template.generateRaw(rawWriter);
+                subscribe(rawColl.insertOne(doc), System.nanoTime(), r -> 1);
+            } else {
+                var docs = generateBatch(() -> template.generateRaw(rawWriter));
+                var size = docs.size();
+                subscribe(rawColl.insertMany(docs, new InsertManyOptions().ordered(params.getBoolean("ordered", false))), System.nanoTime(), r -> size);
+            }
+        } else if (batch == 0) {
+            Document doc = template.generate();
+            subscribe(reactiveColl.insertOne(doc), System.nanoTime(), r -> 1);
+        } else {
+            var docs = generateBatch(template::generate);
+            var size = docs.size();
+            subscribe(reactiveColl.insertMany(docs, new InsertManyOptions().ordered(params.getBoolean("ordered", false))), System.nanoTime(), r -> size);
+        }
+    }
+
+    private <T> List<T> generateBatch(Supplier<T> generator) {
+        List<T> docs = new ArrayList<>(batch);
+        var refreshVariables = "operation".equals(variablesScope);
+        for (int i = 0; i < batch; i++) {
+            if (refreshVariables) {
+                template.setVariables(variablesGenerator);
+            }
+            docs.add(generator.get());
+            if (refreshVariables) {
+                template.clearVariables();
+            }
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,90 @@
+package org.schambon.loadsimrunner.runner.reactive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import org.schambon.loadsimrunner.DocumentGenerator;
+import org.schambon.loadsimrunner.ListGenerator;
+import org.schambon.loadsimrunner.WorkloadManager;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * updateOne / updateMany (and their bulk variants) on the reactive driver
+ */
+public class ReactiveUpdateRunner extends AbstractReactiveRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveUpdateRunner.class);
+
+    private final boolean many;
+    private DocumentGenerator filter;
+    private DocumentGenerator update;
+    private ListGenerator updatePipeline;
+
+    public ReactiveUpdateRunner(WorkloadManager workloadConfiguration, Reporter reporter, boolean many) {
+        super(workloadConfiguration, reporter);
+        this.many = many;
+
+        this.filter = compile((Document) params.get("filter"));
+        var _update = params.get("update");
+        if (_update instanceof Document) {
+            this.update = compile((Document) _update);
+        } else if (_update instanceof List) {
+            this.updatePipeline = compile(params.getList("update", Document.class));
+        }
+    }
+
+    @Override
+    protected void issue() {
+        var options = new UpdateOptions().upsert(params.getBoolean("upsert", false));
+        if (update == null && updatePipeline == null) {
+            LOGGER.error("Invalid update definition");
+            return;
+        }
+
+        if (batch == 0) {
+            var _f = template.generate(filter);
+            Publisher<UpdateResult> publisher;
+            if (update != null) {
+                var _u = template.generate(update);
+                publisher = many ? reactiveColl.updateMany(_f, _u, options) : reactiveColl.updateOne(_f, _u, options);
+            } else {
+                var _u = template.generate(updatePipeline);
+                publisher = many ? reactiveColl.updateMany(_f, _u, options) : reactiveColl.updateOne(_f, _u, options);
+            }
+            subscribe(publisher, System.nanoTime(), r -> r.getMatchedCount() + (r.getUpsertedId() != null ? 1 : 0));
+        } else {
+            List<WriteModel<Document>> operations = new ArrayList<>(batch);
+            var refreshVariables = "operation".equals(variablesScope);
+            for (int i = 0; i < batch; i++) {
+                if (refreshVariables) {
+                    template.setVariables(variablesGenerator);
+                }
+                var _f = template.generate(filter);
+                if (update != null) {
+                    Bson _u = template.generate(update);
+                    operations.add(many ? new UpdateManyModel<>(_f, _u, options) : new UpdateOneModel<>(_f, _u, options));
+                } else {
+                    List<Document> _u = template.generate(updatePipeline);
+                    operations.add(many ? new UpdateManyModel<>(_f, _u, options) : new UpdateOneModel<>(_f, _u, options));
+                }
+                if (refreshVariables) {
+                    template.clearVariables();
+                }
+            }
+            var size = operations.size();
+            subscribe(reactiveColl.bulkWrite(operations, new BulkWriteOptions().ordered(params.getBoolean("ordered", false))), System.nanoTime(), r -> size);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.schambon.loadsimrunner.sample;
 
 import static com.mongodb.client.model.Filters.eq;
-import static java.lang.System.currentTimeMillis;
 
 import com.mongodb.client.MongoClient;
 
@@ -21,7 +20,7 @@ public class SampleCustomRunner extends AbstractRunner {
 
     @Override
     protected long doRun() {
-        var start = currentTimeMillis();
+        var start = System.nanoTime();
         var count = 0;
         for (var doc : mongoColl.find(eq("first", "John"))) {
             count++;
@@ -39,8 +38,7 @@ public class SampleCustomRunner extends AbstractRunner {
                 return doc.getObjectId("_id");
             });
         }
-        reporter.reportOp(name, count, currentTimeMillis() - start);
-        return 0;
+        return reportOp(count, start);
     }
     
 
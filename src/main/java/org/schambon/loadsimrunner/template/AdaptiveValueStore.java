@@ -0,0 +1,98 @@
+package org.schambon.loadsimrunner.template;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Default store for remembered values: the type of the first value picks a {@link PackedValueStore} (ObjectId, Long,
+ * Integer, String). When a value comes that it cannot pack (another type, a longer string, documents...), the values
+ * held so far move to an {@link ObjectValueStore}, which takes all the values from then on. So a field of mixed types
+ * is kept as objects, with a single cap and in insertion order.
+ *
+ * Writes to the packed store hold the read side of a lock, and the move holds its write side, so that no value is
+ * written to the packed store after it was copied. Once the values moved, writes take no lock.
+ */
+public class AdaptiveValueStore implements ValueStore {
+
+    private final int capped;
+    private final boolean offHeap;
+
+    private final AtomicReference<ValueStore> store = new AtomicReference<>();
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    public AdaptiveValueStore(int capped, boolean offHeap) {
+        this.capped = capped;
+        this.offHeap = offHeap;
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        while (true) {
+            var current = store.get();
+            if (current == null) {
+                ValueStore created = PackedValueStore.forValue(value, capped, offHeap);
+                store.compareAndSet(null, created != null ? created : new ObjectValueStore(capped));
+            } else if (!(current instanceof PackedValueStore)) {
+                current.add(value);
+                return;
+            } else if (!((PackedValueStore) current).accepts(value)) {
+                _unpack((PackedValueStore) current);
+            } else {
+                var lock = switchLock.readLock();
+                lock.lock();
+                try {
+                    if (store.get() == current) {
+                        current.add(value);
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                // the values moved in the meantime: add this one to their new store
+            }
+        }
+    }
+
+    private void _unpack(PackedValueStore packed) {
+        var lock = switchLock.writeLock();
+        lock.lock();
+        try {
+            if (store.get() != packed) {
+                return;
+            }
+            var objects = new ObjectValueStore(capped);
+            objects.addAll(packed.values());
+            store.set(objects);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        var current = store.get();
+        return current == null ? 0 : current.size();
+    }
+
+    @Override
+    public Object sample() {
+        var current = store.get();
+        return current == null ? null : current.sample();
+    }
+
+    @Override
+    public Object get(long index) {
+        var current = store.get();
+        return current == null ? null : current.get(index);
+    }
+
+    @Override
+    public List<Object> values() {
+        var current = store.get();
+        return current == null ? List.of() : current.values();
+    }
+}
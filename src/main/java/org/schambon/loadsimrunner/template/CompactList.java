@@ -0,0 +1,153 @@
+package org.schambon.loadsimrunner.template;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Read-only lists that pack dictionary values instead of holding boxed objects: strings as one UTF-8 buffer plus
+ * offsets, ObjectIds as 12 bytes each, longs as 8 bytes each. Elements are decoded on access.
+ */
+public final class CompactList {
+
+    private CompactList() {}
+
+    /**
+     * @param offHeap allocate the packed values outside of the Java heap
+     * @return a packed copy of `values` if all its elements are Strings, ObjectIds or Longs, else `values` itself
+     */
+    public static List<? extends Object> compact(List<? extends Object> values, boolean offHeap) {
+        if (values.isEmpty()) {
+            return values;
+        }
+        if (values.stream().allMatch(v -> v instanceof String)) {
+            return _strings(values, offHeap);
+        } else if (values.stream().allMatch(v -> v instanceof ObjectId)) {
+            var buffer = _allocate(values.size() * 12L, offHeap);
+            if (buffer == null) {
+                return values;
+            }
+            for (var value : values) {
+                buffer.put(((ObjectId) value).toByteArray());
+            }
+            return new ObjectIds(buffer, values.size());
+        } else if (values.stream().allMatch(v -> v instanceof Long)) {
+            var buffer = _allocate(values.size() * 8L, offHeap);
+            if (buffer == null) {
+                return values;
+            }
+            for (var value : values) {
+                buffer.putLong((Long) value);
+            }
+            return new Longs(buffer, values.size());
+        } else {
+            return values;
+        }
+    }
+
+    private static List<? extends Object> _strings(List<? extends Object> values, boolean offHeap) {
+        var encoded = new byte[values.size()][];
+        long total = 0;
+        for (var i = 0; i < encoded.length; i++) {
+            encoded[i] = ((String) values.get(i)).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        var buffer = _allocate(total, offHeap);
+        if (buffer == null) {
+            return values;
+        }
+        var offsets = new int[encoded.length + 1];
+        for (var i = 0; i < encoded.length; i++) {
+            offsets[i] = buffer.position();
+            buffer.put(encoded[i]);
+        }
+        offsets[encoded.length] = buffer.position();
+        return new Strings(buffer, offsets);
+    }
+
+    private static ByteBuffer _allocate(long size, boolean offHeap) {
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        return offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+    }
+
+    private static byte[] _bytes(ByteBuffer buffer, int from, int length) {
+        var bytes = new byte[length];
+        for (var i = 0; i < length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return bytes;
+    }
+
+    private static class Strings extends AbstractList<String> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+
+        Strings(ByteBuffer buffer, int[] offsets) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public String get(int index) {
+            var from = offsets[index];
+            return new String(_bytes(buffer, from, offsets[index + 1] - from), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length - 1;
+        }
+    }
+
+    private static class ObjectIds extends AbstractList<ObjectId> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int size;
+
+        ObjectIds(ByteBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        @Override
+        public ObjectId get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return new ObjectId(_bytes(buffer, index * 12, 12));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static class Longs extends AbstractList<Long> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int size;
+
+        Longs(ByteBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        @Override
+        public Long get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return buffer.getLong(index * 8);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.schambon.loadsimrunner.template;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+
+/**
+ * How `#remembered` and dictionary lookups pick among the values held, to simulate skewed access patterns.
+ *
+ * All distributions draw in O(1), whatever the number of values: constants that depend on the number of values are
+ * computed in closed form and cached until that number changes significantly.
+ */
+public interface KeyDistribution {
+
+    /**
+     * @param size number of values to pick from, at least 1
+     * @return an index in [0, size), 0 being the oldest value
+     */
+    long next(long size);
+
+    /**
+     * Parse the `distribution` option of a remembered field or dictionary: either a type name, or a document with a
+     * `type` and its parameters.
+     *
+     * @return the distribution, or null for uniform access (the default)
+     */
+    static KeyDistribution parse(Object config) {
+        if (config == null) {
+            return null;
+        }
+        Document params;
+        if (config instanceof String) {
+            params = new Document("type", config);
+        } else if (config instanceof Document) {
+            params = (Document) config;
+        } else {
+            throw new InvalidConfigException("distribution must be a string or a document");
+        }
+
+        var type = params.getString("type");
+        switch (type == null ? "" : type) {
+            case "uniform":
+                return null;
+            case "zipfian":
+                return new Zipfian(_theta(params), true);
+            case "latest":
+                return new Latest(new Zipfian(_theta(params), false));
+            case "hotspot":
+                var hotFraction = ((Number) params.get("hotFraction", 0.2)).doubleValue();
+                var hotAccess = ((Number) params.get("hotAccess", 0.8)).doubleValue();
+                if (hotFraction <= 0 || hotFraction > 1 || hotAccess < 0 || hotAccess > 1) {
+                    throw new InvalidConfigException("hotspot distribution needs 0 < hotFraction <= 1 and 0 <= hotAccess <= 1");
+                }
+                return new Hotspot(hotFraction, hotAccess);
+            case "sequential":
+                return new Sequential();
+            default:
+                throw new InvalidConfigException(String.format("Unknown distribution type: %s", type));
+        }
+    }
+
+    private static double _theta(Document params) {
+        var theta = ((Number) params.get("theta", Zipfian.DEFAULT_THETA)).doubleValue();
+        if (theta <= 0 || theta >= 1) {
+            throw new InvalidConfigException("zipfian theta must be strictly between 0 and 1");
+        }
+        return theta;
+    }
+
+    /**
+     * Zipfian ranks (Gray et al., "Quickly generating billion-record synthetic databases"): rank 0 is the most
+     * popular. Ranks are scrambled over the values unless `scrambled` is false, so that popular values are not all
+     * the oldest ones.
+     */
+    class Zipfian implements KeyDistribution {
+        static final double DEFAULT_THETA = 0.99;
+
+        // zeta(n) is summed exactly up to HEAD terms, the rest is approximated with the Euler-Maclaurin formula
+        private static final int HEAD = 1024;
+
+        private final double theta;
+        private final double alpha;
+        private final double halfPowTheta;
+        private final double zeta2;
+        private final double[] headZeta = new double[HEAD + 1];
+        private final boolean scrambled;
+
+        private volatile State state = null;
+
+        Zipfian(double theta, boolean scrambled) {
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.halfPowTheta = Math.pow(0.5, theta);
+            this.scrambled = scrambled;
+            for (var i = 1; i <= HEAD; i++) {
+                headZeta[i] = headZeta[i - 1] + Math.pow(i, -theta);
+            }
+            this.zeta2 = headZeta[2];
+        }
+
+        @Override
+        public long next(long size) {
+            var rank = rank(size);
+            return scrambled ? Math.floorMod(_fnv(rank), size) : rank;
+        }
+
+        long rank(long size) {
+            // a growing store changes size all the time, only recompute once it drifted enough
+            var s = state;
+            if (s == null || size < s.n || size - s.n > (s.n >>> 10)) {
+                s = new State(size, _zeta(size));
+                state = s;
+            }
+
+            var n = s.n;
+            var u = ThreadLocalRandom.current().nextDouble();
+            var uz = u * s.zetan;
+            if (uz < 1) {
+                return 0;
+            } else if (uz < 1 + halfPowTheta) {
+                return Math.min(1, n - 1);
+            }
+            return Math.min(n - 1, (long) (n * Math.pow(s.eta * u - s.eta + 1, alpha)));
+        }
+
+        private double _zeta(long n) {
+            if (n <= HEAD) {
+                return headZeta[(int) n];
+            }
+            double k = HEAD;
+            double x = n;
+            var integral = (Math.pow(x, 1 - theta) - Math.pow(k, 1 - theta)) / (1 - theta);
+            var ends = (Math.pow(x, -theta) - Math.pow(k, -theta)) / 2;
+            var derivatives = (-theta * Math.pow(x, -theta - 1) + theta * Math.pow(k, -theta - 1)) / 12;
+            return headZeta[HEAD] + integral + ends + derivatives;
+        }
+
+        private static long _fnv(long value) {
+            var hash = 0xcbf29ce484222325L;
+            for (var i = 0; i < 8; i++) {
+                hash ^= value & 0xff;
+                hash *= 0x100000001b3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+
+        private class State {
+            final long n;
+            final double zetan;
+            final double eta;
+
+            State(long n, double zetan) {
+                this.n = n;
+                this.zetan = zetan;
+                this.eta = (1 - Math.pow(2d / n, 1 - theta)) / (1 - zeta2 / zetan);
+            }
+        }
+    }
+
+    /**
+     * The newest values are the most popular, with zipfian ranks counted from the newest
+     */
+    class Latest implements KeyDistribution {
+        private final Zipfian zipfian;
+
+        Latest(Zipfian zipfian) {
+            this.zipfian = zipfian;
+        }
+
+        @Override
+        public long next(long size) {
+            return size - 1 - zipfian.rank(size);
+        }
+    }
+
+    /**
+     * A fraction `hotAccess` of lookups go to the oldest `hotFraction` of the values, the rest to the others
+     */
+    class Hotspot implements KeyDistribution {
+        private final double hotFraction;
+        private final double hotAccess;
+
+        Hotspot(double hotFraction, double hotAccess) {
+            this.hotFraction = hotFraction;
+            this.hotAccess = hotAccess;
+        }
+
+        @Override
+        public long next(long size) {
+            var rnd = ThreadLocalRandom.current();
+            var hotSize = Math.max(1, (long) (size * hotFraction));
+            if (hotSize >= size || rnd.nextDouble() < hotAccess) {
+                return rnd.nextLong(hotSize);
+            }
+            return hotSize + rnd.nextLong(size - hotSize);
+        }
+    }
+
+    /**
+     * Values in order, oldest first, starting over once past the newest
+     */
+    class Sequential implements KeyDistribution {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public long next(long size) {
+            return Math.floorMod(counter.getAndIncrement(), size);
+        }
+    }
+}
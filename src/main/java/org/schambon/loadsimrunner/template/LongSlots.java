@@ -0,0 +1,110 @@
+package org.schambon.loadsimrunner.template;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size array of longs, either a long[] or a direct (off-heap) buffer, with the memory ordering operations
+ * {@link PackedValueStore} needs.
+ */
+abstract class LongSlots {
+
+    static LongSlots allocate(int length, boolean offHeap) {
+        return offHeap ? new Direct(length) : new Heap(length);
+    }
+
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    abstract long getAcquire(int index);
+
+    abstract long getOpaque(int index);
+
+    abstract void setRelease(int index, long value);
+
+    abstract boolean compareAndSet(int index, long expected, long value);
+
+    private static class Heap extends LongSlots {
+        private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final long[] longs;
+
+        Heap(int length) {
+            this.longs = new long[length];
+        }
+
+        @Override
+        long get(int index) {
+            return longs[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            longs[index] = value;
+        }
+
+        @Override
+        long getAcquire(int index) {
+            return (long) LONGS.getAcquire(longs, index);
+        }
+
+        @Override
+        long getOpaque(int index) {
+            return (long) LONGS.getOpaque(longs, index);
+        }
+
+        @Override
+        void setRelease(int index, long value) {
+            LONGS.setRelease(longs, index, value);
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long value) {
+            return LONGS.compareAndSet(longs, index, expected, value);
+        }
+    }
+
+    private static class Direct extends LongSlots {
+        // direct buffers are aligned, so 8-byte aligned offsets support atomic access modes
+        private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        private final ByteBuffer buffer;
+
+        Direct(int length) {
+            this.buffer = ByteBuffer.allocateDirect(length * Long.BYTES);
+        }
+
+        @Override
+        long get(int index) {
+            return (long) LONGS.get(buffer, index * Long.BYTES);
+        }
+
+        @Override
+        void set(int index, long value) {
+            LONGS.set(buffer, index * Long.BYTES, value);
+        }
+
+        @Override
+        long getAcquire(int index) {
+            return (long) LONGS.getAcquire(buffer, index * Long.BYTES);
+        }
+
+        @Override
+        long getOpaque(int index) {
+            return (long) LONGS.getOpaque(buffer, index * Long.BYTES);
+        }
+
+        @Override
+        void setRelease(int index, long value) {
+            LONGS.setRelease(buffer, index * Long.BYTES, value);
+        }
+
+        @Override
+        boolean compareAndSet(int index, long expected, long value) {
+            return LONGS.compareAndSet(buffer, index * Long.BYTES, expected, value);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.schambon.loadsimrunner.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free store for remembered values of any type, held as references.
+ *
+ * Values are appended to a ring: once `capacity` values have been added, each new value replaces the oldest one. The
+ * ring is split in fixed-size chunks that are allocated as they are first written to, so an uncapped store only takes
+ * the memory it needs and can hold up to about two billion values. Appending, evicting and sampling are all O(1) and
+ * never block.
+ */
+public class ObjectValueStore implements ValueStore {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long MAX_CAPACITY = (long) Integer.MAX_VALUE - CHUNK_SIZE;
+
+    private final long capacity;
+    private final AtomicReferenceArray<AtomicReferenceArray<Object>> chunks;
+    private final AtomicLong appended = new AtomicLong();
+
+    /**
+     * @param capped maximum number of values to keep, -1 for no limit
+     */
+    public ObjectValueStore(int capped) {
+        this.capacity = capped > 0 ? capped : MAX_CAPACITY;
+        this.chunks = new AtomicReferenceArray<>((int) ((capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS));
+    }
+
+    @Override
+    public void add(Object value) {
+        var position = appended.getAndIncrement() % capacity;
+        _chunk((int) (position >>> CHUNK_BITS)).set((int) (position & CHUNK_MASK), value);
+    }
+
+    @Override
+    public long size() {
+        return Math.min(appended.get(), capacity);
+    }
+
+    @Override
+    public Object sample() {
+        var size = size();
+        if (size == 0) {
+            return null;
+        }
+        var rnd = ThreadLocalRandom.current();
+        for (var i = 0; i < SAMPLE_ATTEMPTS; i++) {
+            var position = rnd.nextLong(size);
+            var chunk = chunks.get((int) (position >>> CHUNK_BITS));
+            if (chunk != null) {
+                var value = chunk.get((int) (position & CHUNK_MASK));
+                if (value != null) {
+                    return value;
+                }
+            }
+            // else the slot was claimed by a writer that has not stored its value yet, try another one
+        }
+        return null;
+    }
+
+    @Override
+    public Object get(long index) {
+        var end = appended.get();
+        var size = Math.min(end, capacity);
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        var position = (end - size + index) % capacity;
+        var chunk = chunks.get((int) (position >>> CHUNK_BITS));
+        return chunk == null ? null : chunk.get((int) (position & CHUNK_MASK));
+    }
+
+    @Override
+    public List<Object> values() {
+        var end = appended.get();
+        var size = Math.min(end, capacity);
+        var result = new ArrayList<Object>((int) size);
+        for (var i = end - size; i < end; i++) {
+            var position = i % capacity;
+            var chunk = chunks.get((int) (position >>> CHUNK_BITS));
+            var value = chunk == null ? null : chunk.get((int) (position & CHUNK_MASK));
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private AtomicReferenceArray<Object> _chunk(int index) {
+        var chunk = chunks.get(index);
+        if (chunk == null) {
+            var length = (int) Math.min(CHUNK_SIZE, capacity - ((long) index << CHUNK_BITS));
+            chunk = new AtomicReferenceArray<>(length);
+            if (!chunks.compareAndSet(index, null, chunk)) {
+                chunk = chunks.get(index);
+            }
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,342 @@
+package org.schambon.loadsimrunner.template;
+
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Ring of remembered values of a single type, packed in arrays of longs instead of boxed objects.
+ *
+ * Each slot is a header long followed by the codec's payload longs: an ObjectId takes 16 bytes, a Long 16 bytes, an
+ * Integer 8 bytes, and a String its UTF-8 bytes rounded up to 8 plus 8. The header holds a stamp derived from the
+ * append sequence, plus 32 bits of payload. Writers claim a slot by swapping its header with {@link #WRITING} and
+ * publish the value by writing the new header last; readers check that the header did not change while they read the
+ * payload (a seqlock), so they never see a torn value.
+ */
+public class PackedValueStore implements ValueStore {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long MAX_CAPACITY = (long) Integer.MAX_VALUE - CHUNK_SIZE;
+
+    private static final long EMPTY = 0;
+    private static final long WRITING = -1;
+
+    private final Codec codec;
+    private final int slotLongs;
+    private final long capacity;
+    private final boolean offHeap;
+    private final AtomicReferenceArray<LongSlots> chunks;
+    private final AtomicLong appended = new AtomicLong();
+    private final LongAdder lapped = new LongAdder();
+
+    private PackedValueStore(Codec codec, int capped, boolean offHeap) {
+        this.codec = codec;
+        this.slotLongs = 1 + codec.payloadLongs();
+        this.capacity = capped > 0 ? capped : MAX_CAPACITY;
+        this.offHeap = offHeap;
+        this.chunks = new AtomicReferenceArray<>((int) ((capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS));
+    }
+
+    /**
+     * @return a store specialized for the type of `sample`, or null if that type cannot be packed
+     */
+    public static PackedValueStore forValue(Object sample, int capped, boolean offHeap) {
+        if (sample instanceof ObjectId) {
+            return new PackedValueStore(new ObjectIdCodec(), capped, offHeap);
+        } else if (sample instanceof Long) {
+            return new PackedValueStore(new LongCodec(), capped, offHeap);
+        } else if (sample instanceof Integer) {
+            return new PackedValueStore(new IntegerCodec(), capped, offHeap);
+        } else if (sample instanceof String) {
+            // leave room for longer values than the first one, strings that still don't fit are rejected
+            var length = ((String) sample).getBytes(StandardCharsets.UTF_8).length;
+            var slotBytes = Math.min(256, Math.max(16, Integer.highestOneBit(Math.max(1, length)) << 2));
+            return new PackedValueStore(new StringCodec(slotBytes), capped, offHeap);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the value can be packed in this store; values that can't must be added elsewhere
+     */
+    public boolean accepts(Object value) {
+        return codec.accepts(value);
+    }
+
+    @Override
+    public void add(Object value) {
+        long sequence;
+        LongSlots slots;
+        int base;
+        while (true) {
+            sequence = appended.getAndIncrement();
+            var position = sequence % capacity;
+            slots = _chunk((int) (position >>> CHUNK_BITS));
+            base = (int) (position & CHUNK_MASK) * slotLongs;
+            if (_claim(slots, base)) {
+                break;
+            }
+            // another writer lapped the ring and is writing this very slot: take the next one
+            lapped.increment();
+        }
+
+        var payload = codec.write(value, slots, base + 1);
+        var stamp = (sequence & 0x3fffffffL) + 1; // positive, so a header is never EMPTY or WRITING
+        slots.setRelease(base, (stamp << 32) | (payload & 0xffffffffL));
+    }
+
+    // swap the header of a slot with WRITING, unless another writer holds it
+    private static boolean _claim(LongSlots slots, int base) {
+        while (true) {
+            var header = slots.getAcquire(base);
+            if (header == WRITING) {
+                return false;
+            }
+            if (slots.compareAndSet(base, header, WRITING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return how many times a writer found its slot taken by a writer that lapped the ring, and moved to the next one
+     */
+    public long getLapped() {
+        return lapped.sum();
+    }
+
+    @Override
+    public long size() {
+        return Math.min(appended.get(), capacity);
+    }
+
+    @Override
+    public Object sample() {
+        var size = size();
+        if (size == 0) {
+            return null;
+        }
+        var rnd = ThreadLocalRandom.current();
+        for (var i = 0; i < SAMPLE_ATTEMPTS; i++) {
+            var value = _read(rnd.nextLong(size));
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object get(long index) {
+        var end = appended.get();
+        var size = Math.min(end, capacity);
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return _read((end - size + index) % capacity);
+    }
+
+    @Override
+    public List<Object> values() {
+        var end = appended.get();
+        var size = Math.min(end, capacity);
+        var result = new ArrayList<Object>((int) size);
+        for (var i = end - size; i < end; i++) {
+            var value = _read(i % capacity);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private Object _read(long position) {
+        var slots = chunks.get((int) (position >>> CHUNK_BITS));
+        if (slots == null) {
+            return null;
+        }
+        var base = (int) (position & CHUNK_MASK) * slotLongs;
+        var header = slots.getAcquire(base);
+        if (header == EMPTY || header == WRITING) {
+            return null;
+        }
+        var value = codec.read(slots, base + 1, (int) header);
+        VarHandle.loadLoadFence();
+        return slots.getOpaque(base) == header ? value : null;
+    }
+
+    private LongSlots _chunk(int index) {
+        var chunk = chunks.get(index);
+        if (chunk == null) {
+            var length = (int) Math.min(CHUNK_SIZE, capacity - ((long) index << CHUNK_BITS));
+            chunk = LongSlots.allocate(length * slotLongs, offHeap);
+            if (!chunks.compareAndSet(index, null, chunk)) {
+                chunk = chunks.get(index);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Encodes values into `payloadLongs()` longs, plus 32 bits stored in the slot header
+     */
+    private interface Codec {
+        int payloadLongs();
+
+        boolean accepts(Object value);
+
+        /**
+         * @return 32 bits of payload to store in the header
+         */
+        int write(Object value, LongSlots slots, int offset);
+
+        /**
+         * Must not fail on a torn payload, which is discarded
+         */
+        Object read(LongSlots slots, int offset, int headerPayload);
+    }
+
+    private static class ObjectIdCodec implements Codec {
+        @Override
+        public int payloadLongs() {
+            return 1;
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return value instanceof ObjectId;
+        }
+
+        @Override
+        public int write(Object value, LongSlots slots, int offset) {
+            var bytes = ((ObjectId) value).toByteArray();
+            slots.set(offset, _getLong(bytes, 0));
+            return (int) _getBytes(bytes, 8, 4);
+        }
+
+        @Override
+        public Object read(LongSlots slots, int offset, int headerPayload) {
+            var bytes = new byte[12];
+            _putLong(bytes, 0, 8, slots.get(offset));
+            _putLong(bytes, 8, 4, headerPayload);
+            return new ObjectId(bytes);
+        }
+    }
+
+    private static class LongCodec implements Codec {
+        @Override
+        public int payloadLongs() {
+            return 1;
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        public int write(Object value, LongSlots slots, int offset) {
+            slots.set(offset, (Long) value);
+            return 0;
+        }
+
+        @Override
+        public Object read(LongSlots slots, int offset, int headerPayload) {
+            return slots.get(offset);
+        }
+    }
+
+    private static class IntegerCodec implements Codec {
+        @Override
+        public int payloadLongs() {
+            return 0;
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        public int write(Object value, LongSlots slots, int offset) {
+            return (Integer) value;
+        }
+
+        @Override
+        public Object read(LongSlots slots, int offset, int headerPayload) {
+            return headerPayload;
+        }
+    }
+
+    private static class StringCodec implements Codec {
+        private final int maxBytes;
+
+        StringCodec(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int payloadLongs() {
+            return maxBytes / Long.BYTES;
+        }
+
+        @Override
+        public boolean accepts(Object value) {
+            // UTF-8 takes at most 3 bytes per char (surrogate pairs take 4 for 2 chars)
+            if (!(value instanceof String)) {
+                return false;
+            }
+            var string = (String) value;
+            return string.length() * 3 <= maxBytes || string.getBytes(StandardCharsets.UTF_8).length <= maxBytes;
+        }
+
+        @Override
+        public int write(Object value, LongSlots slots, int offset) {
+            var bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            for (var i = 0; i < bytes.length; i += Long.BYTES) {
+                slots.set(offset + i / Long.BYTES, _getBytes(bytes, i, Math.min(Long.BYTES, bytes.length - i)));
+            }
+            return bytes.length;
+        }
+
+        @Override
+        public Object read(LongSlots slots, int offset, int headerPayload) {
+            var length = Math.min(Math.max(headerPayload, 0), maxBytes);
+            var bytes = new byte[length];
+            for (var i = 0; i < length; i += Long.BYTES) {
+                _putLong(bytes, i, Math.min(Long.BYTES, length - i), slots.get(offset + i / Long.BYTES));
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long _getLong(byte[] bytes, int from) {
+        return _getBytes(bytes, from, Long.BYTES);
+    }
+
+    // big endian, `count` bytes right-aligned in the result
+    private static long _getBytes(byte[] bytes, int from, int count) {
+        long result = 0;
+        for (var i = 0; i < count; i++) {
+            result = (result << 8) | (bytes[from + i] & 0xff);
+        }
+        return result;
+    }
+
+    private static void _putLong(byte[] bytes, int from, int count, long value) {
+        for (var i = count - 1; i >= 0; i--) {
+            bytes[from + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.schambon.loadsimrunner.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a collection with several cursors in parallel (the template's `preload.parallelism` option), to preload
+ * remembered values and collection dictionaries.
+ *
+ * The collection is split in `_id` ranges, using a `$sample` of `_id`s to find boundaries that give each range about
+ * the same number of documents. This assumes all `_id`s are of the same BSON type, since range queries only match
+ * values of the type of their bound.
+ */
+public class Preloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Preloader.class);
+
+    private static final int SAMPLES_PER_PARTITION = 32;
+    private static final int BATCH_SIZE = 10000;
+
+    // same UUID representation as MongoClientHelper's clients
+    private static final Codec<Document> DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry())
+        .withUuidRepresentation(UuidRepresentation.STANDARD);
+
+    private final MongoCollection<Document> collection;
+    private final int parallelism;
+
+    public Preloader(MongoCollection<Document> collection, int parallelism) {
+        this.collection = collection;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return filters on `_id` ranges that together cover the whole collection
+     */
+    public List<Document> partitions() {
+        if (parallelism <= 1) {
+            return List.of(new Document());
+        }
+
+        var ids = new ArrayList<Object>();
+        var pipeline = List.of(
+            new Document("$sample", new Document("size", parallelism * SAMPLES_PER_PARTITION)),
+            new Document("$project", new Document("_id", 1)),
+            new Document("$sort", new Document("_id", 1)));
+        for (var doc : collection.aggregate(pipeline)) {
+            ids.add(doc.get("_id"));
+        }
+
+        var bounds = new ArrayList<Object>();
+        for (var i = 1; i < parallelism; i++) {
+            var idx = i * ids.size() / parallelism;
+            if (idx < ids.size() && (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(ids.get(idx)))) {
+                bounds.add(ids.get(idx));
+            }
+        }
+
+        var partitions = new ArrayList<Document>();
+        if (bounds.isEmpty()) {
+            partitions.add(new Document());
+            return partitions;
+        }
+        partitions.add(new Document("_id", new Document("$lt", bounds.get(0))));
+        for (var i = 1; i < bounds.size(); i++) {
+            partitions.add(new Document("_id", new Document("$gte", bounds.get(i - 1)).append("$lt", bounds.get(i))));
+        }
+        partitions.add(new Document("_id", new Document("$gte", bounds.get(bounds.size() - 1))));
+        return partitions;
+    }
+
+    /**
+     * Read up to `limit` documents matching `filter` (all of them if `limit` is 0), from all partitions, and hand them
+     * to `consumer` as they arrive. The consumer is called concurrently from several threads. Blocks until all
+     * partitions are read or `limit` documents were handed over.
+     *
+     * Matches need not be spread evenly: each cursor may read up to `limit` documents, and all of them stop once
+     * `limit` documents were handed over in total.
+     *
+     * Documents are handed over as read off the wire: the consumer decodes only what it needs (see
+     * {@link #decode(BsonValue)}).
+     *
+     * @param projection may be null
+     * @return the number of documents read
+     */
+    public long scan(Document filter, Document projection, int limit, Consumer<RawBsonDocument> consumer) {
+        var partitions = partitions();
+        var budget = new AtomicLong(limit > 0 ? limit : Long.MAX_VALUE);
+        var raw = collection.withDocumentClass(RawBsonDocument.class);
+
+        var threadNumber = new AtomicInteger();
+        var pool = Executors.newFixedThreadPool(partitions.size(), r -> {
+            var thread = new Thread(r, String.format("preload-%s-%d", collection.getNamespace().getCollectionName(), threadNumber.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            var futures = new ArrayList<Future<Long>>();
+            for (var partition : partitions) {
+                var partitionFilter = filter.isEmpty() ? partition : new Document("$and", List.of(filter, partition));
+                futures.add(pool.submit(() -> {
+                    long count = 0;
+                    var cursor = raw.find(partitionFilter).limit(limit).batchSize(BATCH_SIZE);
+                    if (projection != null) {
+                        cursor = cursor.projection(projection);
+                    }
+                    try (var documents = cursor.iterator()) {
+                        while (budget.get() > 0 && documents.hasNext()) {
+                            var doc = documents.next();
+                            if (budget.getAndDecrement() <= 0) {
+                                break; // the other cursors read the rest
+                            }
+                            consumer.accept(doc);
+                            count++;
+                        }
+                    }
+                    LOGGER.debug("Preloaded {} documents from partition {}", count, partition);
+                    return count;
+                }));
+            }
+
+            long total = 0;
+            for (var future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preloading", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the value as the driver would decode it in a {@link Document}: ObjectId, Long, String, Document...
+     */
+    public static Object decode(BsonValue value) {
+        switch (value.getBsonType()) {
+            case OBJECT_ID:
+                return value.asObjectId().getValue();
+            case INT64:
+                return value.asInt64().getValue();
+            case INT32:
+                return value.asInt32().getValue();
+            case STRING:
+                return value.asString().getValue();
+            case DOUBLE:
+                return value.asDouble().getValue();
+            case BOOLEAN:
+                return value.asBoolean().getValue();
+            case NULL:
+                return null;
+            default:
+                if (value instanceof RawBsonDocument) {
+                    return ((RawBsonDocument) value).decode(DOCUMENT_CODEC);
+                }
+                var wrapped = DOCUMENT_CODEC.decode(new BsonDocumentReader(new BsonDocument("v", value)), DecoderContext.builder().build());
+                return wrapped.get("v");
+        }
+    }
+}
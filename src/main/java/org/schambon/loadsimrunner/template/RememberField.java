@@ -10,6 +10,7 @@ public class RememberField {
     public String name;
     public int number;
     public int capped = -1;
+    public KeyDistribution distribution = null; // null for uniform
 
     public RememberField(String field, List<String> compound, String name, boolean preload, int number, int capped) {
         this.field = field;
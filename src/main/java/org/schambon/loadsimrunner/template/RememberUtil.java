@@ -8,7 +8,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.schambon.loadsimrunner.TemplateManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,10 +25,12 @@ public class RememberUtil {
         return input.stream().map(i -> {
             if (i instanceof Document) {
                 var doc = (Document) i;
-                return new RememberField(doc.getString("field"), doc.getList("compound", String.class),
+                var rfield = new RememberField(doc.getString("field"), doc.getList("compound", String.class),
                         doc.getString("name"), doc.getBoolean("preload", true),
                         doc.getInteger("number", TemplateManager.DEFAULT_NUMBER_TO_PRELOAD),
                         doc.getInteger("capped", -1));
+                rfield.distribution = KeyDistribution.parse(doc.get("distribution"));
+                return rfield;
             } else {
                 return new RememberField((String) i, null, null, true, TemplateManager.DEFAULT_NUMBER_TO_PRELOAD, -1);
             }
@@ -127,6 +131,38 @@ public class RememberUtil {
     }
     
 
+    /**
+     * Same as {@link #extractRememberedValues(Document, RememberField)}, on a raw document: for a simple field only the
+     * values of the field are decoded, the rest of the document is skipped.
+     */
+    public static List<? extends Object> extractRememberedValues(RawBsonDocument input, RememberField specification) {
+        if (!specification.isSimple()) {
+            return extractRememberedValues((Document) Preloader.decode(input), specification);
+        }
+        var values = new ArrayList<Object>();
+        _descend(input, specification.field.split("\\."), 0, values);
+        return values;
+    }
+
+    // as TemplateUtil.subdescend then recurseUnwind: arrays are unwound, a value that is not a document ends the path
+    private static void _descend(BsonValue value, String[] path, int depth, List<Object> values) {
+        if (value == null) {
+            return;
+        }
+        if (value.isArray()) {
+            for (var element : value.asArray()) {
+                _descend(element, path, depth, values);
+            }
+        } else if (depth < path.length && value.isDocument()) {
+            _descend(value.asDocument().get(path[depth]), path, depth + 1, values);
+        } else {
+            var decoded = Preloader.decode(value);
+            if (decoded != null) {
+                values.add(decoded);
+            }
+        }
+    }
+
     public static List<Object> preloadValues(RememberField rfield, MongoCollection<Document> mongoColl) {
 
         if (!rfield.isSimple()) {
@@ -162,11 +198,7 @@ public class RememberUtil {
     private static List<Object> _slowPreloadValues(RememberField rfield, MongoCollection<Document> mongoColl) {
 
         var pipeline = new ArrayList<Document>();
-        var projection = new Document("_id", 0);
-        for (var key: rfield.compound) {
-            projection.append(key, 1);
-        }
-        pipeline.add(new Document("$project", projection));
+        pipeline.add(new Document("$project", preloadProjection(rfield)));
         pipeline.add(new Document("$limit", rfield.number));
 
         if (LOGGER.isDebugEnabled()) LOGGER.debug("Slow preload pipeline is {}}", pipeline);
@@ -177,4 +209,30 @@ public class RememberUtil {
         }
         return values;
     }
+
+    /**
+     * @return a projection on the keys of the remembered field
+     */
+    public static Document preloadProjection(RememberField rfield) {
+        var keys = rfield.isSimple() ? List.of(rfield.field) : rfield.compound;
+        var projection = new Document();
+        if (keys.stream().noneMatch(k -> k.equals("_id") || k.startsWith("_id."))) {
+            projection.append("_id", 0);
+        }
+        for (var key: keys) {
+            projection.append(key, 1);
+        }
+        return projection;
+    }
+
+    /**
+     * Preload values with parallel cursors over `_id` ranges, adding them to `values` as batches arrive. Unlike
+     * {@link #preloadValues}, this reads `number` documents rather than `number` distinct values.
+     *
+     * @return the number of documents read
+     */
+    public static long streamPreloadValues(RememberField rfield, Preloader preloader, ValueStore values) {
+        return preloader.scan(new Document(), preloadProjection(rfield), rfield.number,
+            doc -> values.addAll(extractRememberedValues(doc, rfield)));
+    }
 }
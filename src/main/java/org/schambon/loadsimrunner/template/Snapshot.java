@@ -0,0 +1,256 @@
+package org.schambon.loadsimrunner.template;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.mongodb.MongoClientSettings;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.ByteBufNIO;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.ByteBufferBsonInput;
+
+/**
+ * Binary file holding the remembered values and collection dictionaries of a template, so that a restart does not
+ * need to query them again.
+ *
+ * Layout (little endian, like BSON): the magic bytes `SIMSNAP1`, then one section per remembered field or dictionary:
+ * a kind byte, the UTF-8 name prefixed with its length, the value count, the byte length of the values, and the values
+ * themselves as consecutive `{v: value}` BSON documents. Reading maps each section and decodes values straight from the
+ * mapped file.
+ */
+public class Snapshot {
+
+    public static final byte REMEMBERED = 0;
+    public static final byte DICTIONARY = 1;
+
+    private static final byte[] MAGIC = "SIMSNAP1".getBytes(StandardCharsets.US_ASCII);
+
+    // same UUID representation as MongoClientHelper's clients
+    private static final Codec<Document> DOCUMENT_CODEC = new DocumentCodec(
+        CodecRegistries.withUuidRepresentation(MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD))
+        .withUuidRepresentation(UuidRepresentation.STANDARD);
+
+    private final Map<String, Section> remembered = new TreeMap<>();
+    private final Map<String, Section> dictionaries = new TreeMap<>();
+
+    private Snapshot() {}
+
+    /**
+     * @return the snapshot in `file`, or null if there is none
+     */
+    public static Snapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        var snapshot = new Snapshot();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var magic = _readFully(channel, 0, MAGIC.length);
+            if (!ByteBuffer.wrap(MAGIC).equals(magic)) {
+                throw new IOException(String.format("%s is not a SimRunner snapshot", file));
+            }
+
+            var size = channel.size();
+            long position = MAGIC.length;
+            while (position < size) {
+                var header = _readFully(channel, position, 5);
+                var kind = header.get();
+                var nameLength = header.getInt();
+                position += 5;
+                if ((kind != REMEMBERED && kind != DICTIONARY) || nameLength < 0 || nameLength > size - position) {
+                    throw _corrupt(file, position);
+                }
+
+                var name = StandardCharsets.UTF_8.decode(_readFully(channel, position, nameLength)).toString();
+                position += nameLength;
+
+                var counts = _readFully(channel, position, 12);
+                var count = counts.getInt();
+                var length = counts.getLong();
+                position += 12;
+                if (count < 0 || length < 0 || length > size - position) {
+                    throw _corrupt(file, position);
+                }
+
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Section %s of %s is too large to map", name, file));
+                }
+                // the mapping stays valid after the channel is closed
+                var section = new Section(channel.map(FileChannel.MapMode.READ_ONLY, position, length), count);
+                if (!section.isFramed()) {
+                    throw _corrupt(file, position);
+                }
+                (kind == DICTIONARY ? snapshot.dictionaries : snapshot.remembered).put(name, section);
+                position += length;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write the snapshot to a temporary file, then atomically move it to `file`.
+     */
+    public static void write(Path file, Map<String, ? extends Collection<? extends Object>> remembered,
+            Map<String, ? extends Collection<? extends Object>> dictionaries) throws IOException {
+        var parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        var tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                _writeFully(channel, ByteBuffer.wrap(MAGIC));
+                for (var entry : remembered.entrySet()) {
+                    _writeSection(channel, REMEMBERED, entry.getKey(), entry.getValue());
+                }
+                for (var entry : dictionaries.entrySet()) {
+                    _writeSection(channel, DICTIONARY, entry.getKey(), entry.getValue());
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public boolean hasRemembered(String name) {
+        return remembered.containsKey(name);
+    }
+
+    public boolean hasDictionary(String name) {
+        return dictionaries.containsKey(name);
+    }
+
+    /**
+     * @return the number of values read
+     * @throws IOException if the values cannot be decoded, in which case some may have been passed to `consumer`
+     */
+    public int forEachRemembered(String name, Consumer<Object> consumer) throws IOException {
+        var section = remembered.get(name);
+        if (section == null) {
+            return 0;
+        }
+        section.forEach(consumer);
+        return section.count;
+    }
+
+    /**
+     * @throws IOException if the values cannot be decoded
+     */
+    public List<Object> dictionary(String name) throws IOException {
+        var section = dictionaries.get(name);
+        if (section == null) {
+            return null;
+        }
+        var result = new ArrayList<Object>(section.count);
+        section.forEach(result::add);
+        return result;
+    }
+
+    private static void _writeSection(FileChannel channel, byte kind, String name, Collection<? extends Object> values) throws IOException {
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        var header = ByteBuffer.allocate(5 + nameBytes.length + 12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(kind).putInt(nameBytes.length).put(nameBytes).putInt(values.size());
+        var lengthPosition = channel.position() + header.position();
+        header.putLong(0).flip();
+        _writeFully(channel, header);
+
+        long length = 0;
+        var buffer = new BasicOutputBuffer();
+        for (var value : values) {
+            buffer.truncateToPosition(0);
+            try (var writer = new BsonBinaryWriter(buffer)) {
+                DOCUMENT_CODEC.encode(writer, new Document("v", value), EncoderContext.builder().build());
+            }
+            length += buffer.getPosition();
+            _writeFully(channel, ByteBuffer.wrap(buffer.getInternalBuffer(), 0, buffer.getPosition()));
+        }
+
+        var lengthBuffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(length).flip();
+        while (lengthBuffer.hasRemaining()) {
+            lengthPosition += channel.write(lengthBuffer, lengthPosition);
+        }
+    }
+
+    private static IOException _corrupt(Path file, long position) {
+        return new IOException(String.format("Snapshot %s is corrupt at byte %d", file, position));
+    }
+
+    private static ByteBuffer _readFully(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void _writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static class Section {
+        private final MappedByteBuffer buffer;
+        private final int count;
+
+        Section(MappedByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        // each value is a BSON document starting with its length: check they add up to the section
+        boolean isFramed() {
+            var lengths = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            for (var i = 0; i < count; i++) {
+                if (lengths.remaining() < 5) {
+                    return false;
+                }
+                var length = lengths.getInt(lengths.position());
+                if (length < 5 || length > lengths.remaining()) {
+                    return false;
+                }
+                lengths.position(lengths.position() + length);
+            }
+            return !lengths.hasRemaining();
+        }
+
+        void forEach(Consumer<Object> consumer) throws IOException {
+            var input = new ByteBufferBsonInput(new ByteBufNIO(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)));
+            var context = DecoderContext.builder().build();
+            Object value;
+            for (var i = 0; i < count; i++) {
+                try {
+                    // a reader is done after one top-level document, the next one starts where it stopped
+                    value = DOCUMENT_CODEC.decode(new BsonBinaryReader(input), context).get("v");
+                } catch (RuntimeException e) {
+                    throw new IOException(String.format("Cannot decode value %d of a snapshot section", i), e);
+                }
+                consumer.accept(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.schambon.loadsimrunner.template;
+
+import java.util.List;
+
+/**
+ * Values of a remembered field, which `#field` expressions sample from.
+ *
+ * Implementations are rings: when `capped` is set, each new value replaces the oldest one. They must support
+ * concurrent appends and sampling without locking.
+ */
+public interface ValueStore {
+
+    // how many indexes to try when the value picked is being written
+    int SAMPLE_ATTEMPTS = 8;
+
+    void add(Object value);
+
+    default void addAll(List<? extends Object> values) {
+        for (var value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @return the number of values currently held
+     */
+    long size();
+
+    /**
+     * @return a value picked uniformly at random, or null if the store is empty
+     */
+    Object sample();
+
+    /**
+     * @param index from 0 for the oldest value held to `size() - 1` for the newest, whatever their types (the "latest"
+     * and "hotspot" distributions rely on it)
+     * @return the value at `index`, or null if it is being written
+     */
+    Object get(long index);
+
+    /**
+     * @return a value picked according to `distribution`, or null if the store is empty
+     */
+    default Object sample(KeyDistribution distribution) {
+        for (var i = 0; i < SAMPLE_ATTEMPTS; i++) {
+            var size = size();
+            if (size == 0) {
+                return null;
+            }
+            var value = get(distribution.next(size));
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the values currently held, oldest first (not atomic with respect to concurrent appends)
+     */
+    List<Object> values();
+
+    /**
+     * Create the store for a remembered field. Values are packed by type (see {@link AdaptiveValueStore}).
+     *
+     * @param capped maximum number of values to keep, -1 for no limit
+     * @param offHeap allocate packed values outside of the Java heap
+     */
+    static ValueStore create(int capped, boolean offHeap) {
+        return new AdaptiveValueStore(capped, offHeap);
+    }
+}
@@ -0,0 +1,73 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.runner.ArrivalRate;
+
+public class ArrivalRateTest {
+
+    @Test
+    void testConstant() {
+        assertNull(ArrivalRate.parse(null));
+
+        var rate = ArrivalRate.parse(1000);
+        assertEquals(1000d, rate.rateAt(0));
+        assertEquals(1000d, rate.rateAt(3600000));
+    }
+
+    @Test
+    void testRamp() {
+        var rate = ArrivalRate.parse(Document.parse("{start: 100, end: 1100, rampDuration: 10000}"));
+        assertEquals(100d, rate.rateAt(0), 0.001);
+        assertEquals(600d, rate.rateAt(5000), 0.001);
+        assertEquals(1100d, rate.rateAt(10000), 0.001);
+        assertEquals(1100d, rate.rateAt(20000), 0.001);
+    }
+
+    @Test
+    void testSchedule() {
+        var rate = ArrivalRate.parse(Document.parse("{schedule: [{at: 60000, rate: 50}, {at: 0, rate: 10}, {at: 120000, rate: 0}]}"));
+        assertEquals(10d, rate.rateAt(0));
+        assertEquals(10d, rate.rateAt(59999));
+        assertEquals(50d, rate.rateAt(60000));
+        assertEquals(0d, rate.rateAt(500000));
+
+        rate.setRate(20);
+        assertEquals(20d, rate.rateAt(0));
+        assertEquals(20d, rate.getRate());
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(InvalidConfigException.class, () -> ArrivalRate.parse("fast"));
+        assertThrows(InvalidConfigException.class, () -> ArrivalRate.parse(-1));
+        assertThrows(InvalidConfigException.class, () -> ArrivalRate.parse(Document.parse("{start: 1, end: 10}")));
+        assertThrows(InvalidConfigException.class, () -> ArrivalRate.parse(Document.parse("{schedule: []}")));
+    }
+
+    @Test
+    void testSlotsAreEvenlySpaced() {
+        var rate = ArrivalRate.parse(1000);
+        var first = rate.nextIntendedStart();
+        for (var i = 1; i <= 10; i++) {
+            assertEquals(first + i * 1000000L, rate.nextIntendedStart());
+        }
+    }
+
+    @Test
+    void testNoSlotWhileRateIsZero() {
+        var rate = ArrivalRate.parse(0);
+        // returns right away rather than waiting for the rate to change
+        assertEquals(ArrivalRate.NO_SLOT, rate.nextIntendedStart());
+        assertEquals(ArrivalRate.NO_SLOT, rate.nextIntendedStart());
+
+        rate.setRate(1000);
+        assertTrue(rate.nextIntendedStart() != ArrivalRate.NO_SLOT);
+    }
+}
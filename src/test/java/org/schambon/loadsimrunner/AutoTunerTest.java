@@ -0,0 +1,102 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class AutoTunerTest {
+
+    private final Reporter reporter = new Reporter(List.of(50, 99));
+
+    @Test
+    void testThreadsSearch() throws Exception {
+        var workload = _workload();
+        var output = Files.createTempFile("autotune", ".json");
+        var tuner = new AutoTuner(Document.parse(String.format(
+            "{workload: 'wl', start: 1, step: 1, max: 10, stepDuration: 2000, warmup: 500, exitWhenDone: false, output: '%s', slo: {percentile: 99, maxMs: 20}}",
+            output)), List.of(workload), reporter.getRunHistograms());
+        assertEquals(1, workload.getThreads());
+
+        // first report only sets the clock, then 1 and 2 threads pass, 3 threads breach the SLO
+        _report(tuner, 0, 100, 5);
+        for (var p99 : List.of(10d, 15d, 30d)) {
+            _report(tuner, 1000, 100, p99);
+            _report(tuner, 2000, 100, p99);
+        }
+
+        assertTrue(tuner.isDone());
+        assertFalse(tuner.shouldExit());
+        // back to the best level
+        assertEquals(2, workload.getThreads());
+
+        var result = Document.parse(Files.readString(output));
+        assertEquals(3, result.getList("steps", Document.class).size());
+        var best = (Document) result.get("maxSustainable");
+        assertEquals(2d, best.getDouble("level"), 0.0001);
+        assertEquals(15d, best.getDouble("latency"), 0.2);
+        assertFalse(result.getList("steps", Document.class).get(2).getBoolean("passed"));
+        Files.delete(output);
+    }
+
+    @Test
+    void testPercentileOfMergedReports() throws Exception {
+        var output = Files.createTempFile("autotune", ".json");
+        var tuner = new AutoTuner(Document.parse(String.format(
+            "{workload: 'wl', start: 1, max: 1, stepDuration: 2000, warmup: 500, output: '%s', slo: {percentile: 99, maxMs: 20}}",
+            output)), List.of(_workload()), reporter.getRunHistograms());
+
+        // 1000 ops of 1 ms then 20 of 50 ms: the P99s of the reports weighted by their counts average 2 ms, but the P99 of the step is 50 ms
+        _report(tuner, 0, 0, 0);
+        _report(tuner, 1000, 1000, 1);
+        _report(tuner, 2000, 20, 50);
+
+        assertTrue(tuner.shouldExit());
+        var step = Document.parse(Files.readString(output)).getList("steps", Document.class).get(0);
+        assertEquals(50d, step.getDouble("latency"), 0.5);
+        Files.delete(output);
+    }
+
+    @Test
+    void testInvalidConfig() {
+        var workloads = List.of(_workload());
+        var histograms = reporter.getRunHistograms();
+        assertThrows(InvalidConfigException.class, () -> new AutoTuner(Document.parse("{workload: 'nope', slo: {percentile: 99, maxMs: 20}}"), workloads, histograms));
+        assertThrows(InvalidConfigException.class, () -> new AutoTuner(Document.parse("{workload: 'wl', slo: {percentile: 101, maxMs: 20}}"), workloads, histograms));
+        assertThrows(InvalidConfigException.class, () -> new AutoTuner(Document.parse("{workload: 'wl', mode: 'pace', slo: {percentile: 99, maxMs: 20}}"), workloads, histograms));
+        assertThrows(InvalidConfigException.class, () -> new AutoTuner(Document.parse("{workload: 'wl'}"), workloads, histograms));
+    }
+
+    private WorkloadManager _workload() {
+        return WorkloadManager.newInstances(Document.parse("{name: 'wl', op: 'find'}"), new HashMap<>(), reporter).get(0);
+    }
+
+    // a report `offset` ms after the current step started (steps start "now"), of `ops` operations taking `latency` ms
+    private void _report(AutoTuner tuner, long offset, long ops, double latency) throws Exception {
+        for (var i = 0; i < ops; i++) {
+            reporter.reportOpNanos("wl", 1, (long) (latency * 1000000));
+        }
+        // the interval histograms go to the run histograms when a report is computed, before the callbacks
+        var computed = new CompletableFuture<Report>();
+        reporter.computeReport(List.of(computed::complete));
+        computed.get(10, TimeUnit.SECONDS);
+
+        var wl = new Document("ops", ops)
+            .append("total ops", ops)
+            .append("percentiles", List.of(new Document("p", 50).append("value", latency), new Document("p", 99).append("value", latency)));
+        tuner.report(new Report(Instant.now().plusMillis(offset), new Document("wl", wl)));
+    }
+}
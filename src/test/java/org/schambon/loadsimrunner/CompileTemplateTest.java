@@ -0,0 +1,112 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class CompileTemplateTest {
+
+    private TemplateManager template = new NullTemplateManager(new Reporter(List.of(95)));
+
+    @Test
+    void testCompileDocument() {
+        var filter = template.compile(Document.parse("{status: 'active', age: {$gte: {'%integer': {min: 10, max: 20}}}}"));
+        for (var i = 0; i < 100; i++) {
+            var generated = template.generate(filter);
+            assertEquals("active", generated.getString("status"));
+            var age = ((Document) generated.get("age")).getInteger("$gte");
+            assertTrue(age >= 10 && age < 20);
+        }
+        assertNull(template.compile((Document) null));
+    }
+
+    @Test
+    void testCompileOncePerWorkload() {
+        var workload = WorkloadManager.newInstances(Document.parse("{name: 'wl', op: 'find', threads: 4, params: {filter: {n: '%integer'}, pipeline: [{$limit: 1}]}}"), new HashMap<>(), new Reporter(List.of(95))).get(0);
+        var filter = (Document) workload.getParams().get("filter");
+        // every runner of the workload gets the same compiled filter
+        assertSame(workload.compile(filter), workload.compile(filter));
+        var pipeline = workload.getParams().getList("pipeline", Document.class);
+        assertSame(workload.compile(pipeline), workload.compile(pipeline));
+        assertNull(workload.compile((Document) null));
+    }
+
+    @Test
+    void testCompilePipeline() {
+        var pipeline = template.compile(List.of(
+            Document.parse("{$match: {n: {'%natural': {max: 5}}}}"),
+            Document.parse("{$limit: 10}")));
+        var generated = template.generate(pipeline);
+        assertEquals(2, generated.size());
+        assertTrue(generated.get(0).get("$match", Document.class).getInteger("n") < 5);
+        assertEquals(10, (int) generated.get(1).getInteger("$limit"));
+    }
+
+    @Test
+    void testCompileExpression() {
+        assertEquals("constant", template.compileExpression("constant").generate());
+        assertEquals(List.of(1, 2), template.compileExpression(List.of(1, 2)).generate());
+    }
+
+    @Test
+    void testConstantFolding() {
+        var folded = template.compileExpression(Document.parse("{'%sum': {of: [1, 2, {'%product': {of: [3, 4]}}]}}"));
+        assertTrue(folded.isConstant());
+        assertEquals(15L, folded.generate());
+
+        var notFolded = template.compileExpression(Document.parse("{'%sum': {of: [1, {'%integer': {min: 0, max: 10}}]}}"));
+        assertFalse(notFolded.isConstant());
+    }
+
+    @Test
+    void testSpecializedDate() {
+        var date = template.compileExpression(Document.parse("{'%date': {min: '2020-01-01T00:00:00Z', max: '2020-02-01T00:00:00Z', truncate: 'day'}}"));
+        var min = Date.from(java.time.Instant.parse("2020-01-01T00:00:00Z"));
+        var max = Date.from(java.time.Instant.parse("2020-02-01T00:00:00Z"));
+        for (var i = 0; i < 100; i++) {
+            var generated = (Date) date.generate();
+            assertFalse(generated.before(min));
+            assertTrue(generated.before(max));
+            assertEquals(0, generated.getTime() % 86400000L);
+        }
+    }
+
+    @Test
+    void testWeightedOneOf() {
+        // constant weights use an alias table, weights given as an expression use the dynamic path
+        for (var expression : List.of(
+                "{'%oneOf': {options: ['a', 'b', 'c', 'd'], weights: [6, 3, 0]}}",
+                "{'%oneOf': {options: ['a', 'b', 'c', 'd'], weights: [6, 3, {'%integer': {min: 0, max: 1}}]}}")) {
+            var oneOf = template.compileExpression(Document.parse(expression));
+            var counts = new java.util.TreeMap<String, Integer>();
+            for (var i = 0; i < 10000; i++) {
+                counts.merge((String) oneOf.generate(), 1, Integer::sum);
+            }
+            assertNull(counts.get("c"));
+            assertTrue(counts.get("a") > counts.get("b"));
+            assertTrue(counts.get("b") > counts.get("d"));
+        }
+    }
+
+    @Test
+    void testAliasTable() {
+        var table = new org.schambon.loadsimrunner.generators.AliasTable(new double[] {1, 0, 3});
+        var counts = new int[3];
+        for (var i = 0; i < 40000; i++) {
+            counts[table.next()]++;
+        }
+        assertEquals(0, counts[1]);
+        assertTrue(counts[0] > 9000 && counts[0] < 11000);
+        assertTrue(counts[2] > 29000 && counts[2] < 31000);
+    }
+}
@@ -0,0 +1,113 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.template.KeyDistribution;
+import org.schambon.loadsimrunner.template.ObjectValueStore;
+import org.schambon.loadsimrunner.template.ValueStore;
+
+public class KeyDistributionTest {
+
+    private static final int DRAWS = 100000;
+
+    @Test
+    void testParse() {
+        assertNull(KeyDistribution.parse(null));
+        assertNull(KeyDistribution.parse("uniform"));
+        assertThrows(InvalidConfigException.class, () -> KeyDistribution.parse("pareto"));
+        assertThrows(InvalidConfigException.class, () -> KeyDistribution.parse(Document.parse("{type: 'zipfian', theta: 1.5}")));
+        assertThrows(InvalidConfigException.class, () -> KeyDistribution.parse(Document.parse("{type: 'hotspot', hotFraction: 0}")));
+    }
+
+    @Test
+    void testZipfian() {
+        var zipfian = KeyDistribution.parse(Document.parse("{type: 'zipfian', theta: 0.99}"));
+        for (var size : List.of(1L, 2L, 10L, 5000000L)) {
+            var counts = new java.util.HashMap<Long, Integer>();
+            for (var i = 0; i < DRAWS; i++) {
+                var index = zipfian.next(size);
+                assertTrue(index >= 0 && index < size);
+                counts.merge(index, 1, Integer::sum);
+            }
+            if (size == 5000000L) {
+                // the most popular value takes about 1 / zeta(n) of the draws, about 6% with theta = 0.99
+                var top = counts.values().stream().mapToInt(Integer::intValue).max().getAsInt();
+                assertTrue(top > DRAWS / 25 && top < DRAWS / 10, "top count " + top);
+            }
+        }
+    }
+
+    @Test
+    void testLatest() {
+        var latest = KeyDistribution.parse("latest");
+        var newest = 0;
+        for (var i = 0; i < DRAWS; i++) {
+            if (latest.next(1000) >= 990) {
+                newest++;
+            }
+        }
+        // zeta(10) / zeta(1000) is about 39%
+        assertTrue(newest > DRAWS / 3 && newest < DRAWS / 2, "newest count " + newest);
+    }
+
+    @Test
+    void testHotspot() {
+        var hotspot = KeyDistribution.parse(Document.parse("{type: 'hotspot', hotFraction: 0.1, hotAccess: 0.9}"));
+        var hot = 0;
+        for (var i = 0; i < DRAWS; i++) {
+            if (hotspot.next(1000) < 100) {
+                hot++;
+            }
+        }
+        assertTrue(hot > DRAWS * 0.88 && hot < DRAWS * 0.92);
+    }
+
+    @Test
+    void testSequential() {
+        var sequential = KeyDistribution.parse("sequential");
+        for (var i = 0; i < 7; i++) {
+            assertEquals((long) (i % 3), sequential.next(3));
+        }
+    }
+
+    @Test
+    void testStoreIndexes() {
+        var store = new ObjectValueStore(3);
+        store.addAll(List.of(1, 2, 3, 4, 5));
+        assertEquals(3, store.get(0));
+        assertEquals(5, store.get(2));
+        assertNull(store.get(3));
+
+        var adaptive = ValueStore.create(-1, false);
+        adaptive.addAll(List.of(1, 2, "a"));
+        assertEquals(1, adaptive.get(0));
+        assertEquals(2, adaptive.get(1));
+        assertEquals("a", adaptive.get(2));
+
+        var sequential = KeyDistribution.parse("sequential");
+        assertEquals(1, adaptive.sample(sequential));
+        assertEquals(2, adaptive.sample(sequential));
+        assertEquals("a", adaptive.sample(sequential));
+        // indexes follow insertion order in a store of mixed types too
+        var mixed = ValueStore.create(3, false);
+        mixed.addAll(List.of(1L, "a", 2L, 3L));
+        assertEquals("a", mixed.get(0));
+        assertEquals(3L, mixed.get(2));
+        var latest = KeyDistribution.parse(Document.parse("{type: 'latest', theta: 0.99}"));
+        var newest = 0;
+        for (var i = 0; i < 1000; i++) {
+            if (Long.valueOf(3L).equals(mixed.sample(latest))) {
+                newest++;
+            }
+        }
+        assertTrue(newest > 400, "newest count " + newest);
+    }
+}
@@ -0,0 +1,72 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        var h = new LatencyHistogram(3600000L, 2);
+        for (var i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getTotalCount());
+        assertEquals(50, h.getValueAtPercentile(50));
+        assertEquals(95, h.getValueAtPercentile(95));
+        assertEquals(100, h.getValueAtPercentile(100));
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.0001);
+    }
+
+    @Test
+    void testPrecision() {
+        var h = new LatencyHistogram(3600000L, 2);
+        var values = new ArrayList<Long>();
+        for (var i = 0; i < 10000; i++) {
+            long v = ThreadLocalRandom.current().nextLong(1, 3600000L);
+            values.add(v);
+            h.record(v);
+        }
+        values.sort(Long::compare);
+        for (int p : new int[] {50, 90, 95, 99}) {
+            long exact = values.get((int) Math.ceil(p / 100d * values.size()) - 1);
+            long approx = h.getValueAtPercentile(p);
+            assertTrue(approx >= exact, String.format("p%d: %d < %d", p, approx, exact));
+            assertTrue(approx <= exact * 1.01, String.format("p%d: %d too far from %d", p, approx, exact));
+        }
+    }
+
+    @Test
+    void testClampAndReset() {
+        var h = new LatencyHistogram(1000L, 2);
+        h.record(5000000L);
+        assertEquals(1, h.getTotalCount());
+        assertEquals(5000000L, h.getMax());
+
+        h.reset();
+        assertEquals(0, h.getTotalCount());
+        assertEquals(0, h.getValueAtPercentile(99));
+    }
+
+    @Test
+    void testAdd() {
+        var a = new LatencyHistogram(3600000L, 2);
+        var b = a.copyLayout();
+        a.record(10);
+        b.record(20);
+        b.record(30);
+        a.add(b);
+        assertEquals(3, a.getTotalCount());
+        assertEquals(60, a.getSum());
+        assertEquals(30, a.getMax());
+        assertEquals(10, a.getMin());
+    }
+}
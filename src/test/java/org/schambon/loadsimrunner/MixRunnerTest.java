@@ -0,0 +1,62 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.runner.AbstractRunner;
+import org.schambon.loadsimrunner.runner.MixRunner;
+
+public class MixRunnerTest {
+
+    private final Reporter reporter = new Reporter(List.of(95));
+
+    @Test
+    void testWeightsAndVariables() {
+        var template = _template();
+        var mix = new MixRunner(_workload(template, "{variables: {tag: 'mix'}, params: {ops: ["
+            + "{op: 'insert', name: 'a', weight: 2, variables: {tag: 'a'}},"
+            + "{op: 'insert', name: 'b'}]}}"), reporter);
+        for (var i = 0; i < 9; i++) {
+            assertTrue(mix.step() >= 0);
+        }
+        // smooth round-robin, and each op sees its own variables ('b' inherits those of the mix)
+        assertEquals(List.of("a", "mix", "a", "a", "mix", "a", "a", "mix", "a"), template.getRememberedValues("tag"));
+    }
+
+    @Test
+    void testMixedRunners() {
+        var template = _template();
+        var workload = _workload(template, "{variables: {tag: 'mix'}, params: {ops: [{op: 'insert'}]}}");
+        var op = Document.parse("{op: 'insert', variables: {tag: 'op'}, batch: 2, threads: 10}");
+        var first = workload.newMixedRunner(op, "insert");
+        var second = workload.newMixedRunner(op, "insert");
+        // one runner per client, all from the same workload
+        assertTrue(first instanceof AbstractRunner && first != second);
+
+        assertTrue(((AbstractRunner) first).step() >= 0);
+        assertEquals(List.of("op", "op"), template.getRememberedValues("tag"));
+
+        assertThrows(InvalidConfigException.class, () -> new MixRunner(_workload(template, "{params: {ops: [{op: 'mix'}]}}"), reporter));
+        assertThrows(InvalidConfigException.class, () -> new MixRunner(_workload(template, "{params: {ops: [{op: 'insert', weight: 0}]}}"), reporter));
+        assertThrows(InvalidConfigException.class, () -> new MixRunner(_workload(template, "{params: {}}"), reporter));
+    }
+
+    private TemplateManager _template() {
+        var template = TemplateManager.newInstances(Document.parse("{name: 't', database: 'db', collection: 'c', template: {tag: '#tag'}, remember: ['tag']}"), reporter).get(0);
+        template.initializeSink(new Document());
+        return template;
+    }
+
+    private WorkloadManager _workload(TemplateManager template, String config) {
+        var doc = Document.parse(config).append("name", "mix").append("template", "t").append("op", "mix");
+        return WorkloadManager.newInstances(doc, Map.of("t", List.of(template)), reporter).get(0);
+    }
+}
@@ -0,0 +1,174 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.client.SinkCollection;
+import org.schambon.loadsimrunner.report.MongoReporter;
+import org.schambon.loadsimrunner.report.Report;
+
+public class MongoReporterTest {
+
+    @Test
+    void testBatchedExport() throws Exception {
+        var sink = SinkCollection.create(Document.parse("{mode: 'memory'}"), "results", "report");
+        var failures = new AtomicInteger(1); // the first write fails, then is retried
+        var inserts = new AtomicInteger();
+        var reporter = new MongoReporter(_failing(sink, failures, inserts), Document.parse("{runIdentifier: 'test', retryDelayMS: 10}"));
+
+        for (var i = 0; i < 10; i++) {
+            reporter.report(_report(Instant.now(), 50));
+        }
+        _waitFor(() -> reporter.getWritten() == 10 * 51);
+
+        assertEquals(10L * 51, sink.countDocuments());
+        assertEquals(0L, reporter.getDropped());
+        // batched: far fewer writes than documents
+        assertTrue(inserts.get() < 20, "inserts: " + inserts.get());
+    }
+
+    @Test
+    void testDropOldest() throws Exception {
+        var sink = SinkCollection.create(Document.parse("{mode: 'memory'}"), "results", "report");
+        var failures = new AtomicInteger(Integer.MAX_VALUE); // results cluster down
+        var reporter = new MongoReporter(_failing(sink, failures, new AtomicInteger()), Document.parse("{bufferSize: 100, retries: 0, retryDelayMS: 0}"));
+
+        for (var i = 0; i < 10; i++) {
+            reporter.report(_report(Instant.now(), 50));
+        }
+        // nothing is written, but reporting never blocks and everything is accounted for as dropped in the end
+        _waitFor(() -> reporter.getDropped() == 10 * 51);
+        assertEquals(0L, sink.countDocuments());
+
+        // the cluster comes back: one task and the exporter's stats
+        failures.set(0);
+        reporter.report(_report(Instant.now(), 1));
+        _waitFor(() -> reporter.getWritten() == 2);
+        assertEquals(2L, sink.countDocuments());
+    }
+
+    @Test
+    void testRetryOnlyFailedWrites() throws Exception {
+        var sink = SinkCollection.create(Document.parse("{mode: 'memory'}"), "results", "report");
+        var attempts = new ConcurrentHashMap<String, Integer>();
+        // task1's first write goes through but reports a duplicate key (as if an earlier attempt had written it), and
+        // task2's first write fails: only task2 must be written again, however the documents are batched
+        @SuppressWarnings("unchecked")
+        var collection = (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("insertMany")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            var docs = (List<Document>) args[0];
+            var ok = new ArrayList<Document>();
+            var errors = new ArrayList<BulkWriteError>();
+            for (var i = 0; i < docs.size(); i++) {
+                var task = _task(docs.get(i));
+                var attempt = attempts.merge(task, 1, Integer::sum);
+                if ("task1".equals(task) && attempt == 1) {
+                    ok.add(docs.get(i));
+                    errors.add(new BulkWriteError(11000, "duplicate key", new BsonDocument(), i));
+                } else if ("task2".equals(task) && attempt == 1) {
+                    errors.add(new BulkWriteError(91, "shutting down", new BsonDocument(), i));
+                } else {
+                    ok.add(docs.get(i));
+                }
+            }
+            sink.insertMany(ok);
+            if (!errors.isEmpty()) {
+                throw new MongoBulkWriteException(BulkWriteResult.acknowledged(docs.size() - errors.size(), 0, 0, 0, List.of(), List.of()), errors, null, new ServerAddress(), Set.of());
+            }
+            return null;
+        });
+        var reporter = new MongoReporter(collection, Document.parse("{retryDelayMS: 10}"));
+
+        reporter.report(_report(Instant.now(), 10));
+        _waitFor(() -> reporter.getWritten() == 11);
+        assertEquals(0L, reporter.getDropped());
+        assertEquals(11L, sink.countDocuments());
+        assertEquals(1, (int) attempts.get("task1"));
+        assertEquals(2, (int) attempts.get("task2"));
+        assertEquals(1, (int) attempts.get("task3"));
+    }
+
+    @Test
+    void testUnexpectedErrorKeepsFlushing() throws Exception {
+        var sink = SinkCollection.create(Document.parse("{mode: 'memory'}"), "results", "report");
+        var failed = new AtomicInteger();
+        // the batch holding task3 fails once with an error that is not a server error
+        @SuppressWarnings("unchecked")
+        var collection = (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> {
+            var docs = (List<Document>) args[0];
+            if (docs.stream().anyMatch(doc -> "task3".equals(_task(doc))) && failed.getAndIncrement() == 0) {
+                throw new IllegalStateException("state should be: open");
+            }
+            return sink.insertMany(docs);
+        });
+        var reporter = new MongoReporter(collection, Document.parse("{retryDelayMS: 10}"));
+
+        reporter.report(_report(Instant.now(), 10));
+        _waitFor(() -> reporter.getWritten() + reporter.getDropped() == 11);
+        assertTrue(reporter.getDropped() > 0);
+        assertEquals(reporter.getWritten(), sink.countDocuments());
+
+        // the flusher is still there for the next reports
+        var written = reporter.getWritten();
+        reporter.report(_report(Instant.now(), 10));
+        _waitFor(() -> reporter.getWritten() == written + 11);
+        assertEquals(reporter.getWritten(), sink.countDocuments());
+    }
+
+    private static String _task(Document doc) {
+        return ((Document) doc.get("test")).getString("task");
+    }
+
+    private static Report _report(Instant time, int tasks) {
+        var doc = new Document();
+        for (var i = 0; i < tasks; i++) {
+            doc.append("task" + i, new Document("ops", (long) i));
+        }
+        return new Report(time, doc);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> _failing(MongoCollection<Document> delegate, AtomicInteger failures, AtomicInteger inserts) {
+        return (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("insertMany")) {
+                inserts.incrementAndGet();
+                if (failures.getAndUpdate(n -> n > 0 && n < Integer.MAX_VALUE ? n - 1 : n) > 0) {
+                    throw new MongoException("unavailable");
+                }
+            }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static void _waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        for (var i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
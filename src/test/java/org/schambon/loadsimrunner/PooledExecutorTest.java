@@ -0,0 +1,83 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.runner.AbstractRunner;
+import org.schambon.loadsimrunner.runner.InsertRunner;
+import org.schambon.loadsimrunner.runner.PooledExecutor;
+import org.schambon.loadsimrunner.runner.WorkloadContext;
+
+public class PooledExecutorTest {
+
+    private static final int CLIENTS = 20;
+    private static final int CARRIERS = 2;
+
+    private final Reporter reporter = new Reporter(List.of(95));
+
+    @Test
+    void testPace() throws InterruptedException {
+        var template = _template();
+        var pool = new PooledExecutor("wl", CARRIERS);
+        _start(pool, _workload(template, "{pace: 10, stopAfter: 5}"));
+
+        // pacing clients don't hold a carrier: 20 clients x 5 iterations x 10ms would take 1s on each of 2 threads otherwise
+        assertTrue(pool.awaitTermination(2, TimeUnit.SECONDS));
+        assertEquals(CLIENTS * 5, template.getRememberedValues("_id").size());
+    }
+
+    @Test
+    void testRateWithZeroPhase() throws InterruptedException {
+        var template = _template();
+        var pool = new PooledExecutor("wl", CARRIERS);
+        _start(pool, _workload(template, "{rate: {schedule: [{at: 0, rate: 0}, {at: 200, rate: 1000}]}, stopAfter: 5}"));
+
+        Thread.sleep(100);
+        assertEquals(0, template.getRememberedValues("_id").size());
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(CLIENTS * 5, template.getRememberedValues("_id").size());
+    }
+
+    @Test
+    void testStopWhileRateIsZero() throws InterruptedException {
+        var template = _template();
+        var pool = new PooledExecutor("wl", CARRIERS);
+        var runners = _start(pool, _workload(template, "{rate: 0}"));
+
+        Thread.sleep(200);
+        for (var runner : runners) {
+            runner.stop();
+        }
+        assertTrue(pool.awaitTermination(2, TimeUnit.SECONDS));
+        assertEquals(0, template.getRememberedValues("_id").size());
+    }
+
+    private List<AbstractRunner> _start(PooledExecutor pool, WorkloadManager workload) {
+        var runners = new ArrayList<AbstractRunner>();
+        for (var i = 0; i < CLIENTS; i++) {
+            var runner = new InsertRunner(workload, reporter);
+            runners.add(runner);
+            assertTrue(pool.start(new WorkloadContext("wl", i), runner));
+        }
+        return runners;
+    }
+
+    private TemplateManager _template() {
+        var template = TemplateManager.newInstances(Document.parse("{name: 't', database: 'db', collection: 'c', template: {_id: '%objectid'}, remember: ['_id']}"), reporter).get(0);
+        template.initializeSink(new Document());
+        return template;
+    }
+
+    private WorkloadManager _workload(TemplateManager template, String config) {
+        var doc = Document.parse(config).append("name", "wl").append("template", "t").append("op", "insert").append("executor", "pooled");
+        return WorkloadManager.newInstances(doc, Map.of("t", List.of(template)), reporter).get(0);
+    }
+}
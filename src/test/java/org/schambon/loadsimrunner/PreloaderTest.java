@@ -0,0 +1,138 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.client.SinkCollection;
+import org.schambon.loadsimrunner.template.Preloader;
+import org.schambon.loadsimrunner.template.RememberField;
+import org.schambon.loadsimrunner.template.RememberUtil;
+
+public class PreloaderTest {
+
+    @Test
+    void testPartitions() {
+        var ids = IntStream.range(0, 128).boxed().collect(Collectors.toList());
+        var partitions = new Preloader(_sampling(ids), 4).partitions();
+
+        assertEquals(4, partitions.size());
+        assertEquals(Document.parse("{_id: {$lt: 32}}"), partitions.get(0));
+        assertEquals(Document.parse("{_id: {$gte: 32, $lt: 64}}"), partitions.get(1));
+        assertEquals(Document.parse("{_id: {$gte: 64, $lt: 96}}"), partitions.get(2));
+        assertEquals(Document.parse("{_id: {$gte: 96}}"), partitions.get(3));
+    }
+
+    @Test
+    void testPartitionsOfSmallCollection() {
+        assertEquals(List.of(new Document()), new Preloader(_sampling(List.of()), 4).partitions());
+        assertEquals(3, new Preloader(_sampling(List.of(1, 1, 1, 2)), 4).partitions().size());
+        assertEquals(List.of(new Document()), new Preloader(_sampling(List.of(1, 2, 3)), 1).partitions());
+    }
+
+    @Test
+    void testScanEmptyCollection() {
+        var coll = SinkCollection.create(new Document(), "db", "coll");
+        var found = new ArrayList<RawBsonDocument>();
+        assertEquals(0L, new Preloader(coll, 4).scan(new Document(), null, 100, found::add));
+        assertEquals(0, found.size());
+    }
+
+    @Test
+    void testScanLimitIsShared() {
+        // all the matches are in the first of 4 ranges: it reads them all, up to the limit
+        var preloader = new Preloader(_skewed(IntStream.range(0, 128).boxed().collect(Collectors.toList()), 1000), 4);
+        var found = new ConcurrentLinkedQueue<RawBsonDocument>();
+        assertEquals(600L, preloader.scan(new Document(), null, 600, found::add));
+        assertEquals(600, found.size());
+        assertEquals(1000L, preloader.scan(new Document(), null, 0, doc -> {}));
+    }
+
+    @Test
+    void testPreloadProjection() {
+        assertEquals(Document.parse("{_id: 0, a: 1}"), RememberUtil.preloadProjection(new RememberField("a", null, null, true, 10, -1)));
+        assertEquals(Document.parse("{_id: 1}"), RememberUtil.preloadProjection(new RememberField("_id", null, null, true, 10, -1)));
+        assertEquals(Document.parse("{'_id.a': 1, b: 1}"), RememberUtil.preloadProjection(new RememberField(null, List.of("_id.a", "b"), "x", true, 10, -1)));
+    }
+
+    @Test
+    void testExtractFromRawDocument() {
+        var oid = new ObjectId();
+        var doc = new Document("a", new Document("b", List.of(1L, 2L))).append("c", List.of(new Document("d", "x"), new Document("d", List.of("y", "z"))))
+            .append("e", oid).append("f", new Document("g", 1)).append("h", new Date(0));
+        var raw = new RawBsonDocument(doc, new DocumentCodec());
+        for (var field : List.of("a.b", "c.d", "e", "f", "h", "a.nope", "e.b")) {
+            var rfield = new RememberField(field, null, null, true, 10, -1);
+            assertEquals(RememberUtil.extractRememberedValues(doc, rfield), RememberUtil.extractRememberedValues(raw, rfield), field);
+        }
+        var compound = new RememberField(null, List.of("a.b", "e"), "x", true, 10, -1);
+        assertEquals(RememberUtil.extractRememberedValues(doc, compound), RememberUtil.extractRememberedValues(raw, compound));
+    }
+
+    // a collection whose aggregations all return `ids`, as a sorted $sample would
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> _sampling(List<Integer> ids) {
+        var docs = ids.stream().map(id -> new Document("_id", id)).collect(Collectors.toList());
+        var iterable = _iterable(AggregateIterable.class, docs, new int[1]);
+        return (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("aggregate")) {
+                return iterable;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    // also finds `matches` documents, all in the lowest `_id` range (`{_id: {$lt: ...}}`)
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> _skewed(List<Integer> ids, int matches) {
+        var sampling = _sampling(ids);
+        var docs = IntStream.range(0, matches).mapToObj(i -> new RawBsonDocument(new Document("_id", i), new DocumentCodec())).collect(Collectors.toList());
+        return (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "aggregate": return sampling.aggregate((List<Document>) args[0]);
+                case "withDocumentClass": return proxy;
+                case "getNamespace": return new MongoNamespace("db.coll");
+                case "find":
+                    var range = (Document) ((Document) args[0]).get("_id");
+                    return _iterable(FindIterable.class, range.containsKey("$gte") ? List.of() : docs, new int[1]);
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    // an iterable of `docs`, honoring limit()
+    private static Object _iterable(Class<?> type, List<?> docs, int[] limit) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getName().equals("limit")) {
+                limit[0] = (Integer) args[0];
+            } else if (method.getName().equals("iterator")) {
+                var it = (limit[0] > 0 ? docs.subList(0, Math.min(limit[0], docs.size())) : docs).iterator();
+                return Proxy.newProxyInstance(MongoCursor.class.getClassLoader(), new Class<?>[] {MongoCursor.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "hasNext": return it.hasNext();
+                        case "next": return it.next();
+                        default: return null;
+                    }
+                });
+            }
+            return proxy;
+        });
+    }
+}
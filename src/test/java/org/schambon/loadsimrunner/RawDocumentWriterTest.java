@@ -0,0 +1,46 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import com.mongodb.MongoClientSettings;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class RawDocumentWriterTest {
+
+    private TemplateManager template = new NullTemplateManager(new Reporter(List.of(95)));
+    private RawDocumentWriter writer = new RawDocumentWriter(MongoClientSettings.getDefaultCodecRegistry());
+
+    @Test
+    void testSameAsDocument() {
+        var compiled = template.compile(Document.parse(
+            "{_id: 1, name: 'x', n: {'%sum': {of: [1, 2]}}, sub: {a: [1, 'b', {c: true}], d: {'%date': {min: '2020-01-01T00:00:00Z', max: '2020-01-01T00:00:00Z'}}}, dec: {'%decimal': {min: 0, max: 1}}}"));
+
+        var raw = writer.write(compiled);
+        var decoded = Document.parse(raw.toJson());
+        assertEquals(1, decoded.get("_id"));
+        assertEquals("x", decoded.get("name"));
+        assertEquals(3L, raw.getInt64("n").getValue());
+        assertEquals(List.of(1, "b", new Document("c", true)), decoded.get("sub", Document.class).get("a"));
+        assertEquals(1577836800000L, decoded.get("sub", Document.class).getDate("d").getTime());
+        assertTrue(raw.get("dec").isDecimal128());
+    }
+
+    @Test
+    void testGeneratesId() {
+        var raw = writer.write(template.compile(Document.parse("{a: 1}")));
+        assertEquals("_id", raw.getFirstKey());
+        assertTrue(raw.get("_id").isObjectId());
+        assertTrue(raw.getObjectId("_id").getValue() instanceof ObjectId);
+
+        var other = writer.write(template.compile(Document.parse("{a: 2}")));
+        assertEquals(1, raw.getInt32("a").getValue());
+        assertEquals(2, other.getInt32("a").getValue());
+    }
+}
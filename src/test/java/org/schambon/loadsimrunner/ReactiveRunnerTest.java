@@ -0,0 +1,85 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class ReactiveRunnerTest {
+
+    private final Reporter reporter = new Reporter(List.of(95));
+
+    @Test
+    void testInFlightBoundsConcurrency() throws InterruptedException {
+        var template = TemplateManager.newInstances(Document.parse("{name: 't', database: 'db', collection: 'c', template: {}}"), reporter).get(0);
+        template.initializeSink(new Document());
+        var workload = WorkloadManager.newInstances(Document.parse("{name: 'wl', template: 't', op: 'updateOne', driver: 'reactive', inFlight: 3, threads: 8, stopAfter: 20,"
+            + " params: {filter: {_id: '%natural'}, update: {$set: {a: 1}}}}"), Map.of("t", List.of(template)), reporter).get(0);
+
+        // updates complete 5ms after they are issued, on another thread as with the driver
+        var completer = Executors.newSingleThreadScheduledExecutor();
+        var pending = new AtomicInteger();
+        var maxPending = new AtomicInteger();
+        var completed = new AtomicInteger();
+        Publisher<UpdateResult> update = subscriber -> {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            maxPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+            completer.schedule(() -> {
+                pending.decrementAndGet();
+                completed.incrementAndGet();
+                subscriber.onNext(UpdateResult.acknowledged(1, 1L, null));
+                subscriber.onComplete();
+            }, 5, TimeUnit.MILLISECONDS);
+        };
+        var collection = _proxy(MongoCollection.class, (method, args) -> method.equals("updateOne") ? update : null);
+        var database = _proxy(MongoDatabase.class, (method, args) -> method.equals("getCollection") ? collection : null);
+        workload.initAndStart(null, _proxy(MongoClient.class, (method, args) -> method.equals("getDatabase") ? database : null));
+
+        var permits = workload.getInFlightPermits();
+        for (var i = 0; i < 500 && (completed.get() < 8 * 20 || permits.availablePermits() < 3); i++) {
+            Thread.sleep(10);
+        }
+        completer.shutdown();
+        assertEquals(8 * 20, completed.get());
+        // 8 threads issue without waiting for the server, but never more than inFlight operations at a time
+        assertEquals(3, maxPending.get());
+        assertEquals(3, permits.availablePermits());
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T _proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getName().startsWith("with")) {
+                return proxy; // read preference, concerns...
+            }
+            return answer.answer(method.getName(), args);
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.ReportHistory;
+
+public class ReportHistoryTest {
+
+    private static final long BASE = 1_700_000_000_000L; // a round 10s
+
+    @Test
+    void testRetentionAndRollup() {
+        // 10s of raw reports, 1 minute of 10s points
+        var history = new ReportHistory(List.of(50, 99), 1000, 10000, 60000, 0);
+        for (var i = 0; i < 60; i++) {
+            var report = new Document("find", _workload(i, i % 10 == 0 ? new Document("retries", 1L) : null));
+            if (i % 2 == 0) {
+                report.append("insert", _workload(1, null));
+            }
+            history.add(new Report(Instant.ofEpochMilli(BASE + i * 1000L), report));
+        }
+
+        var reports = history.getReportsSince(null);
+        // 10s points until the raw reports start (49s), then 11 raw reports
+        var times = new ArrayList<Long>();
+        for (var r : reports) {
+            times.add(r.getTime().toEpochMilli() - BASE);
+        }
+        assertEquals(List.of(9000L, 19000L, 29000L, 39000L, 49000L, 50000L, 51000L, 52000L, 53000L, 54000L, 55000L, 56000L, 57000L, 58000L, 59000L), times);
+
+        var first = (Document) reports.get(0).getReport().get("find");
+        assertEquals(5L, (long) first.getLong("ops")); // mean of 0..9, rounded
+        assertEquals(45L, (long) first.getLong("total ops"));
+        assertEquals(1.5d, first.getDouble("mean duration"), 0.0001);
+        assertEquals(9d, first.getList("percentiles", Document.class).get(1).getDouble("value"), 0.0001); // worst
+        assertEquals(new Document("retries", 1L), first.get("events"));
+
+        // raw reports are as they came, workloads absent from a report are absent from it
+        var last = reports.get(reports.size() - 1).getReport();
+        assertEquals(59L, (long) ((Document) last.get("find")).getLong("ops"));
+        assertEquals(59d, ((Document) last.get("find")).getList("percentiles", Document.class).get(1).getDouble("value"), 0.0001);
+        assertFalse(last.containsKey("insert"));
+        assertEquals(_workload(1, null), reports.get(reports.size() - 2).getReport().get("insert"));
+
+        assertEquals(2, history.getReportsSince(Instant.ofEpochMilli(BASE + 57000)).size());
+
+        var rows = new int[1];
+        history.forEachRow(Instant.ofEpochMilli(BASE + 49000), (time, workload, values) -> {
+            assertEquals(history.columns().size(), values.length);
+            rows[0]++;
+        });
+        assertEquals(10 + 5, rows[0]);
+    }
+
+    @Test
+    void testGrowAndWrap() {
+        // 200 raw reports, more than the initial length of the rings, and a workload that starts late
+        var history = new ReportHistory(List.of(50, 99), 1000, 199000, 0, 0);
+        for (var i = 0; i < 300; i++) {
+            var report = new Document("find", _workload(i, null));
+            if (i >= 130 && i < 140) {
+                report.append("insert", _workload(i, new Document("retries", (long) i)));
+            }
+            history.add(new Report(Instant.ofEpochMilli(BASE + i * 1000L), report));
+            if (i == 150) {
+                var reports = history.getReportsSince(null);
+                assertEquals(151, reports.size());
+                assertEquals(_workload(135, new Document("retries", 135L)), reports.get(135).getReport().get("insert"));
+                assertFalse(reports.get(140).getReport().containsKey("insert"));
+            }
+        }
+
+        var reports = history.getReportsSince(null);
+        assertEquals(200, reports.size());
+        for (var k = 0; k < reports.size(); k++) {
+            var i = 100 + k;
+            assertEquals(_workload(i, null), reports.get(k).getReport().get("find"));
+            assertEquals(i >= 130 && i < 140, reports.get(k).getReport().containsKey("insert"));
+        }
+    }
+
+    @Test
+    void testParse() {
+        assertThrows(InvalidConfigException.class, () -> ReportHistory.parse(Document.parse("{raw: 0}"), 1000, List.of(95)));
+        assertThrows(InvalidConfigException.class, () -> ReportHistory.parse(Document.parse("{'1m': 'forever'}"), 1000, List.of(95)));
+        assertEquals(List.of("ops", "records", "total ops", "total records", "mean duration", "p95", "mean batch size", "min batch size", "max batch size", "client util", "report compute time"),
+            ReportHistory.parse(null, 1000, List.of(95)).columns());
+    }
+
+    private static Document _workload(long i, Document events) {
+        var doc = new Document("ops", i)
+            .append("records", i)
+            .append("total ops", i)
+            .append("total records", i)
+            .append("mean duration", 1.5d)
+            .append("percentiles", List.of(new Document("p", 50).append("value", 1d), new Document("p", 99).append("value", (double) i)))
+            .append("mean batch size", 1d)
+            .append("min batch size", 1d)
+            .append("max batch size", 1d)
+            .append("client util", 50d)
+            .append("report compute time", 0L);
+        if (events != null) {
+            doc.append("events", events);
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,71 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.http.ReportStreamHandler;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class ReportStreamTest {
+
+    @Test
+    void testSubscribeReceiveAndDisconnect() throws Exception {
+        var reporter = new Reporter(List.of(95));
+        reporter.start();
+        reporter.reportOpNanos("wl", 1, TimeUnit.MILLISECONDS.toNanos(1));
+        var computed = new CompletableFuture<Report>();
+        reporter.computeReport(List.of(computed::complete));
+        var missed = computed.get(10, TimeUnit.SECONDS);
+
+        var handler = new ReportStreamHandler(reporter);
+        var server = new Server(0);
+        server.setHandler(handler);
+        server.start();
+        try (var socket = new Socket("localhost", ((ServerConnector) server.getConnectors()[0]).getLocalPort())) {
+            socket.setSoTimeout(10000);
+            var request = "GET /report/stream?since=1970-01-01T00:00:00Z HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            // catching up with the reports since the given time, then live ones
+            assertEquals("id: " + missed.getTime(), _nextId(in));
+            assertEquals(1, handler.subscriberCount());
+            var live = Instant.now().plusSeconds(1);
+            handler.report(new Report(live, new Document("wl", new Document("ops", 1L))));
+            assertEquals("id: " + live, _nextId(in));
+        }
+
+        // the next writes find out that the client is gone
+        for (var i = 0; i < 100 && handler.subscriberCount() > 0; i++) {
+            handler.report(new Report(Instant.now().plusSeconds(2 + i), new Document()));
+            Thread.sleep(50);
+        }
+        assertEquals(0, handler.subscriberCount());
+        server.stop();
+    }
+
+    private static String _nextId(BufferedReader in) throws Exception {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("id: ")) {
+                assertTrue(in.readLine().equals("event: report"));
+                return line;
+            }
+        }
+        throw new AssertionError("Stream closed");
+    }
+}
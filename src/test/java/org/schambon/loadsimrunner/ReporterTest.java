@@ -0,0 +1,108 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class ReporterTest {
+
+    @Test
+    void testEvents() throws Exception {
+        var reporter = new Reporter(List.of(50, 95));
+        reporter.start();
+
+        reporter.reportOpNanos("tx", 3, TimeUnit.MILLISECONDS.toNanos(2));
+        reporter.reportEvent("tx", "commits");
+        reporter.reportEvent("tx", "retries");
+        reporter.reportEvent("tx", "retries");
+        reporter.reportEvent("aborted", "aborts");
+
+        var report = _compute(reporter).getReport();
+        var tx = (Document) report.get("tx");
+        assertEquals(1L, (long) tx.getLong("total ops"));
+        assertEquals(Document.parse("{commits: 1, retries: 2}").toJson(), ((Document) tx.get("events")).toJson());
+
+        // a workload with events but no ops is still reported
+        var aborted = (Document) report.get("aborted");
+        assertEquals(0L, (long) aborted.getLong("total ops"));
+        assertEquals(1L, (long) ((Document) aborted.get("events")).getLong("aborts"));
+
+        // counts are per interval
+        reporter.reportOpNanos("tx", 1, 1000);
+        report = _compute(reporter).getReport();
+        assertFalse(((Document) report.get("tx")).containsKey("events"));
+        assertFalse(report.containsKey("aborted"));
+    }
+
+    @Test
+    void testConcurrentRecording() throws Exception {
+        var reporter = new Reporter(List.of(50, 100));
+        reporter.start();
+
+        // threads land on different stripes, which are merged in the report
+        var threads = new ArrayList<Thread>();
+        for (var t = 0; t < 8; t++) {
+            var batch = t + 1;
+            threads.add(new Thread(() -> {
+                for (var i = 0; i < 10000; i++) {
+                    reporter.reportOpNanos("insert", batch, TimeUnit.MICROSECONDS.toNanos(batch * 100));
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        var insert = (Document) _compute(reporter).getReport().get("insert");
+        assertEquals(80000L, (long) insert.getLong("total ops"));
+        assertEquals(360000L, (long) insert.getLong("total records"));
+        assertEquals(1d, insert.getDouble("min batch size"), 0.0001);
+        assertEquals(8d, insert.getDouble("max batch size"), 0.0001);
+        var p100 = insert.getList("percentiles", Document.class).get(1).getDouble("value");
+        assertEquals(0.8, p100, 0.01);
+    }
+
+    @Test
+    void testCumulativeMetrics() {
+        var reporter = new Reporter(List.of(95));
+        reporter.reportOpNanos("find \"by key\"", 1, TimeUnit.MICROSECONDS.toNanos(10));
+        reporter.reportOpNanos("find \"by key\"", 1, TimeUnit.MICROSECONDS.toNanos(100));
+        reporter.reportOpNanos("insert", 100, TimeUnit.SECONDS.toNanos(100));
+        reporter.reportEvent("insert", Reporter.ERRORS);
+        reporter.reportEvent("insert", "retries");
+
+        var out = new StringBuilder();
+        reporter.getMetrics().write(out);
+        var lines = List.of(out.toString().split("\n"));
+
+        assertTrue(lines.contains("simrunner_operations_total{workload=\"find \\\"by key\\\"\"} 2"));
+        assertTrue(lines.contains("simrunner_records_total{workload=\"insert\"} 100"));
+        assertTrue(lines.contains("simrunner_errors_total{workload=\"insert\"} 1"));
+        assertTrue(lines.contains("simrunner_events_total{workload=\"insert\",event=\"retries\"} 1"));
+        // buckets are cumulative: 10µs is under 16µs, 100µs under 128µs, 100s only under +Inf
+        assertTrue(lines.contains("simrunner_operation_duration_seconds_bucket{workload=\"find \\\"by key\\\"\",le=\"1.6E-5\"} 1"));
+        assertTrue(lines.contains("simrunner_operation_duration_seconds_bucket{workload=\"find \\\"by key\\\"\",le=\"1.28E-4\"} 2"));
+        assertTrue(lines.contains("simrunner_operation_duration_seconds_bucket{workload=\"insert\",le=\"67.108864\"} 0"));
+        assertTrue(lines.contains("simrunner_operation_duration_seconds_bucket{workload=\"insert\",le=\"+Inf\"} 1"));
+        assertTrue(lines.contains("simrunner_operation_duration_seconds_sum{workload=\"insert\"} 100.0"));
+    }
+
+    private static Report _compute(Reporter reporter) throws Exception {
+        var future = new CompletableFuture<Report>();
+        reporter.computeReport(List.of(future::complete));
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
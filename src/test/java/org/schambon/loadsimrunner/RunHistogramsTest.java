@@ -0,0 +1,145 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+import org.schambon.loadsimrunner.report.Report;
+import org.schambon.loadsimrunner.report.ReportHistory;
+import org.schambon.loadsimrunner.report.Reporter;
+import org.schambon.loadsimrunner.report.RunHistograms;
+
+public class RunHistogramsTest {
+
+    @Test
+    void testWholeRunAndPhases() throws Exception {
+        var histograms = new RunHistograms(3, List.of(99), null, List.of());
+        var reporter = new Reporter(List.of(99), ReportHistory.parse(null, 1000, List.of(99)), histograms);
+        reporter.start();
+
+        for (var i = 0; i < 100; i++) {
+            reporter.reportOpNanos("find", 1, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        _compute(reporter);
+        histograms.startPhase("spike");
+        assertThrows(IllegalArgumentException.class, () -> histograms.startPhase("main"));
+        for (var i = 0; i < 10; i++) {
+            reporter.reportOpNanos("find", 1, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        _compute(reporter);
+
+        // the p99 of each report is 1ms then 100ms, the p99 of the run is 100ms
+        var summary = Document.parse(histograms.summary().toJson());
+        var run = (Document) ((Document) summary.get("workloads")).get("find");
+        assertEquals(110L, ((Number) run.get("count")).longValue());
+        assertEquals(100d, _percentile(run, 99d), 0.1);
+        assertEquals(1d, _percentile(run, 50d), 0.01);
+
+        var phases = summary.getList("phases", Document.class);
+        assertEquals(List.of("main", "spike"), List.of(phases.get(0).getString("name"), phases.get(1).getString("name")));
+        var spike = (Document) ((Document) phases.get(1).get("workloads")).get("find");
+        assertEquals(10L, ((Number) spike.get("count")).longValue());
+        assertEquals(100d, _percentile(spike, 50d), 0.1);
+
+        var hgrm = new StringBuilder();
+        assertTrue(histograms.writeDistribution("find", null, hgrm));
+        var lines = hgrm.toString().split("\n");
+        assertTrue(lines[0].contains("Value") && lines[0].contains("1/(1-Percentile)"));
+        var last = lines[lines.length - 4].trim().split(" +");
+        assertEquals(1d, Double.parseDouble(last[1]), 0.0000001);
+        assertEquals("110", last[2]);
+        assertTrue(lines[lines.length - 2].contains("Total count    =          110"));
+        assertTrue(!histograms.writeDistribution("find", "nope", hgrm));
+
+        // one interval per phase, with the counts of the phase
+        var log = new StringBuilder();
+        histograms.writeLog(log);
+        var intervals = new ArrayList<String>();
+        for (var line : log.toString().split("\n")) {
+            if (line.startsWith("Tag=")) {
+                intervals.add(line);
+            }
+        }
+        assertEquals(2, intervals.size());
+        var fields = intervals.get(1).split(",");
+        assertEquals("Tag=find", fields[0]);
+        assertEquals(100d, Double.parseDouble(fields[3]), 0.1);
+        assertEquals(10L, _decodeTotalCount(fields[4]));
+    }
+
+    @Test
+    void testParse() {
+        var histograms = RunHistograms.parse(Document.parse("{significantDigits: 3, phases: [{name: 'warmup', start: 0}, {name: 'steady', start: 60000}]}"), List.of(95));
+        assertEquals(3, histograms.getSignificantDigits());
+        assertThrows(InvalidConfigException.class, () -> RunHistograms.parse(Document.parse("{significantDigits: 6}"), List.of(95)));
+        assertThrows(InvalidConfigException.class, () -> RunHistograms.parse(Document.parse("{phases: [{name: 'a', start: 10}, {name: 'b', start: 5}]}"), List.of(95)));
+        assertThrows(InvalidConfigException.class, () -> RunHistograms.parse(Document.parse("{phases: [{name: 'a'}]}"), List.of(95)));
+    }
+
+    private static double _percentile(Document summary, double p) {
+        for (var doc : summary.getList("percentiles", Document.class)) {
+            if (doc.getDouble("p") == p) {
+                return doc.getDouble("value");
+            }
+        }
+        throw new AssertionError("No percentile " + p);
+    }
+
+    // decode an HdrHistogram V2 compressed histogram, as HistogramLogReader would, and sum its counts
+    private static long _decodeTotalCount(String base64) throws Exception {
+        var compressed = ByteBuffer.wrap(Base64.getDecoder().decode(base64));
+        assertEquals(0x1c849314, compressed.getInt());
+        var length = compressed.getInt();
+        var inflater = new Inflater();
+        inflater.setInput(compressed.array(), 8, length);
+        var raw = new byte[1 << 20];
+        var n = inflater.inflate(raw);
+        inflater.end();
+
+        var buffer = ByteBuffer.wrap(raw, 0, n);
+        assertEquals(0x1c849313, buffer.getInt());
+        var payloadLength = buffer.getInt();
+        buffer.getInt(); // normalizing index offset
+        assertEquals(3, buffer.getInt());
+        assertEquals(1L, buffer.getLong());
+        buffer.getLong(); // highest trackable value
+        buffer.getDouble();
+        assertEquals(40 + payloadLength, n);
+
+        long total = 0;
+        while (buffer.hasRemaining()) {
+            long v = 0;
+            var shift = 0;
+            while (true) {
+                var b = buffer.get() & 0xFF;
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            var count = (v >>> 1) ^ -(v & 1);
+            if (count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    private static Report _compute(Reporter reporter) throws Exception {
+        var future = new CompletableFuture<Report>();
+        reporter.computeReport(List.of(future::complete));
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,66 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.client.SinkCollection;
+import org.schambon.loadsimrunner.errors.InvalidConfigException;
+
+public class SinkCollectionTest {
+
+    @Test
+    void testMemoryStoreIsBounded() {
+        var coll = SinkCollection.create(Document.parse("{mode: 'memory', maxDocuments: 10}"), "db", "coll");
+        assertEquals("db.coll", coll.getNamespace().getFullName());
+
+        for (var i = 0; i < 5; i++) {
+            coll.insertOne(new Document("i", i));
+        }
+        assertEquals(5L, coll.countDocuments());
+
+        coll.insertMany(List.of(new Document("i", 1), new Document("i", 2), new Document("i", 3), new Document("i", 4), new Document("i", 5), new Document("i", 6)));
+        assertEquals(10L, coll.countDocuments());
+
+        coll.withDocumentClass(RawBsonDocument.class).insertOne(RawBsonDocument.parse("{a: 1}"));
+        assertEquals(10L, coll.countDocuments());
+    }
+
+    @Test
+    void testOperations() {
+        var coll = SinkCollection.create(true, "db", "coll");
+
+        assertEquals(1L, coll.updateOne(new Document("_id", 1), new Document("$set", new Document("a", 1))).getMatchedCount());
+        assertEquals(1L, coll.deleteMany(new Document()).getDeletedCount());
+        assertEquals(1L, coll.replaceOne(new Document("_id", 1), new Document("a", 2)).getModifiedCount());
+        assertFalse(coll.find(new Document("a", 1)).limit(10).projection(new Document("a", 1)).iterator().hasNext());
+        assertFalse(coll.aggregate(List.of(new Document("$match", new Document()))).iterator().hasNext());
+
+        List<WriteModel<Document>> models = List.of(
+            new InsertOneModel<>(new Document("a", 1)),
+            new UpdateOneModel<>(new Document("a", 1), new Document("$inc", new Document("b", 1))),
+            new DeleteOneModel<>(new Document("a", 1)));
+        var result = coll.bulkWrite(models);
+        assertEquals(1, result.getInsertedCount());
+        assertEquals(1, result.getModifiedCount());
+        assertEquals(1, result.getDeletedCount());
+        assertEquals(0L, coll.countDocuments());
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(InvalidConfigException.class, () -> SinkCollection.create("fast", "db", "coll"));
+        assertThrows(InvalidConfigException.class, () -> SinkCollection.create(Document.parse("{mode: 'disk'}"), "db", "coll"));
+        assertThrows(InvalidConfigException.class, () -> SinkCollection.create(Document.parse("{mode: 'memory', maxDocuments: 0}"), "db", "coll"));
+    }
+}
@@ -0,0 +1,90 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.schambon.loadsimrunner.template.Snapshot;
+
+public class SnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        var file = dir.resolve("template.snap");
+        assertNull(Snapshot.read(file));
+
+        var remembered = List.of(new ObjectId(), 42L, "hello", UUID.randomUUID(), new Document("a", 1));
+        Snapshot.write(file, Map.of("_id", remembered, "empty", List.of()), Map.of("words", List.of("foo", "bar")));
+
+        var snapshot = Snapshot.read(file);
+        assertTrue(snapshot.hasRemembered("_id"));
+        assertTrue(snapshot.hasRemembered("empty"));
+        assertFalse(snapshot.hasRemembered("words"));
+        assertTrue(snapshot.hasDictionary("words"));
+
+        var read = new ArrayList<Object>();
+        assertEquals(5, snapshot.forEachRemembered("_id", read::add));
+        assertEquals(remembered, read);
+        assertEquals(0, snapshot.forEachRemembered("empty", read::add));
+        assertEquals(List.of("foo", "bar"), snapshot.dictionary("words"));
+        assertNull(snapshot.dictionary("_id"));
+
+        // overwriting replaces the previous snapshot
+        Snapshot.write(file, Map.of(), Map.of());
+        assertFalse(Snapshot.read(file).hasRemembered("_id"));
+        try (var files = Files.list(dir)) {
+            assertEquals(1L, files.count());
+        }
+    }
+
+    @Test
+    void testNotASnapshot() throws IOException {
+        var file = dir.resolve("template.snap");
+        Files.writeString(file, "this is not a snapshot");
+        assertThrows(IOException.class, () -> Snapshot.read(file));
+    }
+
+    @Test
+    void testCorruptSnapshot() throws IOException {
+        var file = dir.resolve("template.snap");
+        Snapshot.write(file, Map.of("_id", List.of(1L, 2L, 3L)), Map.of());
+        var bytes = Files.readAllBytes(file);
+
+        // a name length past the end of the file
+        var hugeName = bytes.clone();
+        ByteBuffer.wrap(hugeName, 9, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(Integer.MAX_VALUE);
+        Files.write(file, hugeName);
+        assertThrows(IOException.class, () -> Snapshot.read(file));
+
+        // a truncated section
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> Snapshot.read(file));
+
+        // well framed values that are not valid BSON: an unknown type byte in the first one
+        var badType = bytes.clone();
+        badType[bytes.length - 3 * 16 + 4] = 0x7e; // each {v: long} is 16 bytes
+        Files.write(file, badType);
+        var snapshot = Snapshot.read(file);
+        assertThrows(IOException.class, () -> snapshot.forEachRemembered("_id", v -> {}));
+    }
+}
@@ -0,0 +1,163 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.template.CompactList;
+import org.schambon.loadsimrunner.template.ObjectValueStore;
+import org.schambon.loadsimrunner.template.PackedValueStore;
+import org.schambon.loadsimrunner.template.ValueStore;
+
+public class ValueStoreTest {
+
+    @Test
+    void testCappedKeepsLatest() {
+        var store = new ObjectValueStore(3);
+        assertNull(store.sample());
+
+        store.addAll(List.of(1, 2, 3, 4, 5));
+        assertEquals(3L, store.size());
+        assertEquals(List.of(3, 4, 5), store.values());
+
+        var seen = new HashSet<Object>();
+        for (var i = 0; i < 1000; i++) {
+            seen.add(store.sample());
+        }
+        assertEquals(new HashSet<>(List.of(3, 4, 5)), seen);
+    }
+
+    @Test
+    void testUncappedSpansChunks() {
+        var store = new ObjectValueStore(-1);
+        for (var i = 0; i < 200000; i++) {
+            store.add(i);
+        }
+        assertEquals(200000L, store.size());
+        var values = store.values();
+        assertEquals(0, values.get(0));
+        assertEquals(199999, values.get(199999));
+    }
+
+    @Test
+    void testConcurrentAdds() throws InterruptedException {
+        var store = new ObjectValueStore(100000);
+        var pool = Executors.newFixedThreadPool(8);
+        for (var t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (var i = 0; i < 50000; i++) {
+                    store.add(i);
+                    store.sample();
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(100000L, store.size());
+        assertEquals(100000, store.values().size());
+    }
+
+    @Test
+    void testPackedRoundTrip() {
+        var oid = new ObjectId();
+        for (var offHeap : List.of(false, true)) {
+            for (var value : List.<Object>of(oid, Long.MIN_VALUE, -42, "h\u00e9llo w\u00f6rld \ud83d\ude00")) {
+                var store = PackedValueStore.forValue(value, 2, offHeap);
+                store.add(value);
+                assertEquals(value, store.sample());
+                assertEquals(List.of(value), store.values());
+            }
+        }
+        assertNull(PackedValueStore.forValue(new Document(), -1, false));
+    }
+
+    @Test
+    void testAdaptiveOverflow() {
+        var store = ValueStore.create(-1, false);
+        store.add(1L);
+        store.add(2L);
+        store.add("not a long");
+        store.add(new Document("a", 1));
+        assertEquals(4L, store.size());
+        assertEquals(List.of(1L, 2L, "not a long", new Document("a", 1)), store.values());
+
+        // one cap for a field of mixed types
+        var capped = ValueStore.create(3, false);
+        capped.addAll(List.of(1L, 2L, 3L, "four", 5L));
+        assertEquals(3L, capped.size());
+        assertEquals(List.of(3L, "four", 5L), capped.values());
+
+        var strings = ValueStore.create(-1, true);
+        strings.add("short");
+        var longer = "a much longer string than the first one, which does not fit in its slots";
+        strings.add(longer);
+        assertEquals(List.of("short", longer), strings.values());
+    }
+
+    @Test
+    void testAdaptiveOverflowLosesNoConcurrentValue() throws InterruptedException {
+        for (var round = 0; round < 20; round++) {
+            var store = ValueStore.create(-1, false);
+            store.add(-1L);
+            var pool = Executors.newFixedThreadPool(8);
+            for (var t = 0; t < 8; t++) {
+                var thread = t;
+                pool.submit(() -> {
+                    for (var i = 0; i < 10000; i++) {
+                        store.add(thread * 10000L + i);
+                        if (thread == 0 && i == 5000) {
+                            store.add("not a long"); // moves the values to an object store while the others write
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+            assertEquals(1L + 8 * 10000 + 1, store.size());
+            assertEquals(store.size(), new HashSet<>(store.values()).size());
+        }
+    }
+
+    @Test
+    void testPackedConcurrentWritesAreNotTorn() throws InterruptedException {
+        var store = PackedValueStore.forValue("x-000000", 64, false);
+        var pool = Executors.newFixedThreadPool(8);
+        var torn = new AtomicInteger();
+        for (var t = 0; t < 8; t++) {
+            var prefix = (char) ('a' + t);
+            pool.submit(() -> {
+                for (var i = 0; i < 100000; i++) {
+                    store.add(String.format("%c-%c%c%c%c%c%c", prefix, prefix, prefix, prefix, prefix, prefix, prefix));
+                    var sample = (String) store.sample();
+                    if (sample != null && !sample.chars().skip(2).allMatch(c -> c == sample.charAt(0))) {
+                        torn.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(0, torn.get());
+        assertEquals(64L, store.size());
+    }
+
+    @Test
+    void testCompactList() {
+        var oid = new ObjectId();
+        assertEquals(List.of("a", "\u00e9t\u00e9", ""), CompactList.compact(List.of("a", "\u00e9t\u00e9", ""), false));
+        assertEquals(List.of(oid, oid), CompactList.compact(List.of(oid, oid), true));
+        assertEquals(List.of(1L, -1L), CompactList.compact(List.of(1L, -1L), false));
+
+        var mixed = List.of(1L, "a");
+        assertTrue(mixed == CompactList.compact(mixed, false));
+    }
+}
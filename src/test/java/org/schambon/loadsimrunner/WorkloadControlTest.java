@@ -0,0 +1,57 @@
+package org.schambon.loadsimrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.schambon.loadsimrunner.report.Reporter;
+
+public class WorkloadControlTest {
+
+    @Test
+    void testPaceAndRate() {
+        var workload = WorkloadManager.newInstances(Document.parse("{name: 'wl', op: 'find', threads: 4, pace: 100}"), new HashMap<>(), new Reporter(List.of(95))).get(0);
+        assertEquals(Document.parse("{name: 'wl', op: 'find', template: null, threads: 4, pace: 100, rate: null, paused: false}"), workload.describe());
+
+        // rate replaces pace and vice versa
+        workload.setRate(500);
+        assertEquals(0, workload.getPace());
+        assertEquals(500d, workload.getArrivalRate().getRate(), 0.0001);
+        workload.setRate(200);
+        assertEquals(200d, workload.getArrivalRate().getRate(), 0.0001);
+        workload.setPace(50);
+        assertNull(workload.getArrivalRate());
+        assertEquals(50, workload.getPace());
+
+        workload.setPaused(true);
+        workload.setThreads(8);
+        var description = workload.describe();
+        assertTrue(description.getBoolean("paused"));
+        assertEquals(8, (int) description.getInteger("threads"));
+
+        assertThrows(IllegalArgumentException.class, () -> workload.setPace(-1));
+        assertThrows(IllegalArgumentException.class, () -> workload.setThreads(-1));
+    }
+
+    @Test
+    void testResumeAtRate() throws InterruptedException {
+        var workload = WorkloadManager.newInstances(Document.parse("{name: 'wl', op: 'find', rate: 1000}"), new HashMap<>(), new Reporter(List.of(95))).get(0);
+        var rate = workload.getArrivalRate();
+        rate.nextIntendedStart();
+
+        workload.setPaused(true);
+        Thread.sleep(100);
+        workload.setPaused(false);
+
+        // the slots of the pause are gone: no burst of operations that are already 100ms late
+        var late = System.nanoTime() - rate.nextIntendedStart();
+        assertTrue(late < TimeUnit.MILLISECONDS.toNanos(50), "late by " + late + "ns");
+    }
+}